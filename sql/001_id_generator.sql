@@ -0,0 +1,23 @@
+-- Property and Address IDs moved from AUTO_INCREMENT to a table generator
+-- that hands out blocks of 1000 IDs (see Property#id and Address#id).
+--
+-- Run once against databases created before that change, BEFORE deploying
+-- the new build. Fresh databases get the table from EclipseLink.
+-- Safe to run more than once.
+
+CREATE TABLE IF NOT EXISTS ID_GENERATOR (
+    GEN_NAME VARCHAR(50) NOT NULL,
+    GEN_VALUE DECIMAL(38),
+    PRIMARY KEY (GEN_NAME)
+);
+
+INSERT IGNORE INTO ID_GENERATOR (GEN_NAME, GEN_VALUE) VALUES ('PROPERTY', 0), ('ADDRESS', 0);
+
+-- Continue after the highest existing ID so generated IDs never collide
+UPDATE ID_GENERATOR
+   SET GEN_VALUE = GREATEST(GEN_VALUE, (SELECT COALESCE(MAX(ID), 0) FROM PROPERTY))
+ WHERE GEN_NAME = 'PROPERTY';
+
+UPDATE ID_GENERATOR
+   SET GEN_VALUE = GREATEST(GEN_VALUE, (SELECT COALESCE(MAX(ID), 0) FROM ADDRESS))
+ WHERE GEN_NAME = 'ADDRESS';
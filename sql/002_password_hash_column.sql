@@ -0,0 +1,9 @@
+-- Passwords are now stored as salted PBKDF2 hashes in a versioned format
+-- ($pbkdf2-sha512$i=ITERATIONS$SALT$HASH, see PasswordHasher), which is
+-- longer than the 128 character SHA-512 hex digests stored before.
+--
+-- Run once against databases created before that change, BEFORE deploying
+-- the new build. Existing hashes keep working and are upgraded on the
+-- user's next login. Safe to run more than once.
+
+ALTER TABLE USER MODIFY PASSWORD VARCHAR(255) NOT NULL;
@@ -0,0 +1,15 @@
+-- Registration no longer looks up the username and email before inserting a
+-- user; the insert itself is the uniqueness check (see UserEJB.createUser),
+-- and a violation of UNQ_USER_USERNAME or UNQ_USER_EMAIL tells which of the
+-- two is already taken.
+--
+-- Run once against databases created before that change, BEFORE deploying
+-- the new build. Fails if duplicates already exist; list them with
+--
+--   SELECT USERNAME, COUNT(*) FROM USER GROUP BY USERNAME HAVING COUNT(*) > 1;
+--   SELECT EMAIL, COUNT(*) FROM USER GROUP BY EMAIL HAVING COUNT(*) > 1;
+--
+-- and resolve them by hand first.
+
+ALTER TABLE USER ADD CONSTRAINT UNQ_USER_USERNAME UNIQUE (USERNAME);
+ALTER TABLE USER ADD CONSTRAINT UNQ_USER_EMAIL UNIQUE (EMAIL);
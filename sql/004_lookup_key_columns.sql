@@ -0,0 +1,36 @@
+-- Usernames and emails are looked up through normalized copies (trimmed,
+-- lower-cased; see LookupKey) with unique indexes, instead of comparing
+-- LOWER(EMAIL) or the raw columns, which could not use an index:
+--
+--   USER.USERNAME_KEY, USER.EMAIL_KEY    replace the constraints of 003
+--   PROPERTYMANAGER.EMAIL_KEY            NULL when the manager has no email
+--
+-- Run once against databases created before that change, BEFORE deploying
+-- the new build. The application keeps the keys up to date from then on.
+-- Rows whose values differ only in case now collide; the unique constraints
+-- fail until they are resolved. List them with
+--
+--   SELECT USERNAME_KEY, COUNT(*) FROM USER GROUP BY USERNAME_KEY HAVING COUNT(*) > 1;
+--   SELECT EMAIL_KEY, COUNT(*) FROM USER GROUP BY EMAIL_KEY HAVING COUNT(*) > 1;
+--   SELECT EMAIL_KEY, COUNT(*) FROM PROPERTYMANAGER GROUP BY EMAIL_KEY HAVING COUNT(*) > 1;
+--
+-- after the UPDATE statements below.
+
+ALTER TABLE USER ADD COLUMN USERNAME_KEY VARCHAR(255), ADD COLUMN EMAIL_KEY VARCHAR(255);
+
+UPDATE USER SET USERNAME_KEY = LOWER(TRIM(USERNAME)), EMAIL_KEY = LOWER(TRIM(EMAIL));
+
+ALTER TABLE USER MODIFY USERNAME_KEY VARCHAR(255) NOT NULL, MODIFY EMAIL_KEY VARCHAR(255) NOT NULL;
+
+ALTER TABLE USER
+    ADD CONSTRAINT UNQ_USER_USERNAME_KEY UNIQUE (USERNAME_KEY),
+    ADD CONSTRAINT UNQ_USER_EMAIL_KEY UNIQUE (EMAIL_KEY);
+
+-- Superseded by the constraints on the keys
+ALTER TABLE USER DROP INDEX UNQ_USER_USERNAME, DROP INDEX UNQ_USER_EMAIL;
+
+ALTER TABLE PROPERTYMANAGER ADD COLUMN EMAIL_KEY VARCHAR(255);
+
+UPDATE PROPERTYMANAGER SET EMAIL_KEY = NULLIF(LOWER(TRIM(EMAIL)), '');
+
+ALTER TABLE PROPERTYMANAGER ADD CONSTRAINT UNQ_PROPERTYMANAGER_EMAIL_KEY UNIQUE (EMAIL_KEY);
@@ -0,0 +1,14 @@
+-- Each property manager carries the number of its allocations in
+-- PROPERTYMANAGER.ALLOCATION_COUNT, adjusted by AllocationEJB in the same
+-- transaction as the allocation, so the leaderboard and per-manager counts
+-- no longer need a COUNT over ALLOCATION.
+--
+-- Run once against databases created before that change, BEFORE deploying
+-- the new build. ManagerLeaderboard repairs any later drift every hour.
+
+ALTER TABLE PROPERTYMANAGER ADD COLUMN ALLOCATION_COUNT BIGINT NOT NULL DEFAULT 0;
+
+UPDATE PROPERTYMANAGER pm
+SET ALLOCATION_COUNT = (SELECT COUNT(*) FROM ALLOCATION a WHERE a.PROPERTY_MANAGER_ID = pm.ID);
+
+CREATE INDEX IDX_PROPERTYMANAGER_ALLOCATION_COUNT ON PROPERTYMANAGER (ALLOCATION_COUNT);
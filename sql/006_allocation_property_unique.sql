@@ -0,0 +1,18 @@
+-- A property can only be allocated once. AllocationEJB no longer relies on
+-- the allocation screen to prevent double bookings: the insert itself is
+-- the check, and a violation of UNQ_ALLOCATION_PROPERTY is reported as an
+-- AllocationConflictException. Updates and deletes are checked against
+-- ALLOCATION.VERSION instead of locking the row while the form is open.
+--
+-- Run once against databases created before that change, BEFORE deploying
+-- the new build. Fails if a property is already allocated more than once;
+-- list those with
+--
+--   SELECT PROPERTY_ID, COUNT(*) FROM ALLOCATION GROUP BY PROPERTY_ID HAVING COUNT(*) > 1;
+--
+-- and delete the extra allocations by hand first. ManagerLeaderboard
+-- corrects the manager allocation counts within the hour.
+
+ALTER TABLE ALLOCATION ADD COLUMN VERSION BIGINT NOT NULL DEFAULT 0;
+
+ALTER TABLE ALLOCATION ADD CONSTRAINT UNQ_ALLOCATION_PROPERTY UNIQUE (PROPERTY_ID);
@@ -0,0 +1,69 @@
+-- Allocation changes are appended to ALLOCATION_EVENT (see AllocationEvent),
+-- which keeps the history of deleted allocations and answers "who managed
+-- property X on day D" and "allocations created between T1 and T2".
+--
+-- Run once against databases created before that change, BEFORE deploying
+-- the new build. Fresh databases get an unpartitioned table from
+-- EclipseLink; run the CREATE TABLE below on them instead before the first
+-- deployment to have it partitioned.
+--
+-- The table is range-partitioned by EVENT_DAY (the UTC day as yyyymmdd),
+-- one partition per quarter, so time range queries only read the
+-- partitions they cover and old history can be archived by dropping whole
+-- partitions. MySQL requires the partitioning column in every unique key,
+-- hence the primary key on (ID, EVENT_DAY), and allows no foreign keys;
+-- the allocation, property and manager are kept as plain IDs anyway, so
+-- their history survives their deletion. EVENT_TIME is DATETIME(6) so
+-- events keep their milliseconds and order correctly within a second.
+-- Add the next year's partitions
+-- before the last one fills up, e.g.
+--
+--   ALTER TABLE ALLOCATION_EVENT REORGANIZE PARTITION P_FUTURE INTO (
+--       PARTITION P2028Q1 VALUES LESS THAN (20280401),
+--       ...
+--       PARTITION P_FUTURE VALUES LESS THAN MAXVALUE);
+
+CREATE TABLE ALLOCATION_EVENT (
+    ID BIGINT NOT NULL,
+    EVENT_DAY INT NOT NULL,
+    EVENT_TIME DATETIME(6) NOT NULL,
+    TYPE VARCHAR(16) NOT NULL,
+    ALLOCATION_ID BIGINT NOT NULL,
+    PROPERTY_ID BIGINT NOT NULL,
+    MANAGER_ID BIGINT NOT NULL,
+    PRIMARY KEY (ID, EVENT_DAY),
+    INDEX IDX_ALLOCATIONEVENT_TIME (EVENT_TIME),
+    INDEX IDX_ALLOCATIONEVENT_PROPERTY_TIME (PROPERTY_ID, EVENT_TIME),
+    INDEX IDX_ALLOCATIONEVENT_MANAGER_TIME (MANAGER_ID, EVENT_TIME)
+)
+PARTITION BY RANGE (EVENT_DAY) (
+    PARTITION P_HISTORIC VALUES LESS THAN (20250101),
+    PARTITION P2025Q1 VALUES LESS THAN (20250401),
+    PARTITION P2025Q2 VALUES LESS THAN (20250701),
+    PARTITION P2025Q3 VALUES LESS THAN (20251001),
+    PARTITION P2025Q4 VALUES LESS THAN (20260101),
+    PARTITION P2026Q1 VALUES LESS THAN (20260401),
+    PARTITION P2026Q2 VALUES LESS THAN (20260701),
+    PARTITION P2026Q3 VALUES LESS THAN (20261001),
+    PARTITION P2026Q4 VALUES LESS THAN (20270101),
+    PARTITION P2027Q1 VALUES LESS THAN (20270401),
+    PARTITION P2027Q2 VALUES LESS THAN (20270701),
+    PARTITION P2027Q3 VALUES LESS THAN (20271001),
+    PARTITION P2027Q4 VALUES LESS THAN (20280101),
+    PARTITION P_FUTURE VALUES LESS THAN MAXVALUE
+);
+
+-- The existing allocations start the history; the event IDs reuse their IDs
+INSERT INTO ALLOCATION_EVENT (ID, EVENT_DAY, EVENT_TIME, TYPE, ALLOCATION_ID, PROPERTY_ID, MANAGER_ID)
+SELECT a.ID,
+       CAST(DATE_FORMAT(CONVERT_TZ(COALESCE(a.CREATIONTIME, NOW(6)), @@session.time_zone, '+00:00'), '%Y%m%d') AS UNSIGNED),
+       COALESCE(a.CREATIONTIME, NOW(6)),
+       'ASSIGNED', a.ID, a.PROPERTY_ID, a.PROPERTY_MANAGER_ID
+  FROM ALLOCATION a;
+
+-- Generated event IDs continue after the copied ones
+INSERT INTO ID_GENERATOR (GEN_NAME, GEN_VALUE)
+SELECT 'ALLOCATION_EVENT', COALESCE(MAX(ID), 0) FROM ALLOCATION_EVENT;
+
+-- The allocation tables sort by creation time
+CREATE INDEX IDX_ALLOCATION_CREATION_TIME ON ALLOCATION (CREATIONTIME);
@@ -0,0 +1,10 @@
+-- PROPERTYMANAGER.ALLOCATION_COUNT_VERSION is bumped by every update of
+-- ALLOCATION_COUNT, in the same statement. AllocationEJB reports the count
+-- to ManagerLeaderboard together with the version once the transaction has
+-- committed; the reports of two commits can arrive in either order, and the
+-- leaderboard keeps the one with the higher version.
+--
+-- Run once against databases created before that change, BEFORE deploying
+-- the new build.
+
+ALTER TABLE PROPERTYMANAGER ADD COLUMN ALLOCATION_COUNT_VERSION BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,87 @@
+package realestatemanagement.Beans;
+
+import jakarta.ejb.EJB;
+import jakarta.json.Json;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import realestatemanagement.ejb.AllocationEngine;
+import realestatemanagement.ejb.AllocationRunReport;
+
+/**
+ * Automatic allocation of the unallocated properties.
+ * POST /allocate[?dryRun=false][&amp;capacity=n][&amp;max=n] runs the
+ * allocation engine, where capacity is the most allocations a manager may
+ * have and max the most allocations to create. A run is a dry run unless
+ * dryRun=false is given. Responds with the run report as JSON, or 409 if a
+ * run is already in progress.
+ *
+ * Requests from another site's pages and bodies an HTML form can post are
+ * rejected, so a cross-site form cannot start a run.
+ *
+ * @author Zhengxu
+ */
+@WebServlet(name = "AllocateServlet", urlPatterns = {"/allocate"})
+public class AllocateServlet extends HttpServlet {
+
+    @EJB
+    private AllocationEngine allocationEngine;
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (!CrossSiteGuard.isSameOrigin(req)) {
+            resp.sendError(HttpServletResponse.SC_FORBIDDEN, "Cross-site allocation requests are not allowed");
+            return;
+        }
+        if (CrossSiteGuard.isFormType(CrossSiteGuard.mediaType(req))) {
+            resp.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, "Form posts are not accepted");
+            return;
+        }
+        // only an explicit dryRun=false writes anything
+        boolean dryRun = !"false".equalsIgnoreCase(req.getParameter("dryRun"));
+        int capacity;
+        int max;
+        try {
+            capacity = intParameter(req, "capacity");
+            max = intParameter(req, "max");
+        } catch (NumberFormatException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "capacity and max must be numbers");
+            return;
+        }
+
+        AllocationRunReport report = allocationEngine.run(dryRun, capacity, max);
+        if (report == null) {
+            resp.sendError(HttpServletResponse.SC_CONFLICT, "An allocation run is already in progress");
+            return;
+        }
+
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        try (JsonGenerator json = Json.createGenerator(resp.getWriter())) {
+            json.writeStartObject()
+                    .write("dryRun", report.isDryRun())
+                    .write("considered", report.getConsidered())
+                    .write("assigned", report.getAssigned())
+                    .write("unassigned", report.getUnassigned())
+                    .write("failed", report.getFailed())
+                    .write("elapsedMillis", report.getElapsedMillis())
+                    .writeStartArray("assignments");
+            for (AllocationRunReport.Assignment assignment : report.getAssignments()) {
+                json.writeStartObject()
+                        .write("propertyId", assignment.getPropertyId())
+                        .write("managerId", assignment.getManagerId())
+                        .writeEnd();
+            }
+            json.writeEnd().writeEnd();
+        }
+    }
+
+    private static int intParameter(HttpServletRequest req, String name) {
+        String value = req.getParameter(name);
+        return value == null || value.isEmpty() ? 0 : Integer.parseInt(value);
+    }
+}
@@ -0,0 +1,32 @@
+package realestatemanagement.Beans;
+
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.faces.context.FacesContext;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+
+/**
+ * Login state for public pages. Unlike #{authBean}, reading
+ * #{authStatus.logged} does not create an HTTP session for an anonymous
+ * visitor: the session-scoped AuthenticationBean is only consulted if a
+ * session already exists.
+ *
+ * @author Zhengxu
+ */
+@Named(value = "authStatus")
+@RequestScoped
+public class AuthStatus {
+
+    @Inject
+    private AuthenticationBean authBean;
+
+    private Boolean logged;
+
+    public boolean isLogged() {
+        if (logged == null) {
+            logged = FacesContext.getCurrentInstance().getExternalContext().getSession(false) != null
+                    && authBean.isLogged();
+        }
+        return logged;
+    }
+}
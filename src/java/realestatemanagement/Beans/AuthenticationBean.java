@@ -4,37 +4,33 @@ import java.io.Serializable;
 import java.util.Date;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import jakarta.annotation.Resource;
+import jakarta.ejb.EJB;
 import jakarta.enterprise.context.SessionScoped;
 import jakarta.faces.application.FacesMessage;
 import jakarta.faces.context.FacesContext;
 import jakarta.inject.Named;
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.NoResultException;
-import jakarta.persistence.PersistenceContext;
-import jakarta.transaction.UserTransaction;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.Properties;
-import jakarta.mail.*;
-import jakarta.mail.internet.InternetAddress;
-import jakarta.mail.internet.MimeMessage;
-import jakarta.transaction.HeuristicMixedException;
-import jakarta.transaction.HeuristicRollbackException;
-import jakarta.transaction.NotSupportedException;
-import jakarta.transaction.RollbackException;
-import jakarta.transaction.SystemException;
-import java.util.Random;
+import realestatemanagement.ejb.DuplicateUserException;
+import realestatemanagement.ejb.InvalidCodeException;
+import realestatemanagement.ejb.MailQueueEJB;
+import realestatemanagement.ejb.PasswordHasher;
+import realestatemanagement.ejb.UserEJB;
+import realestatemanagement.ejb.VerificationCodeStore;
 import realestatemanagement.model.User;
 
 @Named (value="authBean") 
 @SessionScoped
 public class AuthenticationBean implements Serializable {
     
-    @PersistenceContext(unitName = "RealEstateManagementPU")
-    private EntityManager em;
-    @Resource
-    private UserTransaction utx;
+    //All persistence goes through UserEJB with container-managed transactions
+    @EJB
+    private PasswordHasher passwordHasher;
+    @EJB
+    private UserEJB userEJB;
+    @EJB
+    private MailQueueEJB mailQueue;
+    //The codes sent to the user's email, shared by all nodes and expiring on their own
+    @EJB
+    private VerificationCodeStore codeStore;
     //The session username and password
     private String username;
     private String password;
@@ -48,8 +44,6 @@ public class AuthenticationBean implements Serializable {
     private String email;
     //The verfication code entered by the user
     private String verificationcode;
-    //The verficvation code that is sent to the user's emnail
-    private String verificationcode1;
     //Login state flag
     private boolean Logged=false;
     private boolean recovery=false;
@@ -108,12 +102,6 @@ public class AuthenticationBean implements Serializable {
     public void setVerificationcode(String verificationcode) {
         this.verificationcode = verificationcode;
     }
-    public String getVerificationcode1() {
-        return verificationcode1;
-    }
-    public void setVerificationcode1(String verificationcode1) {
-        this.verificationcode1 = verificationcode1;
-    }
     public boolean isRecovery() {
         return recovery;
     }
@@ -126,20 +114,14 @@ public class AuthenticationBean implements Serializable {
     public void setRuser(User ruser) {
         this.ruser = ruser;
     }
-    //Generate the hash code of a password
-    public String HashConvert(String oripassword) {
+    //Replace a legacy or weaker password hash after a successful login
+    private void upgradePasswordHash(User user) {
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-512");
-            md.update(oripassword.getBytes());
-            byte byteData[] = md.digest();
-            //convert the byte to hex format
-            StringBuffer sb = new StringBuffer();
-            for (int i = 0; i < byteData.length; i++) {
-                sb.append(Integer.toString((byteData[i] & 0xff) + 0x100, 16).substring(1));
-            }
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-                throw new UnsupportedOperationException(e);
+            userEJB.updatePasswordHash(user.getId(), passwordHasher.hash(password));
+        } catch (RuntimeException e) {
+            //the old hash still works, so the login goes ahead and the upgrade is retried next time
+            Logger.getLogger(AuthenticationBean.class.getName()).log(Level.WARNING,
+                    "Unable to upgrade password hash of user " + user.getId(), e);
         }
     }
     /*Validate an existing user by checking
@@ -149,22 +131,31 @@ public class AuthenticationBean implements Serializable {
         FacesContext context = FacesContext.getCurrentInstance();
         User user = getUser();
         if (user != null) {
-	    String p1=user.getPassword();
-            String p2=HashConvert(password);
-        if (!p1.equals(p2)) {
+            PasswordHasher.Result result;
+            try {
+                result = passwordHasher.verify(password, user.getPassword());
+            } catch (IllegalStateException e) {
+                //the hashing pool is saturated, e.g. during a login storm
+                context.addMessage(null, new FacesMessage(FacesMessage.SEVERITY_ERROR, "Login Failed!", e.getMessage()));
+                return null;
+            }
+        if (result == PasswordHasher.Result.INVALID) {
             FacesMessage message = new FacesMessage(FacesMessage.SEVERITY_ERROR,
                                         "Login Failed!", "The password specified is not correct.");
-            System.out.println("Login Failed! The password specified is not correct.");
+            Logger.getLogger(AuthenticationBean.class.getName()).log(Level.FINE, "Login failed: wrong password");
             context.addMessage(null, message);
                 return null;
             }
+            if (result == PasswordHasher.Result.VALID_NEEDS_REHASH) {
+                upgradePasswordHash(user);
+            }
             Logged=true;
             //redirect is to refresh the session state
             return "home.xhtml?faces-redirect=true";
         } else {
             FacesMessage message = new FacesMessage(FacesMessage.SEVERITY_ERROR,
                     "Login Failed!", "Username '"+ username+"' does not exist.");
-            System.out.println("Login Failed! Username '"+ username+"' does not exist.");
+            Logger.getLogger(AuthenticationBean.class.getName()).log(Level.FINE, "Login failed: unknown username");
             context.addMessage(null, message);
             return null;
         }
@@ -181,31 +172,13 @@ public class AuthenticationBean implements Serializable {
             context.addMessage(null, message);
         }
     }
-    //Retrieve a user by username
+    //Retrieve a user by username; read without a transaction
     private User getUser() {
-        try {
-            utx.begin();
-            User user = (User)
-            em.createNamedQuery("User.findByUsername").
-                    setParameter("username", username).getSingleResult();
-            utx.commit();
-            return user;
-        } catch (NoResultException | NotSupportedException | SystemException | RollbackException | HeuristicMixedException | HeuristicRollbackException | SecurityException | IllegalStateException nre) {
-            return null;
-        }
+        return userEJB.findUserByUsername(username);
     }
-    //Retrieve a user by email address
+    //Retrieve a user by email address; read without a transaction
     private User getUserbyEmail() {
-        try {
-            utx.begin();
-            User user = (User)
-            em.createNamedQuery("User.findByEmail").
-                    setParameter("email", email).getSingleResult();
-            //utx.commit();
-            return user;
-        } catch (NoResultException | NotSupportedException | SystemException | SecurityException | IllegalStateException nre) {
-            return null;
-        }
+        return userEJB.findUserByEmail(email);
     }
     //Generate a recovery string of 20 character length 
     public String createRecoveryCode(){
@@ -230,33 +203,30 @@ public class AuthenticationBean implements Serializable {
             return null;
         }
     }
-    //Generate a random verification code and send it to the user's email address
+    //Generate a random verification code and queue it for mailing to the user's email address
     public String createRandomCode() {
-        //The sending of email uses a fake SMTP server
-        Properties props = new Properties();
-        props.put("mail.smtp.host", "localhost");
-        props.put("mail.smtp.port", 2525);
-        Session session = Session.getDefaultInstance(props);
-        MimeMessage message = new MimeMessage(session);
+        //The mail is sent in the background by the MailDispatcher; by default to a fake SMTP server on port 2525
         try {
-            message.setFrom(new InternetAddress("CENTRE@glassfish.com"));
-            InternetAddress[] address = {new InternetAddress(email)};
-            message.setRecipients(Message.RecipientType.TO, address);
-            if (!recovery) {
-                message.setSubject("The Verification Code");
-            } else {
-                message.setSubject("The Recovery Code");
-            }
-            message.setSentDate(new Date());
             if (!recovery) {
-                message.setText("The Verification Code: "+genVerificationCode());
+                mailQueue.enqueue(email, "The Verification Code", "The Verification Code: "
+                        +codeStore.issue(VerificationCodeStore.Purpose.REGISTRATION, email));
             } else {
-                message.setText("The Recovery Code: "+genVerificationCode());
+                mailQueue.enqueue(email, "The Recovery Code", "The Recovery Code: "
+                        +codeStore.issue(VerificationCodeStore.Purpose.RECOVERY, email));
             }
-            //jakarta.mail.Transport
-            Transport.send(message);
-        } catch (MessagingException ex) {
-            ex.printStackTrace();
+        } catch (IllegalStateException ex) {
+            //too many outstanding codes
+            recovery=false;
+            FacesContext.getCurrentInstance().addMessage(null,
+                    new FacesMessage(FacesMessage.SEVERITY_ERROR, "Unable to send a code!", ex.getMessage()));
+            return null;
+        } catch (RuntimeException ex) {
+            //nothing was queued, so the user must not be sent on to wait for the mail
+            Logger.getLogger(AuthenticationBean.class.getName()).log(Level.SEVERE, "Unable to queue code mail", ex);
+            recovery=false;
+            FacesContext.getCurrentInstance().addMessage(null,
+                    new FacesMessage(FacesMessage.SEVERITY_ERROR, "Unable to send a code, please try again later.", null));
+            return null;
         }
         if (recovery) {
             recovery=false;
@@ -267,70 +237,41 @@ public class AuthenticationBean implements Serializable {
     }
     //Generate a random string of length of 20 characters
     public String genVerificationCode() {
-        //The character pool
-        String SALTCHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ"
-                + "1234567890"
-                + "abcdefghijklmnopqrstuvwxyz"
-                + "!@#$%&*-+=?";
-        StringBuilder salt = new StringBuilder();
-        Random rnd = new Random();
-        while (salt.length() < 20) { // length of the random string.
-            int index = (int) (rnd.nextFloat() * SALTCHARS.length());
-            salt.append(SALTCHARS.charAt(index));
-        }
-        String saltStr = salt.toString();
-        this.verificationcode1=saltStr;
-        Logger.getLogger(AuthenticationBean.class.getName()).log(Level.INFO, "Recovery Code: "+saltStr);
-        return saltStr;
+        return VerificationCodeStore.generateCode();
     }
-    //Register a user into database
+    /*Register a user into database. The username and email are not looked up
+        beforehand: the insert itself is the uniqueness check, see UserEJB.createUser*/
     public String createUser() {
         FacesContext context = FacesContext.getCurrentInstance();
-        User wuser = getUser();
-        User euser=this.getUserbyEmail();
-        if ((wuser == null) && (euser==null)) {
-            if (!password.equals(passwordv)) {
-                FacesMessage message = new FacesMessage("The specified passwords do not match,  please try again!");
-                context.addMessage(null, message);
-                return null;
-            }
-            if (!verificationcode.equals(verificationcode1)) {
-                FacesMessage message = new FacesMessage("Wrong verification code, please try again!");
-                context.addMessage(null, message);
-                return null;
-            }
-            wuser = new User();
-            wuser.setFirstname(fname);
-            wuser.setLastname(lname);
-            wuser.setPassword(HashConvert(password));
-            wuser.setUsername(username);
-            wuser.setSince(new Date());
-            wuser.setEmail(email);
-            try {
-                //utx.begin();
-                em.persist(wuser);
-                utx.commit();
-                //Reset the user
-                wuser=null;
-                resetFields();
-                return "index.xhtml?faces-redirect=true";
-            } catch (Exception e) {
-                FacesMessage message = new FacesMessage(
-                        FacesMessage.SEVERITY_ERROR, "Error creating user!",
-                        "Unexpected error when creating your account.  Please contact the system Administrator");
-                context.addMessage(null, message);
-                Logger.getAnonymousLogger().log(Level.SEVERE, "Unable to create new user",e);
-                return null;
-            }
-        } else {
-            if (!(wuser==null)) {
-                FacesMessage message = new FacesMessage(
-                        FacesMessage.SEVERITY_ERROR, "Username '" + username
-                        + "' already registered!  Please choose a different username.",
-                        "Please choose a different username.");
-                context.addMessage(null, message);
-                return null; 
-            } else {
+        if (!password.equals(passwordv)) {
+            FacesMessage message = new FacesMessage("The specified passwords do not match,  please try again!");
+            context.addMessage(null, message);
+            return null;
+        }
+        //Checked early; it is only used up with the insert, so a taken username can be corrected
+        if (!codeStore.check(VerificationCodeStore.Purpose.REGISTRATION, email, verificationcode)) {
+            FacesMessage message = new FacesMessage("Wrong or expired verification code, please try again!");
+            context.addMessage(null, message);
+            return null;
+        }
+        User wuser = new User();
+        wuser.setFirstname(fname);
+        wuser.setLastname(lname);
+        wuser.setUsername(username);
+        wuser.setSince(new Date());
+        wuser.setEmail(email);
+        try {
+            wuser.setPassword(passwordHasher.hash(password));
+            userEJB.createUser(wuser, verificationcode);
+            //Reset the user
+            resetFields();
+            return "index.xhtml?faces-redirect=true";
+        } catch (InvalidCodeException e) {
+            //used by a concurrent request after the early check
+            context.addMessage(null, new FacesMessage("Wrong or expired verification code, please try again!"));
+            return null;
+        } catch (DuplicateUserException e) {
+            if (e.getField() == DuplicateUserException.Field.EMAIL) {
                 FacesMessage message = new FacesMessage(
                         FacesMessage.SEVERITY_ERROR, "Email '"+ email
                         + "' already registered!  Please choose a different email.",
@@ -339,6 +280,23 @@ public class AuthenticationBean implements Serializable {
                 this.verificationcode=null;
                 return "verification.xhtml";
             }
+            FacesMessage message = new FacesMessage(
+                    FacesMessage.SEVERITY_ERROR, "Username '" + username
+                    + "' already registered!  Please choose a different username.",
+                    "Please choose a different username.");
+            context.addMessage(null, message);
+            return null;
+        } catch (IllegalArgumentException e) {
+            //rejected by the validation in UserEJB
+            context.addMessage(null, new FacesMessage(FacesMessage.SEVERITY_ERROR, "Error creating user!", e.getMessage()));
+            return null;
+        } catch (Exception e) {
+            FacesMessage message = new FacesMessage(
+                    FacesMessage.SEVERITY_ERROR, "Error creating user!",
+                    "Unexpected error when creating your account.  Please contact the system Administrator");
+            context.addMessage(null, message);
+            Logger.getAnonymousLogger().log(Level.SEVERE, "Unable to create new user",e);
+            return null;
         }
     }
     //Reset a user from the recovery procedure
@@ -349,16 +307,21 @@ public class AuthenticationBean implements Serializable {
             context.addMessage(null, message);
             return null;
         }
-        if (!verificationcode.equals(verificationcode1)) {
-            FacesMessage message = new FacesMessage("Wrong recovery code, please try again!");
+        //Checked early; it is only used up with the new password, so a failure can be retried
+        if (!codeStore.check(VerificationCodeStore.Purpose.RECOVERY, email, verificationcode)) {
+            FacesMessage message = new FacesMessage("Wrong or expired recovery code, please try again!");
             context.addMessage(null, message);
             return null;
         }
-        ruser.setPassword(HashConvert(password));
         try {
-            utx.begin();
-            em.merge(ruser);
-            utx.commit();
+            //Looked up again, so the recovery can finish on any node
+            User user = getUserbyEmail();
+            if (user == null) {
+                context.addMessage(null, new FacesMessage(FacesMessage.SEVERITY_ERROR,
+                        "Invalid Email!", "Email '"+ email+"' does not exist."));
+                return null;
+            }
+            userEJB.resetPasswordHash(user.getId(), passwordHasher.hash(password), verificationcode);
             //Rest the user
             ruser=null;
             username=null;
@@ -367,9 +330,12 @@ public class AuthenticationBean implements Serializable {
             fname=null;
             lname=null;
             verificationcode=null;
-            verificationcode1=null;
             email=null;
             return "index.xhtml?faces-redirect=true";
+        } catch (InvalidCodeException e) {
+            //used by a concurrent request after the early check
+            context.addMessage(null, new FacesMessage("Wrong or expired recovery code, please try again!"));
+            return null;
         } catch (Exception e) {
           FacesMessage message = new FacesMessage(
                   FacesMessage.SEVERITY_ERROR, "Error recovering user!",
@@ -387,7 +353,6 @@ public class AuthenticationBean implements Serializable {
         fname = null;
         lname = null;
         verificationcode = null;
-        verificationcode1 = null;
         email = null;
     }
 }
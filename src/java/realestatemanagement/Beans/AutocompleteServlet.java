@@ -0,0 +1,94 @@
+package realestatemanagement.Beans;
+
+import jakarta.ejb.EJB;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import realestatemanagement.ejb.AutocompleteIndex;
+import realestatemanagement.ejb.Metrics;
+import realestatemanagement.ejb.NdjsonExportSink;
+
+/**
+ * Autocomplete suggestions for the search and create forms.
+ * GET /autocomplete?field=city|street|firstName|lastName&amp;q=prefix&amp;limit=n
+ * answers a JSON array of at most n (default and maximum 10) values
+ * starting with the prefix, most frequent first. Lookups are served from
+ * {@link AutocompleteIndex} without touching the database; see
+ * resources/store/autocomplete.js for the client side.
+ *
+ * @author Zhengxu
+ */
+@WebServlet(name = "AutocompleteServlet", urlPatterns = {"/autocomplete"})
+public class AutocompleteServlet extends HttpServlet {
+
+    /** Longest prefix looked up; longer input cannot match a stored value anyway */
+    private static final int MAX_PREFIX_LENGTH = 100;
+
+    private final LongAdder requests = Metrics.counter("realestate_autocomplete_requests_total");
+
+    @EJB
+    private AutocompleteIndex autocompleteIndex;
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        AutocompleteIndex.Field field = field(req.getParameter("field"));
+        if (field == null) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "field must be city, street, firstName or lastName");
+            return;
+        }
+        String prefix = req.getParameter("q");
+        if (prefix != null && prefix.length() > MAX_PREFIX_LENGTH) {
+            prefix = prefix.substring(0, MAX_PREFIX_LENGTH);
+        }
+        int limit = AutocompleteIndex.MAX_SUGGESTIONS;
+        String limitParam = req.getParameter("limit");
+        if (limitParam != null) {
+            try {
+                limit = Integer.parseInt(limitParam);
+            } catch (NumberFormatException e) {
+                resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "limit must be a number");
+                return;
+            }
+        }
+        requests.increment();
+        List<String> values = autocompleteIndex.suggest(field, prefix, limit);
+
+        StringBuilder json = new StringBuilder(16 + values.size() * 24).append('[');
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(NdjsonExportSink.quote(values.get(i)));
+        }
+        json.append(']');
+
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        // repeated keystrokes for the same prefix are answered by the browser
+        resp.setHeader("Cache-Control", "private, max-age=60");
+        resp.getWriter().write(json.toString());
+    }
+
+    private static AutocompleteIndex.Field field(String parameter) {
+        if (parameter == null) {
+            return null;
+        }
+        switch (parameter) {
+            case "city":
+                return AutocompleteIndex.Field.CITY;
+            case "street":
+                return AutocompleteIndex.Field.STREET;
+            case "firstName":
+                return AutocompleteIndex.Field.FIRST_NAME;
+            case "lastName":
+                return AutocompleteIndex.Field.LAST_NAME;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package realestatemanagement.Beans;
+
+import jakarta.servlet.http.HttpServletRequest;
+import java.net.URI;
+import java.util.Locale;
+
+/**
+ * Checks that keep other sites from making a logged in user's browser send
+ * state changing requests, for the servlets that are protected only by the
+ * session cookie.
+ *
+ * A cross-site HTML form can only post application/x-www-form-urlencoded,
+ * multipart/form-data or text/plain, and a cross-site script needs a CORS
+ * preflight, which this application never grants, for any other content
+ * type. Browsers also send Origin, or at least Referer, with such requests,
+ * and it must name this host.
+ *
+ * @author Zhengxu
+ */
+final class CrossSiteGuard {
+
+    private CrossSiteGuard() {
+    }
+
+    /**
+     * @param req Request
+     * @return false if the request names another site as its Origin or
+     *         Referer; true if it names this host or neither header is sent,
+     *         as by scripts outside a browser
+     */
+    static boolean isSameOrigin(HttpServletRequest req) {
+        String source = req.getHeader("Origin");
+        if (source == null) {
+            source = req.getHeader("Referer");
+            if (source == null) {
+                return true;
+            }
+        }
+        String host = req.getHeader("Host");
+        if (host == null || "null".equals(source)) {
+            return false;
+        }
+        try {
+            String authority = URI.create(source).getRawAuthority();
+            // the scheme is not compared, a proxy in front may terminate TLS
+            return authority != null && authority.equalsIgnoreCase(host);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param req Request
+     * @return Media type of the body in lower case without parameters, or an empty string if none is given
+     */
+    static String mediaType(HttpServletRequest req) {
+        String contentType = req.getContentType();
+        if (contentType == null) {
+            return "";
+        }
+        int semicolon = contentType.indexOf(';');
+        return (semicolon >= 0 ? contentType.substring(0, semicolon) : contentType).trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @param mediaType Media type, see {@link #mediaType}
+     * @return true for the types an HTML form can send from another site
+     */
+    static boolean isFormType(String mediaType) {
+        return "application/x-www-form-urlencoded".equals(mediaType)
+                || "multipart/form-data".equals(mediaType)
+                || "text/plain".equals(mediaType);
+    }
+}
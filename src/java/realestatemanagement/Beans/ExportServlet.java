@@ -0,0 +1,75 @@
+package realestatemanagement.Beans;
+
+import jakarta.ejb.EJB;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import realestatemanagement.ejb.AllocationEJB;
+import realestatemanagement.ejb.ExportFormat;
+import realestatemanagement.ejb.ExportSink;
+import realestatemanagement.ejb.PropertyEJB;
+import realestatemanagement.ejb.PropertyManagerEJB;
+
+/**
+ * Bulk export of listings, managers and allocations for reporting jobs.
+ * GET /export?type=rent|sale|managers|allocations&amp;format=csv|ndjson
+ * streams every row straight to the response; nothing is buffered beyond
+ * the chunk currently being written.
+ *
+ * @author Zhengxu
+ */
+@WebServlet(name = "ExportServlet", urlPatterns = {"/export"})
+public class ExportServlet extends HttpServlet {
+
+    private static final Logger LOGGER = Logger.getLogger(ExportServlet.class.getName());
+
+    @EJB
+    private PropertyEJB propertyEJB;
+
+    @EJB
+    private PropertyManagerEJB propertyManagerEJB;
+
+    @EJB
+    private AllocationEJB allocationEJB;
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        String type = req.getParameter("type");
+        if (type == null || !(type.equals("rent") || type.equals("sale")
+                || type.equals("managers") || type.equals("allocations"))) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "type must be rent, sale, managers or allocations");
+            return;
+        }
+        ExportFormat format = ExportFormat.fromParameter(req.getParameter("format"));
+
+        resp.setContentType(format.getContentType());
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Content-Disposition", "attachment; filename=\"" + type + "." + format.getParameter() + "\"");
+        ExportSink sink = format.newSink(resp.getWriter());
+
+        try {
+            switch (type) {
+                case "rent":
+                    propertyEJB.exportRentProperties(sink);
+                    break;
+                case "sale":
+                    propertyEJB.exportSaleProperties(sink);
+                    break;
+                case "managers":
+                    propertyManagerEJB.exportManagers(sink);
+                    break;
+                default:
+                    allocationEJB.exportAllocations(sink);
+            }
+            sink.flush();
+        } catch (IOException e) {
+            // usually the client closed the connection part way through
+            LOGGER.log(Level.WARNING, "Export of " + type + " aborted", e);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package realestatemanagement.Beans;
+
+import jakarta.ejb.EJB;
+import jakarta.json.Json;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import realestatemanagement.ejb.ImportReport;
+import realestatemanagement.ejb.ListingEntry;
+import realestatemanagement.ejb.PropertyImportEJB;
+
+/**
+ * Bulk import of rent or sale listings.
+ * POST /import?kind=rent|sale[&amp;chunkSize=n] with a CSV body (text/csv) or
+ * a JSON array or newline delimited JSON body (application/json,
+ * application/x-ndjson). Responds with the import report as JSON.
+ * Other content types, which include everything an HTML form can post, are
+ * rejected, as are requests from another site's pages.
+ *
+ * @author Zhengxu
+ */
+@WebServlet(name = "ImportServlet", urlPatterns = {"/import"})
+public class ImportServlet extends HttpServlet {
+
+    private static final Logger LOGGER = Logger.getLogger(ImportServlet.class.getName());
+
+    @EJB
+    private PropertyImportEJB propertyImportEJB;
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (!CrossSiteGuard.isSameOrigin(req)) {
+            resp.sendError(HttpServletResponse.SC_FORBIDDEN, "Cross-site import requests are not allowed");
+            return;
+        }
+        String mediaType = CrossSiteGuard.mediaType(req);
+        boolean jsonBody = "application/json".equals(mediaType) || "application/x-ndjson".equals(mediaType);
+        if (!jsonBody && !"text/csv".equals(mediaType)) {
+            resp.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE,
+                    "Content type must be text/csv, application/json or application/x-ndjson");
+            return;
+        }
+
+        String kindParam = req.getParameter("kind");
+        ListingEntry.Kind kind;
+        if ("rent".equals(kindParam)) {
+            kind = ListingEntry.Kind.RENT;
+        } else if ("sale".equals(kindParam)) {
+            kind = ListingEntry.Kind.SALE;
+        } else {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "kind must be rent or sale");
+            return;
+        }
+
+        int chunkSize = PropertyImportEJB.DEFAULT_CHUNK_SIZE;
+        if (req.getParameter("chunkSize") != null) {
+            try {
+                chunkSize = Integer.parseInt(req.getParameter("chunkSize"));
+            } catch (NumberFormatException e) {
+                resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "chunkSize must be a number");
+                return;
+            }
+        }
+
+        if (req.getCharacterEncoding() == null) {
+            req.setCharacterEncoding("UTF-8");
+        }
+        ImportReport report;
+        try {
+            report = jsonBody
+                    ? propertyImportEJB.importJson(req.getReader(), kind, chunkSize)
+                    : propertyImportEJB.importCsv(req.getReader(), kind, chunkSize);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Listing import failed", e);
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        try (JsonGenerator json = Json.createGenerator(resp.getWriter())) {
+            json.writeStartObject()
+                    .write("rows", report.getRows())
+                    .write("imported", report.getImported())
+                    .write("failed", report.getFailed())
+                    .write("elapsedMillis", report.getElapsedMillis())
+                    .writeStartArray("failures");
+            for (ImportReport.Failure failure : report.getFailures()) {
+                json.writeStartObject()
+                        .write("row", failure.getRow())
+                        .write("message", failure.getMessage() != null ? failure.getMessage() : "")
+                        .writeEnd();
+            }
+            json.writeEnd().writeEnd();
+        }
+    }
+}
@@ -10,6 +10,8 @@ import jakarta.servlet.ServletResponse;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.inject.Inject;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class LoginFilter implements Filter {
 
@@ -17,9 +19,23 @@ public class LoginFilter implements Filter {
     @Inject
     AuthenticationBean session;
 
+    //Access rules of the application paths, compiled once from the init parameters in web.xml
+    private RouteTable routes;
+    //Throttling of login, verification and recovery attempts, from the same init parameters
+    private RateLimiter limiter;
+
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
         System.out.println("Init app");
+        try {
+            routes = RouteTable.fromConfig(filterConfig);
+            limiter = RateLimiter.fromConfig(filterConfig);
+        } catch (IllegalArgumentException e) {
+            throw new ServletException("Invalid LoginFilter route configuration", e);
+        }
+        if (routes.size() == 0) {
+            Logger.getLogger(LoginFilter.class.getName()).log(Level.WARNING, "LoginFilter protects no pages");
+        }
     }
 
     @Override
@@ -27,39 +43,58 @@ public class LoginFilter implements Filter {
         HttpServletRequest req = (HttpServletRequest) request;
         HttpServletResponse resp = (HttpServletResponse) response;
 
-        //Any after login accessible pages will be listed here
-        String[] afterLog = {"logout.xhtml", "home.xhtml", "listManager.xhtml", "newPropertymanager.xhtml", "searchManager.xhtml", "viewManager.xhtml",
-            "allocationList.xhtml", "createrentproperty.xhtml", "createsaleproperty.xhtml", "foundmanager.xhtml", "listManager.xhtml", "newAllocation.xhtml",
-            "rentpropertydetails.xhtml", "salepropertydetails.xhtml", "salepropertylist.xhtml", "rentpropertylist.xhtml", "searchAllocation.xhtml",
-            "searchrentproperty.xhtml", "searchsaleproperty.xhtml", "searchrentpropertyresult.xhtml", "searchsalepropertyresult.xhtml", "foundAllocation.xhtml"};
-        String url = req.getRequestURI();
-        if (session == null || !session.isLogged()) {
-            boolean risk = false;
-            for (int i = 0; i < afterLog.length; i++) {
-                if (url.indexOf(afterLog[i]) >= 0) {
-                    risk = true;
-                    break;
-                }
+        //The decoded path the request is dispatched on, not the raw URI
+        String path = RouteTable.pagePath(req);
+
+        //Throttle form posts before they reach any lookup, password hashing or mail
+        if ("POST".equals(req.getMethod()) && limiter.size() > 0) {
+            if (req.getCharacterEncoding() == null) {
+                //reading the form here must not decode it differently from JSF
+                req.setCharacterEncoding("UTF-8");
             }
-            if (risk) {
-                resp.sendRedirect(req.getServletContext().getContextPath() + "/login.xhtml");
-            } else {
-                chain.doFilter(request, response);
+            long retryAfter = limiter.acquire(req, path);
+            if (retryAfter > 0) {
+                resp.setHeader("Retry-After", Long.toString(retryAfter));
+                resp.sendError(429, "Too many attempts, please try again in " + retryAfter + " seconds.");
+                return;
             }
-        } else {
-            if (url.contains("registration.xhtml") || url.contains("login.xhtml")
-                    || url.contains("verification.xhtml") || url.contains("emailRecovery.xhtml")
-                    || url.contains("userRecovery.xhtml")) {
-                resp.sendRedirect(req.getServletContext().getContextPath() + "/home.xhtml");
-            } else if (url.contains("logout.xhtml")) {
-                //Use the following for GlassFish 6.2.5  
-                //req.getSession().removeAttribute("authBean");
-                //Use the following for GlassFish 7.0.9  
-                req.getSession(false).invalidate();
-                resp.sendRedirect(req.getServletContext().getContextPath() + "/login.xhtml");
-            } else {
+        }
+
+        RouteTable.Access access = routes.lookup(path);
+        if (access == RouteTable.Access.STATIC || access == RouteTable.Access.PUBLIC) {
+            //Stylesheets and public pages never need the session-scoped bean
+            chain.doFilter(request, response);
+            return;
+        }
+
+        //Without an HTTP session nobody can be logged in, so the bean is not resolved
+        boolean logged = req.getSession(false) != null && session != null && session.isLogged();
+        switch (access) {
+            case AUTHENTICATED:
+                if (logged) {
+                    chain.doFilter(request, response);
+                } else {
+                    resp.sendRedirect(req.getContextPath() + "/login.xhtml");
+                }
+                break;
+            case GUEST:
+                if (logged) {
+                    resp.sendRedirect(req.getContextPath() + "/home.xhtml");
+                } else {
+                    chain.doFilter(request, response);
+                }
+                break;
+            case LOGOUT:
+                if (logged) {
+                    //Use the following for GlassFish 6.2.5  
+                    //req.getSession().removeAttribute("authBean");
+                    //Use the following for GlassFish 7.0.9  
+                    req.getSession(false).invalidate();
+                }
+                resp.sendRedirect(req.getContextPath() + "/login.xhtml");
+                break;
+            default:
                 chain.doFilter(request, response);
-            }
         }
     }
 
@@ -0,0 +1,43 @@
+package realestatemanagement.Beans;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.util.Map;
+import realestatemanagement.ejb.Metrics;
+
+/**
+ * Operational metrics in the Prometheus text format, one "name value" line
+ * per metric. GET /metrics never creates a session. It is only answered for
+ * requests from the local host, unless the system property
+ * realestate.metrics.public is true.
+ *
+ * @author Zhengxu
+ */
+@WebServlet(name = "MetricsServlet", urlPatterns = {"/metrics"})
+public class MetricsServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (!Boolean.getBoolean("realestate.metrics.public")
+                && !InetAddress.getByName(req.getRemoteAddr()).isLoopbackAddress()) {
+            resp.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        resp.setContentType("text/plain; version=0.0.4");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Cache-Control", "no-store");
+        PrintWriter out = resp.getWriter();
+        for (Map.Entry<String, Long> metric : Metrics.snapshot().entrySet()) {
+            out.print(metric.getKey());
+            out.print(' ');
+            out.println(metric.getValue());
+        }
+    }
+}
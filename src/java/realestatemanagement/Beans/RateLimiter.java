@@ -0,0 +1,351 @@
+package realestatemanagement.Beans;
+
+import jakarta.servlet.FilterConfig;
+import jakarta.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import realestatemanagement.ejb.Metrics;
+
+/**
+ * Token bucket rate limits on form posts to the login, verification and
+ * recovery pages, compiled once from the LoginFilter init parameters in
+ * web.xml. Checked before the request reaches JSF, so a rejected attempt
+ * costs no lookup, password hash or mail.
+ *
+ * Each page has buckets per client IP address and per submitted username
+ * or email. A bucket holds up to its capacity of attempts and refills
+ * evenly over its period. The first attempt on an empty bucket waits for
+ * the next token; every further rejection before the bucket has refilled
+ * completely locks the key out for twice as long, from the base lockout up
+ * to the maximum.
+ *
+ * Buckets are spread over independent stripes. Updates are lock-free; a
+ * stripe that grows large sweeps out its idle buckets, and once full it
+ * charges new keys to one overflow bucket per rule rather than grow without
+ * bound. The overflow bucket only delays attempts, it never locks out, since
+ * it is shared by every key it takes in.
+ *
+ * @author Zhengxu
+ */
+final class RateLimiter {
+
+    /** What a bucket is keyed by */
+    enum Key {
+        /** Client IP address */
+        IP,
+        /** Submitted username field */
+        USERNAME,
+        /** Submitted email field */
+        EMAIL
+    }
+
+    /**
+     * Init parameter with the limits: a page path followed by its rules,
+     * e.g. "/login.xhtml ip=20/60 username[loginForm:username]=5/300",
+     * meaning 20 attempts per 60 seconds from one address and 5 per 300
+     * seconds for the username in the field with client ID loginForm:username.
+     * The exact client ID is required: matching any field that merely ends in
+     * :username would let a decoy field give every attempt a fresh bucket
+     * while JSF still reads the real one.
+     */
+    static final String LIMITS_PARAM = "rate-limits";
+    /** Init parameter with the base and maximum lockout in seconds, e.g. "30 3600" */
+    static final String LOCKOUT_PARAM = "rate-lockout";
+
+    private static final int STRIPES = 64;
+    /** Buckets in a stripe before idle ones are swept */
+    private static final int SWEEP_SIZE = 2048;
+    /** Buckets in a stripe beyond which new keys share the overflow bucket */
+    private static final int MAX_STRIPE_SIZE = 16384;
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final Map<Key, LongAdder> REJECTED = new EnumMap<>(Key.class);
+    private static final LongAdder LOCKOUTS = Metrics.counter("realestate_ratelimit_lockouts_total");
+    private static final LongAdder OVERFLOW = Metrics.counter("realestate_ratelimit_overflow_total");
+
+    static {
+        for (Key key : Key.values()) {
+            REJECTED.put(key, Metrics.counter(
+                    "realestate_ratelimit_rejected_total{key=\"" + key.name().toLowerCase(Locale.ROOT) + "\"}"));
+        }
+    }
+
+    private final Map<String, List<Rule>> rules;
+    private final long lockoutBaseNanos;
+    private final long lockoutMaxNanos;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    /** Bucket shared by the keys of each rule that found their stripe full */
+    private final Map<Rule, Bucket> overflow = new HashMap<>();
+
+    private RateLimiter(Map<String, List<Rule>> rules, long lockoutBaseNanos, long lockoutMaxNanos) {
+        this.rules = rules;
+        this.lockoutBaseNanos = lockoutBaseNanos;
+        this.lockoutMaxNanos = lockoutMaxNanos;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+        long now = System.nanoTime();
+        for (List<Rule> pageRules : rules.values()) {
+            for (Rule rule : pageRules) {
+                overflow.put(rule, new Bucket(rule, now));
+            }
+        }
+        Metrics.gauge("realestate_ratelimit_buckets", this::bucketCount);
+    }
+
+    /**
+     * Compile the limits from the filter init parameters
+     * @param config Filter configuration
+     * @return Rate limiter, without rules if none are configured
+     * @throws IllegalArgumentException if a limit cannot be parsed
+     */
+    static RateLimiter fromConfig(FilterConfig config) {
+        Map<String, List<Rule>> rules = new HashMap<>();
+        List<Rule> current = null;
+        for (String token : split(config.getInitParameter(LIMITS_PARAM))) {
+            if (token.startsWith("/")) {
+                current = new ArrayList<>();
+                if (rules.put(token, current) != null) {
+                    throw new IllegalArgumentException("Rate limits of " + token + " given twice");
+                }
+                continue;
+            }
+            if (current == null) {
+                throw new IllegalArgumentException("Rate limit before any page path: " + token);
+            }
+            current.add(Rule.parse(token));
+        }
+        for (Map.Entry<String, List<Rule>> page : rules.entrySet()) {
+            // the IP rule first, so a flood from one address does not use up a victim's username bucket
+            page.getValue().sort((a, b) -> a.key.compareTo(b.key));
+            page.setValue(Collections.unmodifiableList(page.getValue()));
+        }
+
+        String[] lockout = split(config.getInitParameter(LOCKOUT_PARAM));
+        long base = lockout.length > 0 ? Long.parseLong(lockout[0]) : 30;
+        long max = lockout.length > 1 ? Long.parseLong(lockout[1]) : 3600;
+        if (base <= 0 || max < base) {
+            throw new IllegalArgumentException("Invalid lockout: " + base + " " + max);
+        }
+        return new RateLimiter(Collections.unmodifiableMap(rules),
+                TimeUnit.SECONDS.toNanos(base), TimeUnit.SECONDS.toNanos(max));
+    }
+
+    private static String[] split(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return new String[0];
+        }
+        return value.trim().split("[,\\s]+");
+    }
+
+    /**
+     * @return number of pages with limits
+     */
+    int size() {
+        return rules.size();
+    }
+
+    /**
+     * Take one attempt from every bucket the request falls into
+     * @param req Form post
+     * @param path Page path within the application
+     * @return 0 if the attempt may go ahead, otherwise the seconds until it may be retried
+     */
+    long acquire(HttpServletRequest req, String path) {
+        List<Rule> pageRules = rules.get(path);
+        if (pageRules == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        for (Rule rule : pageRules) {
+            String value = rule.key == Key.IP ? req.getRemoteAddr() : formField(req, rule.field);
+            if (value == null || value.isEmpty()) {
+                continue;
+            }
+            long wait = acquire(path + '|' + rule.key + '|' + value, rule, now);
+            if (wait > 0) {
+                REJECTED.get(rule.key).increment();
+                return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + TimeUnit.SECONDS.toNanos(1) - 1));
+            }
+        }
+        return 0;
+    }
+
+    // the first value, which is the one JSF decodes
+    private static String formField(HttpServletRequest req, String field) {
+        String value = req.getParameter(field);
+        return value == null ? null : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private long acquire(String id, Rule rule, long now) {
+        Stripe stripe = stripes[(id.hashCode() & Integer.MAX_VALUE) % STRIPES];
+        Bucket bucket = stripe.buckets.get(id);
+        if (bucket == null) {
+            stripe.sweep(now);
+            if (stripe.buckets.size() >= MAX_STRIPE_SIZE) {
+                // fail closed: a flood of new keys must not get unlimited attempts
+                OVERFLOW.increment();
+                return take(overflow.get(rule), rule, now, false);
+            }
+            bucket = stripe.buckets.computeIfAbsent(id, k -> new Bucket(rule, now));
+        }
+        return take(bucket, rule, now, true);
+    }
+
+    private long take(Bucket bucket, Rule rule, long now, boolean lockout) {
+        while (true) {
+            State state = bucket.state.get();
+            if (now - state.lockedUntil < 0) {
+                return state.lockedUntil - now;
+            }
+            double tokens = Math.min(rule.capacity, state.tokens + (double) (now - state.refilled) / rule.refillNanos);
+            // a full bucket forgives earlier rejections
+            int strikes = tokens >= rule.capacity ? 0 : state.strikes;
+            if (tokens >= 1) {
+                if (bucket.state.compareAndSet(state, new State(tokens - 1, now, strikes, now))) {
+                    return 0;
+                }
+                continue;
+            }
+            long wait;
+            if (strikes == 0 || !lockout) {
+                wait = (long) Math.ceil((1 - tokens) * rule.refillNanos);
+            } else {
+                wait = lockoutBaseNanos << Math.min(strikes - 1, 30);
+                if (wait <= 0 || wait > lockoutMaxNanos) {
+                    wait = lockoutMaxNanos;
+                }
+            }
+            if (bucket.state.compareAndSet(state, new State(tokens, now, strikes + 1, now + wait))) {
+                if (lockout && strikes > 0) {
+                    LOCKOUTS.increment();
+                }
+                return wait;
+            }
+        }
+    }
+
+    private long bucketCount() {
+        long count = 0;
+        for (Stripe stripe : stripes) {
+            count += stripe.buckets.size();
+        }
+        return count;
+    }
+
+    /**
+     * Limit of one key type on one page
+     */
+    private static final class Rule {
+
+        final Key key;
+        /** Client ID of the form field, null for IP rules */
+        final String field;
+        final int capacity;
+        final long refillNanos;
+
+        private Rule(Key key, String field, int capacity, long refillNanos) {
+            this.key = key;
+            this.field = field;
+            this.capacity = capacity;
+            this.refillNanos = refillNanos;
+        }
+
+        // ip=capacity/seconds or key[field]=capacity/seconds
+        static Rule parse(String token) {
+            int eq = token.indexOf('=');
+            int slash = token.indexOf('/', eq + 1);
+            if (eq <= 0 || slash < 0) {
+                throw new IllegalArgumentException("Rate limit must look like ip=20/60: " + token);
+            }
+            String name = token.substring(0, eq);
+            String field = null;
+            int bracket = name.indexOf('[');
+            if (bracket >= 0) {
+                if (bracket == 0 || !name.endsWith("]") || bracket + 2 >= name.length()) {
+                    throw new IllegalArgumentException("Rate limit field must look like username[loginForm:username]: " + token);
+                }
+                field = name.substring(bracket + 1, name.length() - 1);
+                name = name.substring(0, bracket);
+            }
+            Key key = Key.valueOf(name.toUpperCase(Locale.ROOT));
+            if ((key == Key.IP) != (field == null)) {
+                throw new IllegalArgumentException(key == Key.IP
+                        ? "IP rate limit takes no field: " + token
+                        : "Rate limit must name its form field, e.g. username[loginForm:username]=5/300: " + token);
+            }
+            int capacity = Integer.parseInt(token.substring(eq + 1, slash));
+            long seconds = Long.parseLong(token.substring(slash + 1));
+            if (capacity <= 0 || seconds <= 0) {
+                throw new IllegalArgumentException("Rate limit must be positive: " + token);
+            }
+            return new Rule(key, field, capacity, TimeUnit.SECONDS.toNanos(seconds) / capacity);
+        }
+    }
+
+    /**
+     * Immutable bucket state, replaced by compare and set
+     */
+    private static final class State {
+
+        final double tokens;
+        final long refilled;
+        final int strikes;
+        final long lockedUntil;
+
+        State(double tokens, long refilled, int strikes, long lockedUntil) {
+            this.tokens = tokens;
+            this.refilled = refilled;
+            this.strikes = strikes;
+            this.lockedUntil = lockedUntil;
+        }
+    }
+
+    private static final class Bucket {
+
+        final Rule rule;
+        final AtomicReference<State> state;
+
+        Bucket(Rule rule, long now) {
+            this.rule = rule;
+            this.state = new AtomicReference<>(new State(rule.capacity, now, 0, now));
+        }
+
+        // full again and not locked out, so it is the same as a new bucket
+        boolean isIdle(long now) {
+            State s = state.get();
+            return now - s.lockedUntil >= 0
+                    && s.tokens + (double) (now - s.refilled) / rule.refillNanos >= rule.capacity;
+        }
+    }
+
+    private static final class Stripe {
+
+        final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+        final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+        void sweep(long now) {
+            long last = lastSweep.get();
+            if (buckets.size() < SWEEP_SIZE || now - last < SWEEP_INTERVAL_NANOS
+                    || !lastSweep.compareAndSet(last, now)) {
+                return;
+            }
+            for (Iterator<Bucket> it = buckets.values().iterator(); it.hasNext(); ) {
+                if (it.next().isIdle(now)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+}
@@ -10,7 +10,9 @@ import java.io.Serializable;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import realestatemanagement.ejb.FetchProfile;
 import realestatemanagement.ejb.PropertyEJB;
+import realestatemanagement.ejb.PropertySearchCriteria;
 import realestatemanagement.model.RentProperty;
 
 /**
@@ -34,6 +36,7 @@ public class RentPropertyDetailsBean implements Serializable {
     private Long propertyId;
     private boolean propertyFound = false;
     private String errorMessage;
+    private List<RentProperty> similarProperties;
     
     // Navigation outcomes
     private static final String RENT_PROPERTY_LIST = "rentpropertylist?faces-redirect=true";
@@ -75,6 +78,7 @@ public class RentPropertyDetailsBean implements Serializable {
             LOGGER.log(Level.INFO, "Loading rent property with ID: {0}", id);
             
             rentProperty = propertyManager.findRentPropertyById(id);
+            similarProperties = null;
             
             if (rentProperty != null) {
                 propertyFound = true;
@@ -140,26 +144,26 @@ public class RentPropertyDetailsBean implements Serializable {
      * @return List of similar rent properties
      */
     public List<RentProperty> getSimilarProperties() {
-        if (rentProperty == null || rentProperty.getAddress() == null) {
+        if (similarProperties != null) {
+            return similarProperties; // getters are evaluated several times per render
+        }
+        if (rentProperty == null || rentProperty.getAddress() == null || rentProperty.getWeeklyRent() == null) {
             return List.of(); // Return empty list if no property or address
         }
         
         try {
-            String city = rentProperty.getAddress().getCity();
             Long currentRent = rentProperty.getWeeklyRent();
             
-            // Find properties in same city with rent within 20% range
-            Long minRent = Math.round(currentRent * 0.8);
-            Long maxRent = Math.round(currentRent * 1.2);
-            
-            List<RentProperty> similarProperties = propertyManager.findRentPropertiesByCity(city);
+            // Find properties in same city with rent within 20% range, excluding the current property
+            PropertySearchCriteria criteria = new PropertySearchCriteria();
+            criteria.setCity(rentProperty.getAddress().getCity());
+            criteria.setMinPrice(Math.round(currentRent * 0.8));
+            criteria.setMaxPrice(Math.round(currentRent * 1.2));
+            criteria.setExcludeId(rentProperty.getId());
+            criteria.setLimit(5); // Limit to 5 similar properties
             
-            // Filter by rent range and exclude current property
-            return similarProperties.stream()
-                    .filter(p -> !p.getId().equals(rentProperty.getId()))
-                    .filter(p -> p.getWeeklyRent() >= minRent && p.getWeeklyRent() <= maxRent)
-                    .limit(5) // Limit to 5 similar properties
-                    .toList();
+            similarProperties = propertyManager.searchRentProperties(criteria, FetchProfile.JOIN_ADDRESS);
+            return similarProperties;
                     
         } catch (Exception e) {
             LOGGER.log(Level.WARNING, "Error finding similar properties", e);
@@ -256,7 +260,8 @@ public class RentPropertyDetailsBean implements Serializable {
         
         try {
             // Get average rent for properties in the same city
-            double averageRent = propertyManager.getAverageWeeklyRent();
+            String city = rentProperty.getAddress() != null ? rentProperty.getAddress().getCity() : null;
+            double averageRent = propertyManager.getAverageWeeklyRent(city);
             return rentProperty.getWeeklyRent() < averageRent * 0.9; // 10% below average
         } catch (Exception e) {
             LOGGER.log(Level.WARNING, "Error calculating property value", e);
@@ -8,7 +8,12 @@ import jakarta.faces.view.ViewScoped;
 import jakarta.inject.Named;
 import java.io.Serializable;
 import java.util.List;
+import realestatemanagement.ejb.FetchProfile;
+import realestatemanagement.ejb.ListingPage;
+import realestatemanagement.ejb.ListingSort;
+import realestatemanagement.ejb.PageToken;
 import realestatemanagement.ejb.PropertyEJB;
+import realestatemanagement.jsf.PagedListModel;
 import realestatemanagement.model.RentProperty;
 
 /**
@@ -19,18 +24,40 @@ import realestatemanagement.model.RentProperty;
 @ViewScoped
 public class RentPropertyListBean implements Serializable{
 
+    private static final int PAGE_SIZE = 20;
+
     @EJB
     private PropertyEJB propertyManager;
 
-    private List<RentProperty> rentProperties;
+    private PagedListModel<RentProperty> listings;
 
     @PostConstruct
     public void init() {
-        rentProperties = propertyManager.findAllRentProperties();
+        // The page cursor travels in the URL so every page is a plain GET
+        listings = new PagedListModel<RentProperty>(PAGE_SIZE, true, ListingSort.ID.getParameter(), ListingSort.PRICE.getParameter()) {
+            @Override
+            protected List<RentProperty> load(int first, int pageSize, String sortField, boolean ascending) {
+                ListingSort sort = ListingSort.fromParameter(sortField);
+                PageToken after;
+                try {
+                    after = PageToken.decode(getCursor(), sort);
+                } catch (IllegalArgumentException e) {
+                    after = null; // stale or tampered cursor, start again from the first page
+                }
+                ListingPage<RentProperty> page = propertyManager.findRentPropertiesPage(after, pageSize, sort, FetchProfile.JOIN_ADDRESS);
+                setNextCursor(page.hasNext() ? page.getNextToken().encode() : null);
+                return page.getItems();
+            }
+
+            @Override
+            protected long count() {
+                return propertyManager.getTotalRentPropertyCount();
+            }
+        }.fromRequest();
     }
 
     public List<RentProperty> getRentProperties() {
-        return rentProperties;
+        return listings.getPage();
     }
 
     public String viewPropertyDetails(Long id) {
@@ -40,7 +67,15 @@ public class RentPropertyListBean implements Serializable{
     }
     
     // get count of total rest property or return 0
-    public int getRentPropertyCount() {
-        return (rentProperties != null) ? rentProperties.size() : 0;
+    public long getRentPropertyCount() {
+        return listings.getRowCount();
+    }
+
+    public PagedListModel<RentProperty> getListings() {
+        return listings;
+    }
+
+    public String getSort() {
+        return listings.getSortField();
     }
 }
@@ -0,0 +1,139 @@
+package realestatemanagement.Beans;
+
+import jakarta.servlet.FilterConfig;
+import jakarta.servlet.http.HttpServletRequest;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Access rules of the application paths, compiled once from the LoginFilter
+ * init parameters in web.xml.
+ *
+ * Pages are matched exactly by their path within the application, with a
+ * single hash lookup. Static prefixes are matched on the first path segment,
+ * also with a single hash lookup. The path is the one the container
+ * dispatches on, already percent-decoded and normalized, so an encoded
+ * spelling of a protected page cannot slip past its rule. Paths without a
+ * rule require a login; public pages have to be listed.
+ *
+ * @author Zhengxu
+ */
+final class RouteTable {
+
+    /**
+     * What a path requires of the requester
+     */
+    enum Access {
+        /** Served without looking at the session at all, e.g. stylesheets */
+        STATIC,
+        /** Anyone */
+        PUBLIC,
+        /** Logged in users only; anonymous requests are sent to the login page */
+        AUTHENTICATED,
+        /** Anonymous users only, e.g. the login page; logged in users are sent home */
+        GUEST,
+        /** Ends the session */
+        LOGOUT
+    }
+
+    /** Init parameter listing the pages anyone may see */
+    static final String PUBLIC_PARAM = "public";
+    /** Init parameter listing the pages that require a login */
+    static final String AUTHENTICATED_PARAM = "authenticated";
+    /** Init parameter listing the pages only anonymous users may see */
+    static final String GUEST_PARAM = "guest";
+    /** Init parameter listing the logout pages */
+    static final String LOGOUT_PARAM = "logout";
+    /** Init parameter listing the path prefixes served without any check */
+    static final String STATIC_PARAM = "static";
+
+    private final Map<String, Access> pages;
+    private final Set<String> staticSegments;
+
+    private RouteTable(Map<String, Access> pages, Set<String> staticSegments) {
+        this.pages = pages;
+        this.staticSegments = staticSegments;
+    }
+
+    /**
+     * Compile the rules from the filter init parameters. Each parameter is a
+     * comma or whitespace separated list of paths starting with "/"; static
+     * prefixes are given as "/segment/".
+     * @param config Filter configuration
+     * @return Route table
+     * @throws IllegalArgumentException if a path does not start with "/" or appears under two rules
+     */
+    static RouteTable fromConfig(FilterConfig config) {
+        Map<String, Access> pages = new HashMap<>();
+        addPages(pages, config.getInitParameter(PUBLIC_PARAM), Access.PUBLIC);
+        addPages(pages, config.getInitParameter(AUTHENTICATED_PARAM), Access.AUTHENTICATED);
+        addPages(pages, config.getInitParameter(GUEST_PARAM), Access.GUEST);
+        addPages(pages, config.getInitParameter(LOGOUT_PARAM), Access.LOGOUT);
+
+        Set<String> segments = new HashSet<>();
+        for (String prefix : split(config.getInitParameter(STATIC_PARAM))) {
+            if (!prefix.startsWith("/") || !prefix.endsWith("/") || prefix.indexOf('/', 1) != prefix.length() - 1) {
+                throw new IllegalArgumentException("Static prefix must be a single segment like /resources/: " + prefix);
+            }
+            segments.add(prefix.substring(1, prefix.length() - 1));
+        }
+        return new RouteTable(Collections.unmodifiableMap(pages), Collections.unmodifiableSet(segments));
+    }
+
+    private static void addPages(Map<String, Access> pages, String value, Access access) {
+        for (String path : split(value)) {
+            if (!path.startsWith("/")) {
+                throw new IllegalArgumentException("Path must start with /: " + path);
+            }
+            Access previous = pages.put(path, access);
+            if (previous != null && previous != access) {
+                throw new IllegalArgumentException("Path " + path + " is both " + previous + " and " + access);
+            }
+        }
+    }
+
+    private static String[] split(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return new String[0];
+        }
+        return value.trim().split("[,\\s]+");
+    }
+
+    /**
+     * Look up the access rule of a request
+     * @param path Path of the request within the application, see {@link #pagePath}
+     * @return Access rule, AUTHENTICATED if no rule matches
+     */
+    Access lookup(String path) {
+        int segmentEnd = path.indexOf('/', 1);
+        if (segmentEnd > 0 && !staticSegments.isEmpty() && staticSegments.contains(path.substring(1, segmentEnd))) {
+            return Access.STATIC;
+        }
+        Access access = pages.get(path);
+        return access != null ? access : Access.AUTHENTICATED;
+    }
+
+    /**
+     * Path of a request within the application, as the container matched it
+     * to a servlet: decoded, normalized and without any ;jsessionid
+     * @param req Request
+     * @return Page path, e.g. /login.xhtml, or / for the application root
+     */
+    static String pagePath(HttpServletRequest req) {
+        String path = req.getServletPath();
+        if (req.getPathInfo() != null) {
+            path += req.getPathInfo();
+        }
+        return path.isEmpty() ? "/" : path;
+    }
+
+    /**
+     * @return number of page rules
+     */
+    int size() {
+        return pages.size();
+    }
+}
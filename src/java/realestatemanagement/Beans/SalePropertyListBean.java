@@ -7,32 +7,66 @@ import jakarta.faces.view.ViewScoped;
 import jakarta.inject.Named;
 import java.io.Serializable;
 import java.util.List;
+import realestatemanagement.ejb.FetchProfile;
+import realestatemanagement.ejb.ListingPage;
+import realestatemanagement.ejb.ListingSort;
+import realestatemanagement.ejb.PageToken;
 import realestatemanagement.ejb.PropertyEJB;
+import realestatemanagement.jsf.PagedListModel;
 import realestatemanagement.model.SaleProperty;
 
 @Named
 @ViewScoped
 public class SalePropertyListBean implements Serializable{
 
+    private static final int PAGE_SIZE = 20;
+
     @EJB
     private PropertyEJB propertyManager;
 
-    private List<SaleProperty> saleProperties;
+    private PagedListModel<SaleProperty> listings;
 
     @PostConstruct
     public void init() {
-        // Load all sale properties from the database
-        saleProperties = propertyManager.findAllSaleProperties();
+        // Load one page of sale properties, seeking past the cursor in the URL
+        listings = new PagedListModel<SaleProperty>(PAGE_SIZE, true, ListingSort.ID.getParameter(), ListingSort.PRICE.getParameter()) {
+            @Override
+            protected List<SaleProperty> load(int first, int pageSize, String sortField, boolean ascending) {
+                ListingSort sort = ListingSort.fromParameter(sortField);
+                PageToken after;
+                try {
+                    after = PageToken.decode(getCursor(), sort);
+                } catch (IllegalArgumentException e) {
+                    after = null; // stale or tampered cursor, start again from the first page
+                }
+                ListingPage<SaleProperty> page = propertyManager.findSalePropertiesPage(after, pageSize, sort, FetchProfile.JOIN_ADDRESS);
+                setNextCursor(page.hasNext() ? page.getNextToken().encode() : null);
+                return page.getItems();
+            }
+
+            @Override
+            protected long count() {
+                return propertyManager.getTotalSalePropertyCount();
+            }
+        }.fromRequest();
     }
 
     // Getter for saleProperties
     public List<SaleProperty> getSaleProperties() {
-        return saleProperties;
+        return listings.getPage();
     }
     
     // get count of total sale property or return 0
-    public int getSalePropertyCount() {
-        return (saleProperties != null) ? saleProperties.size() : 0;
+    public long getSalePropertyCount() {
+        return listings.getRowCount();
+    }
+
+    public PagedListModel<SaleProperty> getListings() {
+        return listings;
+    }
+
+    public String getSort() {
+        return listings.getSortField();
     }
     
     public String viewPropertyDetails(Long id) {
@@ -0,0 +1,66 @@
+package realestatemanagement.Beans;
+
+import jakarta.servlet.annotation.WebListener;
+import jakarta.servlet.http.HttpSessionEvent;
+import jakarta.servlet.http.HttpSessionListener;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import realestatemanagement.ejb.Metrics;
+
+/**
+ * Counts HTTP sessions, to confirm that anonymous traffic does not create
+ * any. Publishes the number of live sessions, the total created and
+ * destroyed, and the number created during the last minute.
+ *
+ * @author Zhengxu
+ */
+@WebListener
+public class SessionMetrics implements HttpSessionListener {
+
+    private static final int WINDOW_SECONDS = 60;
+
+    private final AtomicLong live = new AtomicLong();
+    private final LongAdder created = Metrics.counter("realestate_sessions_created_total");
+    private final LongAdder destroyed = Metrics.counter("realestate_sessions_destroyed_total");
+
+    // sessions created per second over the last minute; each slot is tagged with its second
+    private final AtomicLongArray slotSecond = new AtomicLongArray(WINDOW_SECONDS);
+    private final AtomicLongArray slotCount = new AtomicLongArray(WINDOW_SECONDS);
+
+    public SessionMetrics() {
+        Metrics.gauge("realestate_sessions_live", live::get);
+        Metrics.gauge("realestate_sessions_created_last_minute", this::createdLastMinute);
+    }
+
+    @Override
+    public void sessionCreated(HttpSessionEvent se) {
+        live.incrementAndGet();
+        created.increment();
+
+        long second = System.currentTimeMillis() / 1000;
+        int slot = (int) (second % WINDOW_SECONDS);
+        long tagged = slotSecond.get(slot);
+        if (tagged != second && slotSecond.compareAndSet(slot, tagged, second)) {
+            slotCount.set(slot, 0);
+        }
+        slotCount.incrementAndGet(slot);
+    }
+
+    @Override
+    public void sessionDestroyed(HttpSessionEvent se) {
+        live.decrementAndGet();
+        destroyed.increment();
+    }
+
+    private long createdLastMinute() {
+        long now = System.currentTimeMillis() / 1000;
+        long total = 0;
+        for (int slot = 0; slot < WINDOW_SECONDS; slot++) {
+            if (now - slotSecond.get(slot) < WINDOW_SECONDS) {
+                total += slotCount.get(slot);
+            }
+        }
+        return total;
+    }
+}
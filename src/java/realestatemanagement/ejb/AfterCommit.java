@@ -0,0 +1,53 @@
+package realestatemanagement.ejb;
+
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Defers work on in-memory structures until the current JTA transaction has
+ * committed, so a rolled back write never becomes visible in a cache or index.
+ *
+ * @author Zhengxu
+ */
+final class AfterCommit {
+
+    private static final Logger LOGGER = Logger.getLogger(AfterCommit.class.getName());
+
+    private AfterCommit() {
+    }
+
+    /**
+     * Run an action once the current transaction commits, or immediately if
+     * there is no active transaction
+     * @param registry Container transaction synchronization registry
+     * @param action Action to run
+     */
+    static void run(TransactionSynchronizationRegistry registry, Runnable action) {
+        if (registry == null || registry.getTransactionKey() == null) {
+            action.run();
+            return;
+        }
+
+        registry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status != Status.STATUS_COMMITTED) {
+                    return;
+                }
+                try {
+                    action.run();
+                } catch (RuntimeException e) {
+                    // the data is committed; a failed cache update is repaired by the next rebuild
+                    LOGGER.log(Level.WARNING, "After-commit action failed", e);
+                }
+            }
+        });
+    }
+}
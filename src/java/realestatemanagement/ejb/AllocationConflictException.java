@@ -0,0 +1,47 @@
+package realestatemanagement.ejb;
+
+import jakarta.ejb.ApplicationException;
+
+/**
+ * Thrown by {@link AllocationEJB} when an allocation write loses a race:
+ * the property was allocated by someone else first, or the allocation was
+ * changed or deleted since it was read. Detected by the database on the
+ * write itself, from UNQ_ALLOCATION_PROPERTY or the allocation's version.
+ *
+ * @author Zhengxu
+ */
+@ApplicationException(rollback = true)
+public class AllocationConflictException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** What the write conflicted with */
+    public enum Reason {
+        /** The property already has an allocation; retrying cannot succeed */
+        PROPERTY_ALLOCATED,
+        /** The allocation changed since it was read; reload and retry */
+        STALE_ALLOCATION
+    }
+
+    private final Reason reason;
+
+    /**
+     * @param reason What the write conflicted with
+     * @param message Detail message
+     */
+    public AllocationConflictException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * @return true if the write may succeed when repeated with fresh data
+     */
+    public boolean isRetryable() {
+        return reason == Reason.STALE_ALLOCATION;
+    }
+}
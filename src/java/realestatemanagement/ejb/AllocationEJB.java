@@ -1,12 +1,34 @@
 package realestatemanagement.ejb;
 
+import jakarta.annotation.Resource;
+import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
 import jakarta.ejb.LocalBean;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.NoResultException;
+import jakarta.persistence.OptimisticLockException;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceException;
 import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import realestatemanagement.model.Allocation;
+import realestatemanagement.model.AllocationEvent;
+import realestatemanagement.model.Property;
+import realestatemanagement.model.PropertyManager;
 
 /**
  *
@@ -16,40 +38,411 @@ import realestatemanagement.model.Allocation;
 @LocalBean
 public class AllocationEJB {
 
+    /** Sort keys accepted by the paged queries, mapped to the JPQL they order by */
+    private static final Map<String, String> SORT_COLUMNS = Map.of(
+            "id", "a.id",
+            "creationTime", "a.creationTime");
+
     @PersistenceContext(unitName = "RealEstateManagementPU")
     private EntityManager em;
 
+    @EJB
+    private MarketStatistics marketStatistics;
+
+    @EJB
+    private ManagerLeaderboard leaderboard;
+
+    @Resource
+    private TransactionSynchronizationRegistry txRegistry;
+
+    /** Fetch plan of the entity reads, which hand out allocations with their manager and property */
+    private static final String FETCH_GRAPH = "Allocation.withManagerAndProperty";
+
     public List<Allocation> findAllocations() {
-        Query query = em.createNamedQuery("findAllAllocations");
+        TypedQuery<Allocation> query = em.createNamedQuery("findAllAllocations", Allocation.class);
+        query.setHint("jakarta.persistence.loadgraph", em.getEntityGraph(FETCH_GRAPH));
         return query.getResultList();
     }
     public List<Allocation> findAllocationsByPropertyManagerId(Long propertyManagerId) {
         return em.createQuery("SELECT a FROM Allocation a WHERE a.propertyManager.id = :propertyManagerId", Allocation.class)
+        .setHint("jakarta.persistence.loadgraph", em.getEntityGraph(FETCH_GRAPH))
         .setParameter("propertyManagerId", propertyManagerId).getResultList();
         
     }
     public Allocation findAllocationsById(Long id) {
-        return em.find(Allocation.class, id);
+        return em.find(Allocation.class, id, Map.of("jakarta.persistence.loadgraph", em.getEntityGraph(FETCH_GRAPH)));
         
     }
+
+    /**
+     * Get the table rows of all allocations
+     * @return Summaries of all allocations in ID order
+     */
+    public List<AllocationSummary> findAllocationSummaries() {
+        return em.createQuery(AllocationSummary.SELECT + " ORDER BY a.id", AllocationSummary.class).getResultList();
+    }
+
+    /**
+     * Get the table row of one allocation
+     * @param id Allocation ID
+     * @return Summary of the allocation, or null if not found
+     */
+    public AllocationSummary findAllocationSummaryById(Long id) {
+        List<AllocationSummary> found = em.createQuery(AllocationSummary.SELECT + " WHERE a.id = :id", AllocationSummary.class)
+                .setParameter("id", id)
+                .getResultList();
+        return found.isEmpty() ? null : found.get(0);
+    }
+    /**
+     * Create an allocation. That the property is not allocated yet is
+     * enforced by UNQ_ALLOCATION_PROPERTY: the insert is flushed straight
+     * away, before the manager's allocation count is touched, so of two
+     * concurrent allocations of one property the loser fails on its insert
+     * without queueing for the manager's row. The assignment is added to
+     * the allocation history in the same transaction.
+     * @param allocation Allocation with its manager and property
+     * @return Created allocation with generated ID
+     * @throws AllocationConflictException if the property is already allocated
+     */
     public Allocation createAllocation(Allocation allocation) {
-        em.persist(allocation);
+        try {
+            em.persist(allocation);
+            em.flush();
+        } catch (PersistenceException e) {
+            throw toConflict(e, allocation);
+        }
+        record(AllocationEvent.Type.ASSIGNED, allocation,
+                allocation.getCreationTime() != null ? allocation.getCreationTime() : new Date());
+        adjustAllocationCount(allocation.getPropertyManager().getId(), 1);
+        AfterCommit.run(txRegistry, marketStatistics::allocationAdded);
         return allocation;
     }
 
+    /**
+     * Create a chunk of allocations in a transaction of its own, for the
+     * allocation engine. The managers and properties are read with one query
+     * each, the allocations are written in a single flush so EclipseLink can
+     * send them as JDBC batches, and each manager's allocation count is
+     * adjusted once for the whole chunk. Pairs whose property or manager no
+     * longer exists, or whose property was allocated meanwhile, are skipped.
+     * If any row fails, the whole chunk is rolled back.
+     * @param propertyIds Property IDs
+     * @param managerIds Property manager ID of each property
+     * @return Number of allocations created
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public int createAllocations(long[] propertyIds, long[] managerIds) {
+        if (propertyIds.length != managerIds.length) {
+            throw new IllegalArgumentException("Every property needs exactly one manager");
+        }
+        if (propertyIds.length == 0) {
+            return 0;
+        }
+        List<Long> propertyIdList = new ArrayList<>(propertyIds.length);
+        Set<Long> managerIdSet = new HashSet<>();
+        for (int i = 0; i < propertyIds.length; i++) {
+            propertyIdList.add(propertyIds[i]);
+            managerIdSet.add(managerIds[i]);
+        }
+
+        Map<Long, Property> properties = new HashMap<>();
+        for (Property property : em.createQuery("SELECT p FROM Property p WHERE p.id IN :ids", Property.class)
+                .setParameter("ids", propertyIdList)
+                .getResultList()) {
+            properties.put(property.getId(), property);
+        }
+        Map<Long, PropertyManager> managers = new HashMap<>();
+        for (PropertyManager manager : em.createQuery("SELECT pm FROM PropertyManager pm WHERE pm.id IN :ids", PropertyManager.class)
+                .setParameter("ids", new ArrayList<>(managerIdSet))
+                .getResultList()) {
+            managers.put(manager.getId(), manager);
+        }
+        Set<Long> allocated = new HashSet<>(em.createQuery(
+                "SELECT a.property.id FROM Allocation a WHERE a.property.id IN :ids", Long.class)
+                .setParameter("ids", propertyIdList)
+                .getResultList());
+
+        Date now = new Date();
+        Map<Long, Integer> added = new HashMap<>();
+        List<Allocation> chunk = new ArrayList<>(propertyIds.length);
+        for (int i = 0; i < propertyIds.length; i++) {
+            Property property = properties.get(propertyIds[i]);
+            PropertyManager manager = managers.get(managerIds[i]);
+            if (property == null || manager == null || !allocated.add(propertyIds[i])) {
+                continue;
+            }
+            Allocation allocation = new Allocation();
+            allocation.setCreationTime(now);
+            allocation.setProperty(property);
+            allocation.setPropertyManager(manager);
+            em.persist(allocation);
+            chunk.add(allocation);
+            added.merge(manager.getId(), 1, Integer::sum);
+        }
+        for (Allocation allocation : chunk) {
+            record(AllocationEvent.Type.ASSIGNED, allocation, now);
+        }
+        em.flush();
+        for (Map.Entry<Long, Integer> entry : added.entrySet()) {
+            adjustAllocationCount(entry.getKey(), entry.getValue());
+        }
+        final int created = chunk.size();
+        AfterCommit.run(txRegistry, () -> marketStatistics.allocationsAdded(created));
+        em.clear();
+        return created;
+    }
 
     public void deleteAllocation(Allocation allocation) {
-        Allocation a = em.find(Allocation.class, allocation.getId());
-        em.remove(a);
+        deleteAllocationById(allocation.getId());
+    }
+
+    /**
+     * Delete an allocation. The delete is checked against the version read,
+     * so an allocation changed or deleted concurrently is reported rather
+     * than counted off its manager twice. The allocation stays in the
+     * history, which records its end.
+     * @param id Allocation ID
+     * @throws AllocationConflictException if the allocation no longer exists or changed meanwhile
+     */
+    public void deleteAllocationById(Long id) {
+        Allocation a = em.find(Allocation.class, id);
+        if (a == null) {
+            throw new AllocationConflictException(AllocationConflictException.Reason.STALE_ALLOCATION,
+                    "Allocation " + id + " no longer exists");
+        }
+        Long managerId = a.getPropertyManager().getId();
+        try {
+            em.remove(a);
+            em.flush();
+        } catch (PersistenceException e) {
+            throw toConflict(e, a);
+        }
+        record(AllocationEvent.Type.UNASSIGNED, a, new Date());
+        adjustAllocationCount(managerId, -1);
+        AfterCommit.run(txRegistry, marketStatistics::allocationRemoved);
         
     }
+    /**
+     * Update an allocation read earlier. Optimistic: the update succeeds
+     * only if the version is still the one read, and a new property must
+     * not be allocated already. A change of manager or property is recorded
+     * in the history as the end of the old allocation and the start of the
+     * new one.
+     * @param allocation Detached allocation with its changes
+     * @return Updated allocation
+     * @throws AllocationConflictException if the allocation changed meanwhile or the property is allocated
+     */
     public Allocation updateAllocation(Allocation allocation) {
-        return em.merge(allocation);
+        Allocation existing = allocation.getId() != null ? em.find(Allocation.class, allocation.getId()) : null;
+        Long oldManagerId = existing != null ? existing.getPropertyManager().getId() : null;
+        Long oldPropertyId = existing != null ? existing.getProperty().getId() : null;
+        Allocation merged;
+        try {
+            merged = em.merge(allocation);
+            em.flush();
+        } catch (PersistenceException e) {
+            throw toConflict(e, allocation);
+        }
+        Long newManagerId = merged.getPropertyManager().getId();
+        Long newPropertyId = merged.getProperty().getId();
+        if (oldManagerId != null && (!oldManagerId.equals(newManagerId) || !oldPropertyId.equals(newPropertyId))) {
+            Date now = new Date();
+            em.persist(new AllocationEvent(AllocationEvent.Type.UNASSIGNED, now, merged.getId(), oldPropertyId, oldManagerId));
+            record(AllocationEvent.Type.ASSIGNED, merged, now);
+        }
+        if (oldManagerId != null && !oldManagerId.equals(newManagerId)) {
+            adjustAllocationCount(oldManagerId, -1);
+            adjustAllocationCount(newManagerId, 1);
+        }
+        return merged;
+    }
+
+    /**
+     * Append an event for an allocation to the history
+     * @param type Assigned or unassigned
+     * @param allocation Allocation with its ID, manager and property
+     * @param time When it happened
+     */
+    private void record(AllocationEvent.Type type, Allocation allocation, Date time) {
+        em.persist(new AllocationEvent(type, time, allocation.getId(),
+                allocation.getProperty().getId(), allocation.getPropertyManager().getId()));
+    }
+
+    /**
+     * Translate a lost race on an allocation write
+     * @param e Exception thrown by the flush
+     * @param allocation Allocation that was being written
+     * @return Conflict exception, or e itself if the cause was something else
+     */
+    private static RuntimeException toConflict(PersistenceException e, Allocation allocation) {
+        if (e instanceof OptimisticLockException) {
+            return new AllocationConflictException(AllocationConflictException.Reason.STALE_ALLOCATION,
+                    "Allocation " + allocation.getId() + " was changed by someone else, reload it and try again");
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (!(cause instanceof SQLException)) {
+                continue;
+            }
+            SQLException sql = (SQLException) cause;
+            // SQLSTATE class 23 is an integrity constraint violation
+            if ((sql instanceof SQLIntegrityConstraintViolationException
+                    || (sql.getSQLState() != null && sql.getSQLState().startsWith("23")))
+                    && sql.getMessage() != null && sql.getMessage().toUpperCase().contains("UNQ_ALLOCATION_PROPERTY")) {
+                Long propertyId = allocation.getProperty() != null ? allocation.getProperty().getId() : null;
+                return new AllocationConflictException(AllocationConflictException.Reason.PROPERTY_ALLOCATED,
+                        "Property " + propertyId + " is already allocated");
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Change the allocation count column of a manager in place, and report
+     * the resulting count to the leaderboard once the transaction commits.
+     * The update holds the manager's row lock until then, so concurrent
+     * allocations for the same manager are counted one after the other; the
+     * reports can still arrive in any order, so they carry the count version.
+     * @param managerId Property manager ID
+     * @param delta Allocations added, or removed if negative
+     */
+    private void adjustAllocationCount(Long managerId, int delta) {
+        em.createNamedQuery("PropertyManager.adjustAllocationCount")
+                .setParameter("delta", (long) delta)
+                .setParameter("id", managerId)
+                .executeUpdate();
+        reportAllocationCount(managerId);
+    }
+
+    /**
+     * Report the allocation count of a manager as written by the current
+     * transaction to the leaderboard once the transaction commits
+     * @param managerId Property manager ID
+     */
+    private void reportAllocationCount(Long managerId) {
+        Object[] row = em.createNamedQuery("PropertyManager.allocationCountAndVersion", Object[].class)
+                .setParameter("id", managerId)
+                .getSingleResult();
+        long count = (Long) row[0];
+        long version = (Long) row[1];
+        AfterCommit.run(txRegistry, () -> leaderboard.put(managerId, count, version));
+    }
+
+    /**
+     * Recount the allocations of a manager and correct its allocation count
+     * column, in a transaction of its own. The manager's row is locked first,
+     * so no allocation for it can commit in between. The corrected count is
+     * reported to the leaderboard like any other change.
+     * @param managerId Property manager ID
+     * @return Number of allocations of the manager
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public long repairAllocationCount(Long managerId) {
+        PropertyManager manager = em.find(PropertyManager.class, managerId, LockModeType.PESSIMISTIC_WRITE);
+        if (manager == null) {
+            return 0L;
+        }
+        long count = countAllocationsOf(managerId);
+        em.createNamedQuery("PropertyManager.setAllocationCount")
+                .setParameter("count", count)
+                .setParameter("id", managerId)
+                .executeUpdate();
+        reportAllocationCount(managerId);
+        return count;
     }
     public int  countAllocations() {
+        if (marketStatistics.isReady()) {
+            return (int) marketStatistics.getAllocationCount();
+        }
 
         Query query = em.createNamedQuery("getTotalAllocations");
         Long count = (Long) query.getSingleResult();
         return count.intValue();
     }
+
+    /**
+     * Get one page of the allocation table, as summaries read from the
+     * columns shown rather than as entities
+     * @param first Offset of the first allocation
+     * @param max Maximum number of allocations
+     * @param sortField Sort key, "id" or "creationTime"; anything else sorts by ID
+     * @param ascending Sort direction
+     * @return Allocations of the page
+     */
+    public List<AllocationSummary> findAllocationSummariesPage(int first, int max, String sortField, boolean ascending) {
+        TypedQuery<AllocationSummary> query = em.createQuery(
+                AllocationSummary.SELECT + orderBy(sortField, ascending), AllocationSummary.class);
+        return page(query, first, max);
+    }
+
+    /**
+     * Get one page of the allocations of a property manager, as summaries
+     * @param propertyManagerId Property manager ID
+     * @param first Offset of the first allocation
+     * @param max Maximum number of allocations
+     * @param sortField Sort key, "id" or "creationTime"; anything else sorts by ID
+     * @param ascending Sort direction
+     * @return Allocations of the page
+     */
+    public List<AllocationSummary> findAllocationSummariesByPropertyManagerIdPage(Long propertyManagerId, int first, int max,
+                                                                              String sortField, boolean ascending) {
+        TypedQuery<AllocationSummary> query = em.createQuery(
+                AllocationSummary.SELECT + " WHERE pm.id = :propertyManagerId" + orderBy(sortField, ascending),
+                AllocationSummary.class);
+        query.setParameter("propertyManagerId", propertyManagerId);
+        return page(query, first, max);
+    }
+
+    /**
+     * Number of allocations of a property manager, from the leaderboard or
+     * else the manager's allocation count column
+     * @param propertyManagerId Property manager ID
+     * @return Number of allocations, 0 if the manager does not exist
+     */
+    public long countAllocationsByPropertyManagerId(Long propertyManagerId) {
+        if (leaderboard.isReady()) {
+            long count = leaderboard.getCount(propertyManagerId);
+            if (count >= 0) {
+                return count;
+            }
+        }
+        try {
+            return em.createNamedQuery("PropertyManager.allocationCount", Long.class)
+                    .setParameter("id", propertyManagerId).getSingleResult();
+        } catch (NoResultException e) {
+            return 0L;
+        }
+    }
+
+    private long countAllocationsOf(Long propertyManagerId) {
+        return em.createQuery("SELECT COUNT(a) FROM Allocation a WHERE a.propertyManager.id = :propertyManagerId", Long.class)
+        .setParameter("propertyManagerId", propertyManagerId).getSingleResult();
+    }
+
+    /**
+     * Stream every allocation to an export sink in ID order, outside a
+     * transaction and without loading the allocated entities
+     * @param sink Destination
+     * @return Number of allocations written
+     * @throws IOException if the sink cannot be written
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public long exportAllocations(ExportSink sink) throws IOException {
+        sink.header("id", "creationTime", "propertyManagerId", "propertyId");
+        return KeysetExport.stream(em,
+                "SELECT a.id, a.creationTime, a.propertyManager.id, a.property.id "
+                + "FROM Allocation a WHERE a.id > :lastId ORDER BY a.id", sink);
+    }
+
+    private static String orderBy(String sortField, boolean ascending) {
+        String column = SORT_COLUMNS.getOrDefault(sortField, "a.id");
+        String direction = ascending ? " ASC" : " DESC";
+        // ID as tie-break keeps the order stable across pages
+        return " ORDER BY " + column + direction + ("a.id".equals(column) ? "" : ", a.id" + direction);
+    }
+
+    private static <T> List<T> page(TypedQuery<T> query, int first, int max) {
+        query.setFirstResult(Math.max(0, first));
+        query.setMaxResults(Math.max(1, max));
+        return query.getResultList();
+    }
 }
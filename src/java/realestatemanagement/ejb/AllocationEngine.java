@@ -0,0 +1,455 @@
+package realestatemanagement.ejb;
+
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Assigns every unallocated property to a property manager, balancing the
+ * workload between managers.
+ *
+ * The load of a manager is the sum of the weights of the types of their
+ * properties ("realestate.allocation.weights", e.g. "house=2,unit=1";
+ * other types weigh 1). Each property goes to the manager with the lowest
+ * load, less a bonus if the manager already looks after properties in the
+ * same city ("realestate.allocation.cityAffinity") or of the same type
+ * ("realestate.allocation.typeAffinity"). Managers are kept in min-heaps on
+ * load: one of all managers, one per city and one per property type. Only
+ * the heads of the three heaps are compared, so a property is placed in
+ * O(log n); a manager with both bonuses that heads neither the city nor
+ * the type heap is missed by less than the smaller bonus. A manager with
+ * as many allocations as the capacity ("realestate.allocation.capacity")
+ * gets no more.
+ *
+ * Properties are read in ID order in chunks, and the assignments are
+ * written through AllocationEJB in chunks that each commit in their own
+ * transaction. A chunk that fails is retried row by row. A dry run plans
+ * the same assignments without writing any of them.
+ *
+ * @author Zhengxu
+ */
+@Singleton
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class AllocationEngine {
+
+    private static final Logger LOGGER = Logger.getLogger(AllocationEngine.class.getName());
+
+    /** Properties read per query */
+    private static final int LOAD_CHUNK_SIZE = 5000;
+
+    /** Allocations committed per transaction */
+    private static final int WRITE_CHUNK_SIZE = 1000;
+
+    /** Allocations a manager may have when no capacity is given */
+    public static final int DEFAULT_CAPACITY = Integer.getInteger("realestate.allocation.capacity", 500);
+
+    private static final double CITY_AFFINITY =
+            Double.parseDouble(System.getProperty("realestate.allocation.cityAffinity", "3"));
+    private static final double TYPE_AFFINITY =
+            Double.parseDouble(System.getProperty("realestate.allocation.typeAffinity", "1"));
+    private static final Map<String, Double> TYPE_WEIGHTS =
+            parseWeights(System.getProperty("realestate.allocation.weights", ""));
+
+    @PersistenceContext(unitName = "RealEstateManagementPU")
+    private EntityManager em;
+
+    @EJB
+    private AllocationEJB allocationEJB;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * Allocate the unallocated properties. Runs outside a transaction, so a
+     * long run is not cut short by the transaction timeout; only one run
+     * may be in progress at a time.
+     * @param dryRun Plan the assignments without writing them
+     * @param capacity Most allocations a manager may have; {@link #DEFAULT_CAPACITY} if not positive
+     * @param maxAssignments Most allocations to create in this run; no limit if not positive
+     * @return Report of the run, or null if another run is in progress
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public AllocationRunReport run(boolean dryRun, int capacity, int maxAssignments) {
+        if (!running.compareAndSet(false, true)) {
+            LOGGER.log(Level.INFO, "Allocation run already in progress");
+            return null;
+        }
+        try {
+            return new Run(dryRun, capacity > 0 ? capacity : DEFAULT_CAPACITY,
+                    maxAssignments > 0 ? maxAssignments : Long.MAX_VALUE).execute();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private static Map<String, Double> parseWeights(String spec) {
+        Map<String, Double> weights = new HashMap<>();
+        for (String pair : spec.split("[,\\s]+")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) {
+                continue;
+            }
+            try {
+                double weight = Double.parseDouble(pair.substring(eq + 1).trim());
+                if (weight > 0) {
+                    weights.put(key(pair.substring(0, eq)), weight);
+                }
+            } catch (NumberFormatException e) {
+                LOGGER.log(Level.WARNING, "Ignoring allocation weight {0}", pair);
+            }
+        }
+        return weights;
+    }
+
+    private static String key(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static double weight(String type) {
+        return TYPE_WEIGHTS.getOrDefault(type, 1.0);
+    }
+
+    /**
+     * State of one run: the managers, their heaps, the chunk being filled
+     * and the report
+     */
+    private class Run {
+
+        private final long started = System.currentTimeMillis();
+        private final AllocationRunReport report;
+        private final Balancer balancer;
+        private final long maxAssignments;
+        private long planned;
+        private final long[] chunkProperties = new long[WRITE_CHUNK_SIZE];
+        private final long[] chunkManagers = new long[WRITE_CHUNK_SIZE];
+        private int chunkSize;
+
+        Run(boolean dryRun, int capacity, long maxAssignments) {
+            this.report = new AllocationRunReport(dryRun);
+            this.balancer = new Balancer(capacity);
+            this.maxAssignments = maxAssignments;
+        }
+
+        AllocationRunReport execute() {
+            loadManagers();
+            balancer.heapify();
+
+            long lastId = Long.MIN_VALUE;
+            boolean done = false;
+            while (!done) {
+                List<Object[]> rows = em.createQuery(
+                        "SELECT p.id, p.propertyType, ad.city FROM Property p LEFT JOIN p.address ad "
+                        + "WHERE p.id > :lastId AND NOT EXISTS (SELECT a.id FROM Allocation a WHERE a.property = p) "
+                        + "ORDER BY p.id", Object[].class)
+                        .setParameter("lastId", lastId)
+                        .setMaxResults(LOAD_CHUNK_SIZE)
+                        .getResultList();
+                em.clear();
+                for (Object[] row : rows) {
+                    lastId = (Long) row[0];
+                    if (planned >= maxAssignments) {
+                        done = true;
+                        break;
+                    }
+                    report.considered();
+                    int manager = balancer.assign(key((String) row[1]), key((String) row[2]));
+                    if (manager < 0) {
+                        report.unassigned();
+                        continue;
+                    }
+                    plan(lastId, balancer.managerId(manager));
+                }
+                if (rows.size() < LOAD_CHUNK_SIZE) {
+                    done = true;
+                }
+            }
+            flush();
+
+            report.setElapsedMillis(System.currentTimeMillis() - started);
+            LOGGER.log(Level.INFO, "{0} {1} of {2} unallocated properties to {3} managers in {4} ms, {5} unassigned, {6} failed",
+                    new Object[]{report.isDryRun() ? "Planned" : "Allocated", report.getAssigned(), report.getConsidered(),
+                        balancer.size(), report.getElapsedMillis(), report.getUnassigned(), report.getFailed()});
+            return report;
+        }
+
+        /**
+         * Read every manager with their allocation count, then the weighted
+         * load and the cities and types of their current allocations
+         */
+        private void loadManagers() {
+            long lastId = Long.MIN_VALUE;
+            while (true) {
+                List<Object[]> rows = em.createQuery(
+                        "SELECT pm.id, pm.allocationCount FROM PropertyManager pm WHERE pm.id > :lastId ORDER BY pm.id",
+                        Object[].class)
+                        .setParameter("lastId", lastId)
+                        .setMaxResults(LOAD_CHUNK_SIZE)
+                        .getResultList();
+                for (Object[] row : rows) {
+                    lastId = (Long) row[0];
+                    balancer.addManager(lastId, (Long) row[1]);
+                }
+                em.clear();
+                if (rows.size() < LOAD_CHUNK_SIZE) {
+                    break;
+                }
+            }
+
+            for (Object[] row : em.createQuery(
+                    "SELECT a.propertyManager.id, p.propertyType, COUNT(a) FROM Allocation a JOIN a.property p "
+                    + "GROUP BY a.propertyManager.id, p.propertyType", Object[].class)
+                    .getResultList()) {
+                balancer.addLoad((Long) row[0], key((String) row[1]), (Long) row[2]);
+            }
+            for (Object[] row : em.createQuery(
+                    "SELECT DISTINCT a.propertyManager.id, ad.city FROM Allocation a JOIN a.property p JOIN p.address ad",
+                    Object[].class)
+                    .getResultList()) {
+                balancer.addCity((Long) row[0], key((String) row[1]));
+            }
+            em.clear();
+        }
+
+        private void plan(long propertyId, long managerId) {
+            planned++;
+            report.planned(propertyId, managerId);
+            if (report.isDryRun()) {
+                report.assigned(1);
+                return;
+            }
+            chunkProperties[chunkSize] = propertyId;
+            chunkManagers[chunkSize] = managerId;
+            if (++chunkSize == WRITE_CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (chunkSize == 0) {
+                return;
+            }
+            long[] properties = Arrays.copyOf(chunkProperties, chunkSize);
+            long[] managers = Arrays.copyOf(chunkManagers, chunkSize);
+            chunkSize = 0;
+            try {
+                int created = allocationEJB.createAllocations(properties, managers);
+                report.assigned(created);
+                report.failed(properties.length - created);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Allocation chunk ending at property {0} failed, retrying row by row",
+                        properties[properties.length - 1]);
+                for (int i = 0; i < properties.length; i++) {
+                    try {
+                        int created = allocationEJB.createAllocations(
+                                new long[]{properties[i]}, new long[]{managers[i]});
+                        report.assigned(created);
+                        report.failed(1 - created);
+                    } catch (RuntimeException rowFailure) {
+                        LOGGER.log(Level.WARNING, "Could not allocate property {0} to manager {1}: {2}",
+                                new Object[]{properties[i], managers[i], rowFailure.getMessage()});
+                        report.failed(1);
+                    }
+                }
+            }
+        }
+    }
+
+    // ==================== BALANCER ====================
+
+    /**
+     * Head of a heap: a manager with the load it had when it was offered.
+     * Loads only grow during a run, so an entry whose load is out of date
+     * is simply offered again with the current load when it reaches the head.
+     */
+    private static final class Candidate {
+
+        static final Comparator<Candidate> ORDER = Comparator.<Candidate>comparingDouble(c -> c.load)
+                .thenComparingInt(c -> c.manager);
+
+        final int manager;
+        final double load;
+
+        Candidate(int manager, double load) {
+            this.manager = manager;
+            this.load = load;
+        }
+    }
+
+    /**
+     * Managers indexed by position, with their load, allocation count,
+     * cities and types, and the heaps that choose among them. Not thread
+     * safe; each run has its own.
+     */
+    private static final class Balancer {
+
+        private final int capacity;
+        private final Map<Long, Integer> positions = new HashMap<>();
+        private long[] ids = new long[16];
+        private double[] loads = new double[16];
+        private long[] counts = new long[16];
+        private final List<Set<String>> cities = new ArrayList<>();
+        private final List<Set<String>> types = new ArrayList<>();
+        private int size;
+
+        private final PriorityQueue<Candidate> all = new PriorityQueue<>(Candidate.ORDER);
+        private final Map<String, PriorityQueue<Candidate>> byCity = new HashMap<>();
+        private final Map<String, PriorityQueue<Candidate>> byType = new HashMap<>();
+
+        Balancer(int capacity) {
+            this.capacity = capacity;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long managerId(int manager) {
+            return ids[manager];
+        }
+
+        void addManager(long id, long count) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                loads = Arrays.copyOf(loads, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            positions.put(id, size);
+            ids[size] = id;
+            counts[size] = count;
+            cities.add(new HashSet<>());
+            types.add(new HashSet<>());
+            size++;
+        }
+
+        void addLoad(long id, String type, long count) {
+            Integer manager = positions.get(id);
+            if (manager != null) {
+                loads[manager] += weight(type) * count;
+                types.get(manager).add(type);
+            }
+        }
+
+        void addCity(long id, String city) {
+            Integer manager = positions.get(id);
+            if (manager != null) {
+                cities.get(manager).add(city);
+            }
+        }
+
+        /**
+         * Build the heaps once the current allocations are loaded
+         */
+        void heapify() {
+            for (int manager = 0; manager < size; manager++) {
+                if (counts[manager] >= capacity) {
+                    continue;
+                }
+                Candidate candidate = new Candidate(manager, loads[manager]);
+                all.add(candidate);
+                for (String city : cities.get(manager)) {
+                    byCity.computeIfAbsent(city, k -> new PriorityQueue<>(Candidate.ORDER)).add(candidate);
+                }
+                for (String type : types.get(manager)) {
+                    byType.computeIfAbsent(type, k -> new PriorityQueue<>(Candidate.ORDER)).add(candidate);
+                }
+            }
+        }
+
+        /**
+         * Choose the manager of a property and account for the assignment
+         * @param type Property type key
+         * @param city City key
+         * @return Position of the manager, or -1 if every manager is at capacity
+         */
+        int assign(String type, String city) {
+            int best = head(all);
+            if (best < 0) {
+                return -1;
+            }
+            double bestCost = cost(best, type, city);
+            int local = head(byCity.get(city));
+            if (local >= 0 && better(local, cost(local, type, city), best, bestCost)) {
+                best = local;
+                bestCost = cost(local, type, city);
+            }
+            local = head(byType.get(type));
+            if (local >= 0 && better(local, cost(local, type, city), best, bestCost)) {
+                best = local;
+            }
+
+            loads[best] += weight(type);
+            counts[best]++;
+            if (counts[best] < capacity) {
+                // the stale entries in the heaps it is already in are refreshed when they surface
+                if (cities.get(best).add(city)) {
+                    byCity.computeIfAbsent(city, k -> new PriorityQueue<>(Candidate.ORDER))
+                            .add(new Candidate(best, loads[best]));
+                }
+                if (types.get(best).add(type)) {
+                    byType.computeIfAbsent(type, k -> new PriorityQueue<>(Candidate.ORDER))
+                            .add(new Candidate(best, loads[best]));
+                }
+            }
+            return best;
+        }
+
+        private double cost(int manager, String type, String city) {
+            double cost = loads[manager];
+            if (cities.get(manager).contains(city)) {
+                cost -= CITY_AFFINITY;
+            }
+            if (types.get(manager).contains(type)) {
+                cost -= TYPE_AFFINITY;
+            }
+            return cost;
+        }
+
+        private boolean better(int manager, double cost, int best, double bestCost) {
+            return cost < bestCost || (cost == bestCost && manager < best);
+        }
+
+        /**
+         * Least loaded manager of a heap that still has capacity, dropping
+         * full managers and refreshing out of date loads on the way
+         * @param heap Heap, may be null
+         * @return Position of the manager, or -1 if none
+         */
+        private int head(PriorityQueue<Candidate> heap) {
+            if (heap == null) {
+                return -1;
+            }
+            Candidate candidate;
+            while ((candidate = heap.peek()) != null) {
+                int manager = candidate.manager;
+                if (counts[manager] >= capacity) {
+                    heap.poll();
+                } else if (candidate.load != loads[manager]) {
+                    heap.poll();
+                    heap.add(new Candidate(manager, loads[manager]));
+                } else {
+                    return manager;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package realestatemanagement.ejb;
+
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Stateless;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import realestatemanagement.model.AllocationEvent;
+
+/**
+ * Enterprise Java Bean for reading the allocation history that
+ * AllocationEJB appends to.
+ *
+ * Questions about one property or manager are answered from the
+ * (PROPERTY_ID, EVENT_TIME) and (MANAGER_ID, EVENT_TIME) indexes. Time
+ * range queries also bound EVENT_DAY, so a partitioned table only reads
+ * the partitions of the days in the range.
+ *
+ * @author Zhengxu
+ */
+@Stateless
+@LocalBean
+public class AllocationHistoryEJB {
+
+    /** Time range condition; the day bounds let the database prune partitions */
+    private static final String BETWEEN = " AND e.eventTime >= :from AND e.eventTime < :to"
+            + " AND e.eventDay BETWEEN :fromDay AND :toDay";
+
+    @PersistenceContext(unitName = "RealEstateManagementPU")
+    private EntityManager em;
+
+    /**
+     * Who managed a property at a point in time
+     * @param propertyId Property ID
+     * @param at Point in time
+     * @return Property manager ID, or null if the property was not allocated then
+     */
+    public Long findManagerOfPropertyAt(Long propertyId, Date at) {
+        AllocationEvent last = latestEvent(propertyId, "e.eventTime <= :at", at);
+        return last != null && last.getType() == AllocationEvent.Type.ASSIGNED ? last.getManagerId() : null;
+    }
+
+    /**
+     * Who managed a property at any time during a day
+     * @param propertyId Property ID
+     * @param day UTC day
+     * @return Property manager IDs, in the order they took the property on; empty if it was not allocated that day
+     */
+    public List<Long> findManagersOfPropertyOn(Long propertyId, LocalDate day) {
+        Date start = Date.from(day.atStartOfDay(ZoneOffset.UTC).toInstant());
+        Date end = Date.from(day.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant());
+
+        Set<Long> managers = new LinkedHashSet<>();
+        AllocationEvent before = latestEvent(propertyId, "e.eventTime < :at", start);
+        if (before != null && before.getType() == AllocationEvent.Type.ASSIGNED) {
+            managers.add(before.getManagerId());
+        }
+        for (AllocationEvent event : em.createQuery(
+                "SELECT e FROM AllocationEvent e WHERE e.propertyId = :propertyId AND e.type = :type "
+                + "AND e.eventTime >= :start AND e.eventTime < :end ORDER BY e.eventTime, e.id", AllocationEvent.class)
+                .setParameter("propertyId", propertyId)
+                .setParameter("type", AllocationEvent.Type.ASSIGNED)
+                .setParameter("start", start)
+                .setParameter("end", end)
+                .getResultList()) {
+            managers.add(event.getManagerId());
+        }
+        return new ArrayList<>(managers);
+    }
+
+    /**
+     * Get the whole history of a property
+     * @param propertyId Property ID
+     * @return Events of the property, oldest first
+     */
+    public List<AllocationEvent> findEventsByPropertyId(Long propertyId) {
+        return em.createQuery(
+                "SELECT e FROM AllocationEvent e WHERE e.propertyId = :propertyId ORDER BY e.eventTime, e.id",
+                AllocationEvent.class)
+                .setParameter("propertyId", propertyId)
+                .getResultList();
+    }
+
+    /**
+     * Get one page of the allocations created in a period, including those
+     * deleted since
+     * @param from Start of the period, inclusive
+     * @param to End of the period, exclusive
+     * @param first Offset of the first allocation
+     * @param max Maximum number of allocations
+     * @return Assignment events, oldest first
+     */
+    public List<AllocationEvent> findAssignmentsBetween(Date from, Date to, int first, int max) {
+        TypedQuery<AllocationEvent> query = em.createQuery(
+                "SELECT e FROM AllocationEvent e WHERE e.type = :type" + BETWEEN + " ORDER BY e.eventTime, e.id",
+                AllocationEvent.class);
+        query.setParameter("type", AllocationEvent.Type.ASSIGNED);
+        return page(between(query, from, to), first, max);
+    }
+
+    /**
+     * @param from Start of the period, inclusive
+     * @param to End of the period, exclusive
+     * @return Number of allocations created in the period, including those deleted since
+     */
+    public long countAssignmentsBetween(Date from, Date to) {
+        TypedQuery<Long> query = em.createQuery(
+                "SELECT COUNT(e) FROM AllocationEvent e WHERE e.type = :type" + BETWEEN, Long.class);
+        query.setParameter("type", AllocationEvent.Type.ASSIGNED);
+        return between(query, from, to).getSingleResult();
+    }
+
+    /**
+     * Get one page of the properties a manager was given or lost in a period
+     * @param propertyManagerId Property manager ID
+     * @param from Start of the period, inclusive
+     * @param to End of the period, exclusive
+     * @param first Offset of the first event
+     * @param max Maximum number of events
+     * @return Events of the manager, oldest first
+     */
+    public List<AllocationEvent> findEventsByPropertyManagerIdBetween(Long propertyManagerId, Date from, Date to,
+                                                                      int first, int max) {
+        TypedQuery<AllocationEvent> query = em.createQuery(
+                "SELECT e FROM AllocationEvent e WHERE e.managerId = :managerId" + BETWEEN + " ORDER BY e.eventTime, e.id",
+                AllocationEvent.class);
+        query.setParameter("managerId", propertyManagerId);
+        return page(between(query, from, to), first, max);
+    }
+
+    private static <T> TypedQuery<T> between(TypedQuery<T> query, Date from, Date to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("Both ends of the period are required");
+        }
+        return query.setParameter("from", from)
+                .setParameter("to", to)
+                .setParameter("fromDay", AllocationEvent.dayOf(from))
+                .setParameter("toDay", AllocationEvent.dayOf(to));
+    }
+
+    private AllocationEvent latestEvent(Long propertyId, String timeCondition, Date at) {
+        List<AllocationEvent> found = em.createQuery(
+                "SELECT e FROM AllocationEvent e WHERE e.propertyId = :propertyId AND " + timeCondition
+                + " ORDER BY e.eventTime DESC, e.id DESC", AllocationEvent.class)
+                .setParameter("propertyId", propertyId)
+                .setParameter("at", at)
+                .setMaxResults(1)
+                .getResultList();
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    private static <T> List<T> page(TypedQuery<T> query, int first, int max) {
+        query.setFirstResult(Math.max(0, first));
+        query.setMaxResults(Math.max(1, max));
+        return query.getResultList();
+    }
+}
@@ -0,0 +1,132 @@
+package realestatemanagement.ejb;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of an automatic allocation run: how many unallocated properties
+ * were considered, assigned and left over, and which manager each property
+ * went to, or would go to in a dry run
+ *
+ * @author Zhengxu
+ */
+public class AllocationRunReport implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Assignments kept in detail; later assignments are only counted */
+    public static final int MAX_REPORTED_ASSIGNMENTS = 1000;
+
+    /**
+     * A property assigned to a manager
+     */
+    public static final class Assignment implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long propertyId;
+        private final long managerId;
+
+        public Assignment(long propertyId, long managerId) {
+            this.propertyId = propertyId;
+            this.managerId = managerId;
+        }
+
+        public long getPropertyId() {
+            return propertyId;
+        }
+
+        public long getManagerId() {
+            return managerId;
+        }
+    }
+
+    private final boolean dryRun;
+    private long considered;
+    private long assigned;
+    private long unassigned;
+    private long failed;
+    private long elapsedMillis;
+    private final List<Assignment> assignments = new ArrayList<>();
+
+    AllocationRunReport(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    void considered() {
+        considered++;
+    }
+
+    void planned(long propertyId, long managerId) {
+        if (assignments.size() < MAX_REPORTED_ASSIGNMENTS) {
+            assignments.add(new Assignment(propertyId, managerId));
+        }
+    }
+
+    void assigned(int count) {
+        assigned += count;
+    }
+
+    void unassigned() {
+        unassigned++;
+    }
+
+    void failed(int count) {
+        failed += count;
+    }
+
+    void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * @return true if nothing was written
+     */
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    /**
+     * @return the number of unallocated properties read
+     */
+    public long getConsidered() {
+        return considered;
+    }
+
+    /**
+     * @return the number of allocations created, or that would be created in a dry run
+     */
+    public long getAssigned() {
+        return assigned;
+    }
+
+    /**
+     * @return the number of properties left unallocated because every manager was at capacity
+     */
+    public long getUnassigned() {
+        return unassigned;
+    }
+
+    /**
+     * @return the number of allocations that could not be written, e.g. for a property deleted meanwhile
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return the wall clock time of the run
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return the first {@link #MAX_REPORTED_ASSIGNMENTS} assignments in property ID order
+     */
+    public List<Assignment> getAssignments() {
+        return Collections.unmodifiableList(assignments);
+    }
+}
@@ -0,0 +1,117 @@
+package realestatemanagement.ejb;
+
+import java.io.Serializable;
+import java.util.Date;
+import realestatemanagement.model.Address;
+import realestatemanagement.model.Allocation;
+import realestatemanagement.model.PropertyManager;
+
+/**
+ * Immutable row of an allocation table: the allocation with the name of its
+ * manager and the address of its property. Loaded by a JPQL constructor
+ * expression straight from the columns, without building the manager and
+ * property entities.
+ *
+ * @author Zhengxu
+ */
+public final class AllocationSummary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Select list of the constructor expression, for queries with the aliases a, pm, p and ad */
+    static final String SELECT = "SELECT NEW realestatemanagement.ejb.AllocationSummary("
+            + "a.id, a.creationTime, pm.id, pm.firstName, pm.lastName, p.id, ad.streetNumber, ad.streetName, ad.city) "
+            + "FROM Allocation a JOIN a.propertyManager pm JOIN a.property p LEFT JOIN p.address ad";
+
+    private final Long id;
+    private final Date creationTime;
+    private final Long managerId;
+    private final String managerFirstName;
+    private final String managerLastName;
+    private final Long propertyId;
+    private final Integer streetNumber;
+    private final String streetName;
+    private final String city;
+
+    public AllocationSummary(Long id, Date creationTime, Long managerId, String managerFirstName, String managerLastName,
+                             Long propertyId, Integer streetNumber, String streetName, String city) {
+        this.id = id;
+        this.creationTime = creationTime;
+        this.managerId = managerId;
+        this.managerFirstName = managerFirstName;
+        this.managerLastName = managerLastName;
+        this.propertyId = propertyId;
+        this.streetNumber = streetNumber;
+        this.streetName = streetName;
+        this.city = city;
+    }
+
+    /**
+     * Summarize an allocation whose manager and property are loaded, e.g.
+     * one that was just created
+     * @param allocation Allocation
+     * @return Summary of the allocation
+     */
+    public static AllocationSummary of(Allocation allocation) {
+        PropertyManager manager = allocation.getPropertyManager();
+        Address address = allocation.getProperty() != null ? allocation.getProperty().getAddress() : null;
+        return new AllocationSummary(allocation.getId(), allocation.getCreationTime(),
+                manager != null ? manager.getId() : null,
+                manager != null ? manager.getFirstName() : null,
+                manager != null ? manager.getLastName() : null,
+                allocation.getProperty() != null ? allocation.getProperty().getId() : null,
+                address != null ? address.getStreetNumber() : null,
+                address != null ? address.getStreetName() : null,
+                address != null ? address.getCity() : null);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Date getCreationTime() {
+        return creationTime;
+    }
+
+    public Long getManagerId() {
+        return managerId;
+    }
+
+    public String getManagerFirstName() {
+        return managerFirstName;
+    }
+
+    public String getManagerLastName() {
+        return managerLastName;
+    }
+
+    /**
+     * @return first and last name of the manager
+     */
+    public String getManagerName() {
+        return managerFirstName + " " + managerLastName;
+    }
+
+    public Long getPropertyId() {
+        return propertyId;
+    }
+
+    public Integer getStreetNumber() {
+        return streetNumber;
+    }
+
+    public String getStreetName() {
+        return streetName;
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    /**
+     * @return street number and name of the property, or an empty string if it has no address
+     */
+    public String getStreetAddress() {
+        return streetName == null ? "" : streetNumber + " " + streetName;
+    }
+}
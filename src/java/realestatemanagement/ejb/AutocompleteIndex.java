@@ -0,0 +1,391 @@
+package realestatemanagement.ejb;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Application wide prefix tries for autocompleting the values users type
+ * into the search and create forms: cities and street names of listings,
+ * and first and last names of property managers.
+ *
+ * Every distinct value is counted by how often it occurs, i.e. the number
+ * of listings in a city or the number of managers with a first name. Each
+ * trie node keeps the {@link #MAX_SUGGESTIONS} most frequent values below
+ * it, so a lookup only walks the characters of the prefix and copies that
+ * list. Children are kept in sorted arrays instead of maps, and nodes on a
+ * single path share their child's list.
+ *
+ * The tries are built from aggregate queries at startup and nightly, and
+ * adjusted by PropertyEJB and PropertyManagerEJB after each committed write.
+ *
+ * @author Zhengxu
+ */
+@Singleton
+@Startup
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class AutocompleteIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(AutocompleteIndex.class.getName());
+
+    /** Most suggestions kept per prefix */
+    public static final int MAX_SUGGESTIONS = 10;
+
+    /**
+     * What can be completed
+     */
+    public enum Field {
+        /** Address.city of rent and sale listings */
+        CITY,
+        /** Address.streetName of rent and sale listings */
+        STREET,
+        /** PropertyManager.firstName */
+        FIRST_NAME,
+        /** PropertyManager.lastName */
+        LAST_NAME
+    }
+
+    @PersistenceContext(unitName = "RealEstateManagementPU")
+    private EntityManager em;
+
+    // writes are count deltas: one the load already saw is counted twice until
+    // the next rebuild, which is harmless as counts only rank suggestions
+    private final RebuildableState<Trie[]> state =
+            new RebuildableState<>(LOGGER, "autocomplete index", newData());
+
+    @PostConstruct
+    public void init() {
+        rebuild();
+    }
+
+    private static Trie[] newData() {
+        Trie[] tries = new Trie[Field.values().length];
+        for (int i = 0; i < tries.length; i++) {
+            tries[i] = new Trie();
+        }
+        return tries;
+    }
+
+    /**
+     * Rebuild every trie from the database. The current tries keep serving
+     * lookups until the new ones are complete.
+     */
+    @Schedule(hour = "4", minute = "0", persistent = false)
+    public void rebuild() {
+        long start = System.nanoTime();
+        Trie[] fresh = state.rebuild(() -> {
+            Trie[] loaded = newData();
+            load(loaded[Field.CITY.ordinal()],
+                    "SELECT a.city, COUNT(p) FROM Property p JOIN p.address a GROUP BY a.city");
+            load(loaded[Field.STREET.ordinal()],
+                    "SELECT a.streetName, COUNT(p) FROM Property p JOIN p.address a GROUP BY a.streetName");
+            load(loaded[Field.FIRST_NAME.ordinal()],
+                    "SELECT pm.firstName, COUNT(pm) FROM PropertyManager pm GROUP BY pm.firstName");
+            load(loaded[Field.LAST_NAME.ordinal()],
+                    "SELECT pm.lastName, COUNT(pm) FROM PropertyManager pm GROUP BY pm.lastName");
+            for (Trie trie : loaded) {
+                trie.rank();
+            }
+            return loaded;
+        });
+        if (fresh != null) {
+            LOGGER.log(Level.INFO, "Built autocomplete index with {0} cities, {1} streets and {2} manager names in {3} ms",
+                      new Object[]{fresh[Field.CITY.ordinal()].size(), fresh[Field.STREET.ordinal()].size(),
+                          fresh[Field.FIRST_NAME.ordinal()].size() + fresh[Field.LAST_NAME.ordinal()].size(),
+                          (System.nanoTime() - start) / 1_000_000});
+        }
+    }
+
+    /**
+     * @return true once the tries have been built
+     */
+    public boolean isReady() {
+        return state.isReady();
+    }
+
+    /**
+     * Suggest values starting with a prefix, ignoring case
+     * @param field What to complete
+     * @param prefix Text typed so far
+     * @param limit Most suggestions wanted, up to {@link #MAX_SUGGESTIONS}
+     * @return Values, most frequent first
+     */
+    public List<String> suggest(Field field, String prefix, int limit) {
+        String key = normalize(prefix);
+        if (key == null || limit <= 0) {
+            return Collections.emptyList();
+        }
+        return state.read(d -> d[field.ordinal()].suggest(key, Math.min(limit, MAX_SUGGESTIONS)));
+    }
+
+    /**
+     * Count the city and street of a listing that was created, updated or
+     * removed
+     * @param before Listing before the write, or null if it was created
+     * @param after Listing after the write, or null if it was removed
+     */
+    public void listingChanged(ListingEntry before, ListingEntry after) {
+        String oldCity = before != null ? before.getCity() : null;
+        String oldStreet = before != null ? before.getStreetName() : null;
+        String newCity = after != null ? after.getCity() : null;
+        String newStreet = after != null ? after.getStreetName() : null;
+        changed(Field.CITY, oldCity, newCity);
+        changed(Field.STREET, oldStreet, newStreet);
+    }
+
+    /**
+     * Count the names of a property manager that was created, updated or
+     * removed
+     * @param oldFirstName First name before the write, or null if created
+     * @param oldLastName Last name before the write, or null if created
+     * @param newFirstName First name after the write, or null if removed
+     * @param newLastName Last name after the write, or null if removed
+     */
+    public void managerChanged(String oldFirstName, String oldLastName, String newFirstName, String newLastName) {
+        changed(Field.FIRST_NAME, oldFirstName, newFirstName);
+        changed(Field.LAST_NAME, oldLastName, newLastName);
+    }
+
+    private void changed(Field field, String oldValue, String newValue) {
+        String oldKey = normalize(oldValue);
+        String newKey = normalize(newValue);
+        if (oldKey == null ? newKey == null : oldKey.equals(newKey)) {
+            return;
+        }
+        state.write(d -> {
+            Trie trie = d[field.ordinal()];
+            if (oldKey != null) {
+                trie.add(oldKey, oldValue, -1);
+            }
+            if (newKey != null) {
+                trie.add(newKey, newValue, 1);
+            }
+        });
+    }
+
+    private void load(Trie target, String jpql) {
+        List<Object[]> rows = em.createQuery(jpql, Object[].class).getResultList();
+        for (Object[] row : rows) {
+            String value = (String) row[0];
+            String key = normalize(value);
+            if (key != null) {
+                target.insert(key, value, ((Number) row[1]).intValue());
+            }
+        }
+        em.clear();
+    }
+
+    private static String normalize(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed.toLowerCase(Locale.ROOT);
+    }
+
+    // ==================== TRIE ====================
+
+    /**
+     * Value as suggested, with how often it occurs
+     */
+    private static final class Term {
+
+        static final Term[] NONE = new Term[0];
+
+        // most frequent first, then alphabetically
+        static final Comparator<Term> RANK = Comparator.<Term>comparingInt(t -> -t.count)
+                .thenComparing(t -> t.key);
+
+        final String key;
+        final String display;
+        int count;
+
+        Term(String key, String display) {
+            this.key = key;
+            this.display = display;
+        }
+    }
+
+    private static final class Node {
+
+        private static final char[] NO_LABELS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        // sorted; children[i] follows labels[i]
+        char[] labels = NO_LABELS;
+        Node[] children = NO_CHILDREN;
+        // value ending at this node, if any
+        Term term;
+        // best values in this subtree, shared with the only child where possible
+        Term[] top = Term.NONE;
+
+        Node child(char c) {
+            int at = Arrays.binarySearch(labels, c);
+            return at >= 0 ? children[at] : null;
+        }
+
+        Node addChild(char c) {
+            int at = Arrays.binarySearch(labels, c);
+            if (at >= 0) {
+                return children[at];
+            }
+            at = -at - 1;
+            char[] newLabels = new char[labels.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, at);
+            System.arraycopy(children, 0, newChildren, 0, at);
+            newLabels[at] = c;
+            newChildren[at] = new Node();
+            System.arraycopy(labels, at, newLabels, at + 1, labels.length - at);
+            System.arraycopy(children, at, newChildren, at + 1, children.length - at);
+            labels = newLabels;
+            children = newChildren;
+            return newChildren[at];
+        }
+
+        void removeChild(char c) {
+            int at = Arrays.binarySearch(labels, c);
+            if (at < 0) {
+                return;
+            }
+            char[] newLabels = new char[labels.length - 1];
+            Node[] newChildren = new Node[children.length - 1];
+            System.arraycopy(labels, 0, newLabels, 0, at);
+            System.arraycopy(children, 0, newChildren, 0, at);
+            System.arraycopy(labels, at + 1, newLabels, at, labels.length - at - 1);
+            System.arraycopy(children, at + 1, newChildren, at, children.length - at - 1);
+            labels = newLabels;
+            children = newChildren;
+        }
+
+        boolean isEmpty() {
+            return term == null && children.length == 0;
+        }
+
+        // recompute the best values from this node's own and its children's
+        void rankTop() {
+            if (term == null && children.length == 1) {
+                top = children[0].top;
+                return;
+            }
+            List<Term> candidates = new ArrayList<>();
+            if (term != null) {
+                candidates.add(term);
+            }
+            for (Node child : children) {
+                candidates.addAll(Arrays.asList(child.top));
+            }
+            candidates.sort(Term.RANK);
+            int size = Math.min(candidates.size(), MAX_SUGGESTIONS);
+            top = candidates.subList(0, size).toArray(new Term[size]);
+        }
+    }
+
+    /**
+     * Trie over the normalized values of one field. Not thread safe;
+     * AutocompleteIndex guards it with the lock of its state.
+     */
+    private static final class Trie {
+
+        private final Node root = new Node();
+        private final Map<String, Term> terms = new HashMap<>();
+
+        int size() {
+            return terms.size();
+        }
+
+        /**
+         * Add a value while loading, without ranking; {@link #rank} must
+         * follow once everything is inserted
+         */
+        void insert(String key, String display, int count) {
+            Term term = terms.computeIfAbsent(key, k -> new Term(k, display.trim()));
+            term.count += count;
+            Node node = root;
+            for (int i = 0; i < key.length(); i++) {
+                node = node.addChild(key.charAt(i));
+            }
+            node.term = term;
+        }
+
+        void rank() {
+            rank(root);
+        }
+
+        private static void rank(Node node) {
+            for (Node child : node.children) {
+                rank(child);
+            }
+            node.rankTop();
+        }
+
+        /**
+         * Change the count of a value and re-rank the nodes on its path
+         */
+        void add(String key, String display, int delta) {
+            Term term = terms.get(key);
+            if (term == null) {
+                if (delta <= 0) {
+                    return;
+                }
+                term = new Term(key, display.trim());
+                terms.put(key, term);
+            }
+            term.count += delta;
+
+            Node[] path = new Node[key.length() + 1];
+            path[0] = root;
+            for (int i = 0; i < key.length(); i++) {
+                path[i + 1] = path[i].addChild(key.charAt(i));
+            }
+            if (term.count > 0) {
+                path[key.length()].term = term;
+            } else {
+                path[key.length()].term = null;
+                terms.remove(key);
+            }
+            for (int i = key.length(); i >= 0; i--) {
+                Node node = path[i];
+                if (i > 0 && node.isEmpty()) {
+                    path[i - 1].removeChild(key.charAt(i - 1));
+                } else {
+                    node.rankTop();
+                }
+            }
+        }
+
+        List<String> suggest(String prefix, int limit) {
+            Node node = root;
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                node = node.child(prefix.charAt(i));
+            }
+            if (node == null) {
+                return Collections.emptyList();
+            }
+            Term[] top = node.top;
+            int size = Math.min(top.length, limit);
+            List<String> result = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                result.add(top[i].display);
+            }
+            return result;
+        }
+    }
+}
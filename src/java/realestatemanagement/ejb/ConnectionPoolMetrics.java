@@ -0,0 +1,70 @@
+package realestatemanagement.ejb;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+
+/**
+ * Measures how long EclipseLink holds connections checked out of the
+ * container's JDBC pool. Registered in persistence.xml as the
+ * eclipselink.session-event-listener.
+ *
+ * With an external (JTA) pool EclipseLink acquires a connection when a
+ * transaction first touches the database, or for the duration of a single
+ * read outside a transaction, and releases it when the transaction ends
+ * or the read completes. The hold time is recorded as a histogram in
+ * microseconds; see {@link Metrics}.
+ *
+ * @author Zhengxu
+ */
+public class ConnectionPoolMetrics extends SessionEventAdapter {
+
+    /** Histogram bucket bounds in microseconds: 1 ms, 10 ms, 100 ms, 1 s, 10 s */
+    private static final long[] BUCKETS = {1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L};
+
+    private static final LongAdder ACQUIRED = Metrics.counter("realestate_db_connections_acquired_total");
+    private static final LongAdder RELEASED = Metrics.counter("realestate_db_connections_released_total");
+    private static final LongAdder HOLD_SUM = Metrics.counter("realestate_db_connection_hold_micros_sum");
+    private static final LongAdder HOLD_COUNT = Metrics.counter("realestate_db_connection_hold_micros_count");
+    private static final LongAdder[] HOLD_BUCKETS = new LongAdder[BUCKETS.length + 1];
+
+    // acquire time by accessor; accessors compare by identity
+    private static final Map<Object, Long> HELD = new ConcurrentHashMap<>();
+
+    static {
+        for (int i = 0; i < BUCKETS.length; i++) {
+            HOLD_BUCKETS[i] = Metrics.counter("realestate_db_connection_hold_micros_bucket{le=\"" + BUCKETS[i] + "\"}");
+        }
+        HOLD_BUCKETS[BUCKETS.length] = Metrics.counter("realestate_db_connection_hold_micros_bucket{le=\"+Inf\"}");
+        Metrics.gauge("realestate_db_connections_held", () -> HELD.size());
+    }
+
+    @Override
+    public void postAcquireConnection(SessionEvent event) {
+        ACQUIRED.increment();
+        if (event.getResult() != null) {
+            HELD.put(event.getResult(), System.nanoTime());
+        }
+    }
+
+    @Override
+    public void preReleaseConnection(SessionEvent event) {
+        Long acquired = event.getResult() != null ? HELD.remove(event.getResult()) : null;
+        if (acquired == null) {
+            return;
+        }
+        long micros = (System.nanoTime() - acquired) / 1000;
+        RELEASED.increment();
+        HOLD_SUM.add(micros);
+        HOLD_COUNT.increment();
+        // buckets are cumulative, as in a Prometheus histogram
+        for (int i = 0; i < BUCKETS.length; i++) {
+            if (micros <= BUCKETS[i]) {
+                HOLD_BUCKETS[i].increment();
+            }
+        }
+        HOLD_BUCKETS[BUCKETS.length].increment();
+    }
+}
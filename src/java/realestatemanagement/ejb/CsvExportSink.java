@@ -0,0 +1,59 @@
+package realestatemanagement.ejb;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+
+/**
+ * Writes an export as RFC 4180 CSV with a header line
+ *
+ * @author Zhengxu
+ */
+public class CsvExportSink implements ExportSink {
+
+    private final Writer out;
+
+    public CsvExportSink(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void header(String... columns) throws IOException {
+        row((Object[]) columns);
+    }
+
+    @Override
+    public void row(Object... values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            writeValue(values[i]);
+        }
+        out.write("\r\n");
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    private void writeValue(Object value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        String text = value instanceof Date ? ExportFormat.timestamp((Date) value) : value.toString();
+        boolean quote = false;
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quote) {
+            out.write(text);
+            return;
+        }
+        out.write('"');
+        out.write(text.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
@@ -0,0 +1,36 @@
+package realestatemanagement.ejb;
+
+import jakarta.ejb.ApplicationException;
+
+/**
+ * Thrown by {@link UserEJB#createUser} when the username or email is already
+ * registered. Detected from the unique constraint the insert violated, so
+ * the caller learns which value was taken without a separate lookup.
+ *
+ * @author Zhengxu
+ */
+@ApplicationException(rollback = true)
+public class DuplicateUserException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The user attribute that is already taken */
+    public enum Field {
+        USERNAME, EMAIL, UNKNOWN
+    }
+
+    private final Field field;
+
+    /**
+     * @param field The attribute that is already taken
+     * @param message Detail message
+     */
+    public DuplicateUserException(Field field, String message) {
+        super(message);
+        this.field = field;
+    }
+
+    public Field getField() {
+        return field;
+    }
+}
@@ -0,0 +1,73 @@
+package realestatemanagement.ejb;
+
+import java.io.Writer;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+
+/**
+ * Output formats supported by the bulk export
+ *
+ * @author Zhengxu
+ */
+public enum ExportFormat {
+
+    /** Comma separated values with a header line */
+    CSV("csv", "text/csv"),
+
+    /** One JSON object per line */
+    NDJSON("ndjson", "application/x-ndjson");
+
+    private final String parameter;
+    private final String contentType;
+
+    ExportFormat(String parameter, String contentType) {
+        this.parameter = parameter;
+        this.contentType = contentType;
+    }
+
+    /**
+     * @return the value used for this format in request parameters, also the file extension
+     */
+    public String getParameter() {
+        return parameter;
+    }
+
+    /**
+     * @return the MIME type of the output
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Create a sink writing this format
+     * @param out Destination, typically the servlet response writer
+     * @return New sink
+     */
+    public ExportSink newSink(Writer out) {
+        return this == NDJSON ? new NdjsonExportSink(out) : new CsvExportSink(out);
+    }
+
+    /**
+     * Resolve a format from a request parameter
+     * @param parameter Request parameter value, may be null
+     * @return Matching format, or CSV if the value is unknown
+     */
+    public static ExportFormat fromParameter(String parameter) {
+        for (ExportFormat format : values()) {
+            if (format.parameter.equalsIgnoreCase(parameter)) {
+                return format;
+            }
+        }
+        return CSV;
+    }
+
+    /**
+     * Format a timestamp column as ISO-8601 in UTC
+     * @param date Timestamp
+     * @return Formatted timestamp
+     */
+    static String timestamp(Date date) {
+        return DateTimeFormatter.ISO_INSTANT.format(date.toInstant());
+    }
+}
@@ -0,0 +1,33 @@
+package realestatemanagement.ejb;
+
+import java.io.IOException;
+
+/**
+ * Row by row output of a bulk export. The exporting EJB writes the header
+ * once, then every row, flushing after each chunk, so nothing but the
+ * current chunk is ever held in memory.
+ *
+ * @author Zhengxu
+ */
+public interface ExportSink {
+
+    /**
+     * Start the export
+     * @param columns Column names, in the order of every following row
+     * @throws IOException if the output cannot be written
+     */
+    void header(String... columns) throws IOException;
+
+    /**
+     * Write one row
+     * @param values Column values, in header order; may contain nulls
+     * @throws IOException if the output cannot be written
+     */
+    void row(Object... values) throws IOException;
+
+    /**
+     * Push buffered rows to the client
+     * @throws IOException if the output cannot be written
+     */
+    void flush() throws IOException;
+}
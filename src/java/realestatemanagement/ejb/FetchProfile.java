@@ -0,0 +1,20 @@
+package realestatemanagement.ejb;
+
+/**
+ * How listing queries load the lazy Property.address association.
+ * Pages that render addresses for every row should use JOIN_ADDRESS or
+ * BATCH_ADDRESS, otherwise each row triggers its own address SELECT.
+ *
+ * @author Zhengxu
+ */
+public enum FetchProfile {
+
+    /** Leave the address lazy; it is loaded one row at a time on first access */
+    DEFAULT,
+
+    /** Load the address in the same statement with LEFT JOIN FETCH */
+    JOIN_ADDRESS,
+
+    /** Load the addresses of all result rows with one extra SELECT ... WHERE ID IN (...) */
+    BATCH_ADDRESS
+}
@@ -0,0 +1,107 @@
+package realestatemanagement.ejb;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a bulk listing import: how many rows were read, imported and
+ * rejected, and why each rejected row failed
+ *
+ * @author Zhengxu
+ */
+public class ImportReport implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Failures kept in detail; later failures are only counted */
+    public static final int MAX_REPORTED_FAILURES = 1000;
+
+    /**
+     * A rejected input row
+     */
+    public static final class Failure implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long row;
+        private final String message;
+
+        public Failure(long row, String message) {
+            this.row = row;
+            this.message = message;
+        }
+
+        /**
+         * @return the 1-based data row number, not counting a CSV header line
+         */
+        public long getRow() {
+            return row;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    private long rows;
+    private long imported;
+    private long failed;
+    private long elapsedMillis;
+    private final List<Failure> failures = new ArrayList<>();
+
+    void rowRead() {
+        rows++;
+    }
+
+    void imported(int count) {
+        imported += count;
+    }
+
+    void failed(long row, String message) {
+        failed++;
+        if (failures.size() < MAX_REPORTED_FAILURES) {
+            failures.add(new Failure(row, message));
+        }
+    }
+
+    void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * @return the number of data rows read
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the number of listings created
+     */
+    public long getImported() {
+        return imported;
+    }
+
+    /**
+     * @return the number of rows rejected
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return the wall clock time of the import
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return the first {@link #MAX_REPORTED_FAILURES} failures in input order
+     */
+    public List<Failure> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+}
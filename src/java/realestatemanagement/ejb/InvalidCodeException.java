@@ -0,0 +1,24 @@
+package realestatemanagement.ejb;
+
+import jakarta.ejb.ApplicationException;
+
+/**
+ * Thrown by {@link UserEJB} when the verification or recovery code of a
+ * change turns out to be wrong, expired or already used while the change
+ * is committed, e.g. because a concurrent request used it first. The change
+ * is rolled back.
+ *
+ * @author Zhengxu
+ */
+@ApplicationException(rollback = true)
+public class InvalidCodeException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param message Detail message
+     */
+    public InvalidCodeException(String message) {
+        super(message);
+    }
+}
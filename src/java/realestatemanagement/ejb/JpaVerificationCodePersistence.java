@@ -0,0 +1,76 @@
+package realestatemanagement.ejb;
+
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.persistence.CacheRetrieveMode;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TemporalType;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import realestatemanagement.model.VerificationCode;
+
+/**
+ * Verification codes in the VERIFICATION_CODE table. Issuing and purging
+ * run in a short transaction of their own, independent of the caller's;
+ * using up a code joins the caller's transaction. Rows are
+ * written by single statements rather than through the entity, so reads
+ * bypass the shared cache.
+ *
+ * @author Zhengxu
+ */
+@Stateless
+public class JpaVerificationCodePersistence implements VerificationCodePersistence {
+
+    private static final Logger LOGGER = Logger.getLogger(JpaVerificationCodePersistence.class.getName());
+
+    private static final Map<String, Object> BYPASS_CACHE =
+            Collections.singletonMap("jakarta.persistence.cache.retrieveMode", CacheRetrieveMode.BYPASS);
+
+    @PersistenceContext(unitName = "RealEstateManagementPU")
+    private EntityManager em;
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void save(String key, String codeHash, Date expires) {
+        // one upsert, a find followed by persist lets two nodes insert the same ID
+        em.createNamedQuery("VerificationCode.save")
+                .setParameter(1, key)
+                .setParameter(2, codeHash)
+                .setParameter(3, expires, TemporalType.TIMESTAMP)
+                .executeUpdate();
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public String find(String key, Date now) {
+        VerificationCode code = em.find(VerificationCode.class, key, BYPASS_CACHE);
+        return code != null && code.getExpires().after(now) ? code.getCodeHash() : null;
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    public boolean consume(String key, String codeHash, Date now) {
+        return em.createNamedQuery("VerificationCode.consume")
+                .setParameter("id", key)
+                .setParameter("codeHash", codeHash)
+                .setParameter("now", now)
+                .executeUpdate() == 1;
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public int purgeExpired(Date now) {
+        int removed = em.createNamedQuery("VerificationCode.purgeExpired")
+                .setParameter("now", now)
+                .executeUpdate();
+        if (removed > 0) {
+            LOGGER.log(Level.INFO, "Purged {0} expired verification codes", removed);
+        }
+        return removed;
+    }
+}
@@ -0,0 +1,57 @@
+package realestatemanagement.ejb;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Streams the result of a projection query to an export sink in ID order,
+ * one chunk at a time. Each chunk seeks past the last ID of the previous one,
+ * so the cost per chunk stays flat however far the export has got, and the
+ * persistence context is cleared after every chunk.
+ *
+ * @author Zhengxu
+ */
+final class KeysetExport {
+
+    /** Rows read per query */
+    static final int CHUNK_SIZE = 1000;
+
+    /** EclipseLink hint setting the JDBC fetch size of the chunk queries */
+    private static final String FETCH_SIZE_HINT = "eclipselink.jdbc.fetch-size";
+
+    private KeysetExport() {
+    }
+
+    /**
+     * Write every row of a query to the sink
+     * @param em Entity manager
+     * @param jpql Projection query whose first column is the ID; it must
+     *             restrict that ID with "> :lastId" and order by it
+     * @param sink Destination
+     * @return Number of rows written
+     * @throws IOException if the sink cannot be written, e.g. the client went away
+     */
+    static long stream(EntityManager em, String jpql, ExportSink sink) throws IOException {
+        long written = 0;
+        long lastId = Long.MIN_VALUE;
+        while (true) {
+            TypedQuery<Object[]> query = em.createQuery(jpql, Object[].class);
+            query.setParameter("lastId", lastId);
+            query.setMaxResults(CHUNK_SIZE);
+            query.setHint(FETCH_SIZE_HINT, CHUNK_SIZE);
+            List<Object[]> rows = query.getResultList();
+            for (Object[] row : rows) {
+                lastId = ((Number) row[0]).longValue();
+                sink.row(row);
+            }
+            written += rows.size();
+            em.clear();
+            sink.flush();
+            if (rows.size() < CHUNK_SIZE) {
+                return written;
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package realestatemanagement.ejb;
+
+import java.io.Serializable;
+import realestatemanagement.model.Property;
+import realestatemanagement.model.RentProperty;
+import realestatemanagement.model.SaleProperty;
+
+/**
+ * Immutable snapshot of the searchable attributes of one listing.
+ * Snapshots are taken inside the writing transaction and applied to the
+ * in-memory indexes once that transaction has committed.
+ *
+ * @author Zhengxu
+ */
+public final class ListingEntry implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Listing kind, matching the Property subclass
+     */
+    public enum Kind {
+        RENT,
+        SALE
+    }
+
+    private final Kind kind;
+    private final long id;
+    private final long price;
+    private final int bedrooms;
+    private final int bathrooms;
+    private final boolean furnished;
+    private final String propertyType;
+    private final String city;
+    private final String streetName;
+
+    public ListingEntry(Kind kind, long id, long price, int bedrooms, int bathrooms,
+                        boolean furnished, String propertyType, String city) {
+        this(kind, id, price, bedrooms, bathrooms, furnished, propertyType, city, null);
+    }
+
+    public ListingEntry(Kind kind, long id, long price, int bedrooms, int bathrooms,
+                        boolean furnished, String propertyType, String city, String streetName) {
+        this.kind = kind;
+        this.id = id;
+        this.price = price;
+        this.bedrooms = bedrooms;
+        this.bathrooms = bathrooms;
+        this.furnished = furnished;
+        this.propertyType = propertyType;
+        this.city = city;
+        this.streetName = streetName;
+    }
+
+    /**
+     * Snapshot a rent or sale property
+     * @param property Persisted property with an ID
+     * @return Entry for the property
+     */
+    public static ListingEntry of(Property property) {
+        String city = property.getAddress() != null ? property.getAddress().getCity() : null;
+        String streetName = property.getAddress() != null ? property.getAddress().getStreetName() : null;
+        if (property instanceof RentProperty) {
+            RentProperty rent = (RentProperty) property;
+            return new ListingEntry(Kind.RENT, rent.getId(),
+                    rent.getWeeklyRent() != null ? rent.getWeeklyRent() : 0L,
+                    rent.getNoOfBedrooms(), rent.getNoOfBathrooms(),
+                    Boolean.TRUE.equals(rent.getIsFurnished()), rent.getPropertyType(), city, streetName);
+        }
+        if (property instanceof SaleProperty) {
+            SaleProperty sale = (SaleProperty) property;
+            return new ListingEntry(Kind.SALE, sale.getId(),
+                    sale.getSalePrice() != null ? sale.getSalePrice() : 0L,
+                    sale.getNoOfBedrooms(), sale.getNoOfBathrooms(),
+                    false, sale.getPropertyType(), city, streetName);
+        }
+        throw new IllegalArgumentException("Unsupported property type: " + property.getClass().getName());
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getPrice() {
+        return price;
+    }
+
+    public int getBedrooms() {
+        return bedrooms;
+    }
+
+    public int getBathrooms() {
+        return bathrooms;
+    }
+
+    public boolean isFurnished() {
+        return furnished;
+    }
+
+    public String getPropertyType() {
+        return propertyType;
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    /**
+     * @return street name, or null if the snapshot was loaded without it
+     */
+    public String getStreetName() {
+        return streetName;
+    }
+}
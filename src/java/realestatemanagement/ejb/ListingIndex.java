@@ -0,0 +1,546 @@
+package realestatemanagement.ejb;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Application wide in-memory inverted index over rent and sale listings.
+ *
+ * Every listing occupies an int slot. Equality filters (kind, city, property
+ * type, bedroom count, furnished) are BitSet postings keyed by slot, so a
+ * filter is a handful of word-wise ANDs. Prices are kept in a column sorted
+ * by (price, ID) per listing kind, which serves both price range scans and
+ * price ordering. A search returns only the IDs of the requested page; the
+ * caller hydrates those from JPA.
+ *
+ * The index is built at startup, rebuilt nightly to repair any drift, and
+ * updated by PropertyEJB after each committed create, update or delete.
+ *
+ * @author Zhengxu
+ */
+@Singleton
+@Startup
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ListingIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(ListingIndex.class.getName());
+
+    /** Rows read per query while building the index */
+    private static final int LOAD_CHUNK_SIZE = 5000;
+
+    private static final long[] NO_IDS = new long[0];
+
+    @PersistenceContext(unitName = "RealEstateManagementPU")
+    private EntityManager em;
+
+    // writes are puts and removes by ID, so replaying one the load already saw changes nothing
+    private final RebuildableState<IndexData> state =
+            new RebuildableState<>(LOGGER, "listing index", new IndexData());
+
+    @PostConstruct
+    public void init() {
+        rebuild();
+    }
+
+    /**
+     * Rebuild the whole index from the database. The current index keeps
+     * serving searches until the new one is complete.
+     */
+    @Schedule(hour = "3", minute = "30", persistent = false)
+    public void rebuild() {
+        long start = System.nanoTime();
+        IndexData fresh = state.rebuild(() -> {
+            IndexData loaded = new IndexData();
+            loadRentProperties(loaded);
+            loadSaleProperties(loaded);
+            return loaded;
+        });
+        if (fresh != null) {
+            LOGGER.log(Level.INFO, "Built listing index with {0} listings in {1} ms",
+                      new Object[]{fresh.size(), (System.nanoTime() - start) / 1_000_000});
+        }
+    }
+
+    /**
+     * @return true once the index has been built and can answer searches
+     */
+    public boolean isReady() {
+        return state.isReady();
+    }
+
+    /**
+     * @return number of indexed listings
+     */
+    public int size() {
+        return state.read(IndexData::size);
+    }
+
+    /**
+     * Add a listing, or replace it if it is already indexed
+     * @param entry Listing snapshot
+     */
+    public void put(ListingEntry entry) {
+        if (entry == null) {
+            return;
+        }
+        state.write(d -> d.put(entry));
+    }
+
+    /**
+     * Remove a listing
+     * @param id Property ID
+     */
+    public void remove(long id) {
+        state.write(d -> d.remove(id));
+    }
+
+    /**
+     * Find the IDs of the listings matching the criteria, in result order
+     * @param kind Rent or sale
+     * @param criteria Search criteria
+     * @return At most criteria.getLimit() property IDs
+     */
+    public long[] search(ListingEntry.Kind kind, PropertySearchCriteria criteria) {
+        return state.read(d -> d.search(kind, criteria));
+    }
+
+    private void loadRentProperties(IndexData target) {
+        long lastId = Long.MIN_VALUE;
+        while (true) {
+            List<Object[]> rows = em.createQuery(
+                    "SELECT rp.id, rp.weeklyRent, rp.noOfBedrooms, rp.noOfBathrooms, rp.isFurnished, rp.propertyType, a.city "
+                    + "FROM RentProperty rp LEFT JOIN rp.address a WHERE rp.id > :lastId ORDER BY rp.id", Object[].class)
+                    .setParameter("lastId", lastId)
+                    .setMaxResults(LOAD_CHUNK_SIZE)
+                    .getResultList();
+            for (Object[] row : rows) {
+                lastId = (Long) row[0];
+                target.put(new ListingEntry(ListingEntry.Kind.RENT, lastId, longValue(row[1]),
+                        (Integer) row[2], (Integer) row[3], Boolean.TRUE.equals(row[4]),
+                        (String) row[5], (String) row[6]));
+            }
+            em.clear();
+            if (rows.size() < LOAD_CHUNK_SIZE) {
+                return;
+            }
+        }
+    }
+
+    private void loadSaleProperties(IndexData target) {
+        long lastId = Long.MIN_VALUE;
+        while (true) {
+            List<Object[]> rows = em.createQuery(
+                    "SELECT sp.id, sp.salePrice, sp.noOfBedrooms, sp.noOfBathrooms, sp.propertyType, a.city "
+                    + "FROM SaleProperty sp LEFT JOIN sp.address a WHERE sp.id > :lastId ORDER BY sp.id", Object[].class)
+                    .setParameter("lastId", lastId)
+                    .setMaxResults(LOAD_CHUNK_SIZE)
+                    .getResultList();
+            for (Object[] row : rows) {
+                lastId = (Long) row[0];
+                target.put(new ListingEntry(ListingEntry.Kind.SALE, lastId, longValue(row[1]),
+                        (Integer) row[2], (Integer) row[3], false, (String) row[4], (String) row[5]));
+            }
+            em.clear();
+            if (rows.size() < LOAD_CHUNK_SIZE) {
+                return;
+            }
+        }
+    }
+
+    private static long longValue(Object value) {
+        return value != null ? ((Number) value).longValue() : 0L;
+    }
+
+    /**
+     * Normalise a city or property type the way the database collation compares them
+     * @param value Raw value
+     * @return Lower-cased, trimmed value or null if blank
+     */
+    static String normalize(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed.toLowerCase(Locale.ROOT);
+    }
+
+    // ==================== INDEX STRUCTURES ====================
+
+    /**
+     * The index proper. Not thread safe; ListingIndex guards it with the lock of its state.
+     */
+    private static final class IndexData {
+
+        private static final int INITIAL_CAPACITY = 1024;
+        private static final int NO_KEY = -1;
+
+        private final Map<Long, Integer> slotById = new HashMap<>();
+        private final BitSet freeSlots = new BitSet();
+        private int slotCount;
+
+        // columns indexed by slot
+        private long[] ids = new long[INITIAL_CAPACITY];
+        private long[] prices = new long[INITIAL_CAPACITY];
+        private int[] bedrooms = new int[INITIAL_CAPACITY];
+        private int[] bathrooms = new int[INITIAL_CAPACITY];
+        private int[] cityKeys = new int[INITIAL_CAPACITY];
+        private int[] typeKeys = new int[INITIAL_CAPACITY];
+        private byte[] kinds = new byte[INITIAL_CAPACITY];
+
+        // postings
+        private final BitSet[] kindSlots = {new BitSet(), new BitSet()};
+        private final BitSet furnished = new BitSet();
+        private final Map<String, Integer> cityKeysByName = new HashMap<>();
+        private final List<BitSet> cityPostings = new ArrayList<>();
+        private final Map<String, Integer> typeKeysByName = new HashMap<>();
+        private final List<BitSet> typePostings = new ArrayList<>();
+        private final List<BitSet> bedroomPostings = new ArrayList<>();
+        private final PriceColumn[] priceColumns = {new PriceColumn(), new PriceColumn()};
+
+        int size() {
+            return slotById.size();
+        }
+
+        void put(ListingEntry entry) {
+            Integer existing = slotById.get(entry.getId());
+            int slot;
+            if (existing != null) {
+                unlink(existing);
+                slot = existing;
+            } else {
+                slot = allocateSlot();
+            }
+
+            int kind = entry.getKind().ordinal();
+            ids[slot] = entry.getId();
+            prices[slot] = entry.getPrice();
+            bedrooms[slot] = Math.max(0, entry.getBedrooms());
+            bathrooms[slot] = entry.getBathrooms();
+            kinds[slot] = (byte) kind;
+            cityKeys[slot] = keyFor(normalize(entry.getCity()), cityKeysByName, cityPostings);
+            typeKeys[slot] = keyFor(normalize(entry.getPropertyType()), typeKeysByName, typePostings);
+
+            kindSlots[kind].set(slot);
+            if (entry.isFurnished()) {
+                furnished.set(slot);
+            }
+            if (cityKeys[slot] != NO_KEY) {
+                cityPostings.get(cityKeys[slot]).set(slot);
+            }
+            if (typeKeys[slot] != NO_KEY) {
+                typePostings.get(typeKeys[slot]).set(slot);
+            }
+            while (bedroomPostings.size() <= bedrooms[slot]) {
+                bedroomPostings.add(new BitSet());
+            }
+            bedroomPostings.get(bedrooms[slot]).set(slot);
+            priceColumns[kind].insert(prices[slot], ids[slot], slot);
+
+            slotById.put(entry.getId(), slot);
+        }
+
+        void remove(long id) {
+            Integer slot = slotById.remove(id);
+            if (slot != null) {
+                unlink(slot);
+                freeSlots.set(slot);
+            }
+        }
+
+        private void unlink(int slot) {
+            int kind = kinds[slot];
+            kindSlots[kind].clear(slot);
+            furnished.clear(slot);
+            if (cityKeys[slot] != NO_KEY) {
+                cityPostings.get(cityKeys[slot]).clear(slot);
+            }
+            if (typeKeys[slot] != NO_KEY) {
+                typePostings.get(typeKeys[slot]).clear(slot);
+            }
+            bedroomPostings.get(bedrooms[slot]).clear(slot);
+            priceColumns[kind].remove(prices[slot], ids[slot]);
+        }
+
+        private int allocateSlot() {
+            int slot = freeSlots.nextSetBit(0);
+            if (slot >= 0) {
+                freeSlots.clear(slot);
+                return slot;
+            }
+            slot = slotCount++;
+            if (slot == ids.length) {
+                int capacity = ids.length * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                prices = Arrays.copyOf(prices, capacity);
+                bedrooms = Arrays.copyOf(bedrooms, capacity);
+                bathrooms = Arrays.copyOf(bathrooms, capacity);
+                cityKeys = Arrays.copyOf(cityKeys, capacity);
+                typeKeys = Arrays.copyOf(typeKeys, capacity);
+                kinds = Arrays.copyOf(kinds, capacity);
+            }
+            return slot;
+        }
+
+        private static int keyFor(String value, Map<String, Integer> keys, List<BitSet> postings) {
+            if (value == null) {
+                return NO_KEY;
+            }
+            Integer key = keys.get(value);
+            if (key == null) {
+                key = postings.size();
+                keys.put(value, key);
+                postings.add(new BitSet());
+            }
+            return key;
+        }
+
+        long[] search(ListingEntry.Kind kind, PropertySearchCriteria criteria) {
+            criteria.validate();
+            int k = kind.ordinal();
+            BitSet candidates = (BitSet) kindSlots[k].clone();
+
+            if (criteria.getCity() != null && !criteria.getCity().trim().isEmpty()) {
+                Integer key = cityKeysByName.get(normalize(criteria.getCity()));
+                if (key == null) {
+                    return NO_IDS;
+                }
+                candidates.and(cityPostings.get(key));
+            }
+            if (criteria.getPropertyType() != null && !criteria.getPropertyType().trim().isEmpty()) {
+                Integer key = typeKeysByName.get(normalize(criteria.getPropertyType()));
+                if (key == null) {
+                    return NO_IDS;
+                }
+                candidates.and(typePostings.get(key));
+            }
+            if (kind == ListingEntry.Kind.RENT && criteria.getFurnished() != null) {
+                if (criteria.getFurnished()) {
+                    candidates.and(furnished);
+                } else {
+                    candidates.andNot(furnished);
+                }
+            }
+            if (criteria.getMinBedrooms() != null || criteria.getMaxBedrooms() != null) {
+                int from = criteria.getMinBedrooms() != null ? criteria.getMinBedrooms() : 0;
+                int to = criteria.getMaxBedrooms() != null
+                        ? Math.min(criteria.getMaxBedrooms(), bedroomPostings.size() - 1)
+                        : bedroomPostings.size() - 1;
+                BitSet matching = new BitSet();
+                for (int b = from; b <= to; b++) {
+                    matching.or(bedroomPostings.get(b));
+                }
+                candidates.and(matching);
+            }
+            if (criteria.getExcludeId() != null) {
+                Integer slot = slotById.get(criteria.getExcludeId());
+                if (slot != null) {
+                    candidates.clear(slot);
+                }
+            }
+
+            long minPrice = criteria.getMinPrice() != null ? criteria.getMinPrice() : Long.MIN_VALUE;
+            long maxPrice = criteria.getMaxPrice() != null ? criteria.getMaxPrice() : Long.MAX_VALUE;
+            int minBathrooms = criteria.getMinBathrooms() != null ? criteria.getMinBathrooms() : Integer.MIN_VALUE;
+            PropertySearchCriteria.Sort sort = criteria.getSort();
+            int limit = criteria.getLimit();
+
+            boolean priceOrder = sort == PropertySearchCriteria.Sort.PRICE_ASC
+                    || sort == PropertySearchCriteria.Sort.PRICE_DESC;
+            if (priceOrder) {
+                PriceColumn column = priceColumns[k];
+                int from = column.lowerBound(minPrice);
+                int to = column.upperBound(maxPrice);
+                // Walk the price column when the filters are not very selective;
+                // otherwise rank the few candidates directly
+                if (to - from <= candidates.cardinality() * 8L) {
+                    return column.scan(from, to, sort == PropertySearchCriteria.Sort.PRICE_DESC,
+                            candidates, bathrooms, minBathrooms, limit);
+                }
+            }
+            return topK(candidates, minPrice, maxPrice, minBathrooms, comparator(sort), limit);
+        }
+
+        private long[] topK(BitSet candidates, long minPrice, long maxPrice, int minBathrooms,
+                            Comparator<Integer> order, int limit) {
+            // max-heap on result order, so the head is the worst row kept so far
+            PriorityQueue<Integer> heap = new PriorityQueue<>(Math.min(limit, 1024) + 1, order.reversed());
+            for (int slot = candidates.nextSetBit(0); slot >= 0; slot = candidates.nextSetBit(slot + 1)) {
+                if (prices[slot] < minPrice || prices[slot] > maxPrice || bathrooms[slot] < minBathrooms) {
+                    continue;
+                }
+                heap.add(slot);
+                if (heap.size() > limit) {
+                    heap.poll();
+                }
+            }
+            long[] result = new long[heap.size()];
+            for (int i = result.length - 1; i >= 0; i--) {
+                result[i] = ids[heap.poll()];
+            }
+            return result;
+        }
+
+        private Comparator<Integer> comparator(PropertySearchCriteria.Sort sort) {
+            Comparator<Integer> byId = (a, b) -> Long.compare(ids[a], ids[b]);
+            Comparator<Integer> byPrice = (a, b) -> Long.compare(prices[a], prices[b]);
+            switch (sort) {
+                case PRICE_DESC:
+                    return byPrice.reversed().thenComparing(byId);
+                case BEDROOMS_DESC:
+                    return Comparator.<Integer>comparingInt(slot -> -bedrooms[slot]).thenComparing(byPrice).thenComparing(byId);
+                case NEWEST:
+                    return byId.reversed();
+                default:
+                    return byPrice.thenComparing(byId);
+            }
+        }
+    }
+
+    /**
+     * Listings of one kind sorted by (price, ID), stored as parallel primitive arrays
+     */
+    private static final class PriceColumn {
+
+        private long[] prices = new long[IndexData.INITIAL_CAPACITY];
+        private long[] ids = new long[IndexData.INITIAL_CAPACITY];
+        private int[] slots = new int[IndexData.INITIAL_CAPACITY];
+        private int size;
+
+        /**
+         * @return index of the first entry with a price of at least the given price
+         */
+        int lowerBound(long price) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (prices[mid] < price) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return index of the first entry with a price greater than the given price
+         */
+        int upperBound(long price) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (prices[mid] <= price) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private int position(long price, long id) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = prices[mid] != price ? Long.compare(prices[mid], price) : Long.compare(ids[mid], id);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        void insert(long price, long id, int slot) {
+            int at = position(price, id);
+            if (at >= 0) {
+                slots[at] = slot;
+                return;
+            }
+            at = -(at + 1);
+            if (size == prices.length) {
+                prices = Arrays.copyOf(prices, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            System.arraycopy(prices, at, prices, at + 1, size - at);
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            System.arraycopy(slots, at, slots, at + 1, size - at);
+            prices[at] = price;
+            ids[at] = id;
+            slots[at] = slot;
+            size++;
+        }
+
+        void remove(long price, long id) {
+            int at = position(price, id);
+            if (at < 0) {
+                return;
+            }
+            System.arraycopy(prices, at + 1, prices, at, size - at - 1);
+            System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+            System.arraycopy(slots, at + 1, slots, at, size - at - 1);
+            size--;
+        }
+
+        /**
+         * Collect matching IDs from the index range [from, to). Descending
+         * scans still return equal prices in ascending ID order, matching
+         * ORDER BY price DESC, id ASC.
+         */
+        long[] scan(int from, int to, boolean descending, BitSet candidates,
+                    int[] bathrooms, int minBathrooms, int limit) {
+            long[] result = new long[Math.min(limit, Math.max(0, to - from))];
+            int count = 0;
+            if (!descending) {
+                for (int i = from; i < to && count < result.length; i++) {
+                    int slot = slots[i];
+                    if (candidates.get(slot) && bathrooms[slot] >= minBathrooms) {
+                        result[count++] = ids[i];
+                    }
+                }
+            } else {
+                int groupEnd = to;
+                while (groupEnd > from && count < result.length) {
+                    int groupStart = groupEnd - 1;
+                    while (groupStart > from && prices[groupStart - 1] == prices[groupEnd - 1]) {
+                        groupStart--;
+                    }
+                    for (int i = groupStart; i < groupEnd && count < result.length; i++) {
+                        int slot = slots[i];
+                        if (candidates.get(slot) && bathrooms[slot] >= minBathrooms) {
+                            result[count++] = ids[i];
+                        }
+                    }
+                    groupEnd = groupStart;
+                }
+            }
+            return count == result.length ? result : Arrays.copyOf(result, count);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package realestatemanagement.ejb;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a keyset paginated listing query
+ *
+ * @param <T> Listing entity type
+ * @author Zhengxu
+ */
+public class ListingPage<T> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<T> items;
+    private final PageToken nextToken;
+
+    public ListingPage(List<T> items, PageToken nextToken) {
+        this.items = items != null ? items : Collections.emptyList();
+        this.nextToken = nextToken;
+    }
+
+    /**
+     * @return an empty page with no successor
+     */
+    public static <T> ListingPage<T> empty() {
+        return new ListingPage<>(Collections.emptyList(), null);
+    }
+
+    /**
+     * @return the items on this page
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * @return the token of the next page, or null if this is the last page
+     */
+    public PageToken getNextToken() {
+        return nextToken;
+    }
+
+    /**
+     * @return true if another page follows this one
+     */
+    public boolean hasNext() {
+        return nextToken != null;
+    }
+}
@@ -0,0 +1,44 @@
+package realestatemanagement.ejb;
+
+/**
+ * Sort orders supported by the keyset paginated listing queries.
+ * Each order is backed by a composite index ending in the property ID,
+ * so a page can always be located by seeking past the last row seen.
+ *
+ * @author Zhengxu
+ */
+public enum ListingSort {
+
+    /** Oldest listings first (ascending ID) */
+    ID("id"),
+
+    /** Cheapest listings first (weekly rent or sale price, then ID) */
+    PRICE("price");
+
+    private final String parameter;
+
+    ListingSort(String parameter) {
+        this.parameter = parameter;
+    }
+
+    /**
+     * @return the value used for this sort order in request parameters
+     */
+    public String getParameter() {
+        return parameter;
+    }
+
+    /**
+     * Resolve a sort order from a request parameter
+     * @param parameter Request parameter value, may be null
+     * @return Matching sort order, or ID if the value is unknown
+     */
+    public static ListingSort fromParameter(String parameter) {
+        for (ListingSort sort : values()) {
+            if (sort.parameter.equalsIgnoreCase(parameter)) {
+                return sort;
+            }
+        }
+        return ID;
+    }
+}
@@ -0,0 +1,229 @@
+package realestatemanagement.ejb;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import realestatemanagement.model.OutboundMail;
+
+/**
+ * Sends the messages of the outbound mail queue in the background.
+ *
+ * A small, fixed number of workers run on the container's managed executor.
+ * Each worker claims a batch of due messages, sends the whole batch over one
+ * SMTP connection and reports the outcome to MailQueueEJB, then claims the
+ * next batch until the queue is drained. Workers are started when a message
+ * is queued and by a poll every minute, which also picks up retries and
+ * messages whose sender died mid-batch.
+ *
+ * Settings, read as system properties at startup:
+ * realestate.mail.host (default localhost), realestate.mail.port (default
+ * 2525, the local fake SMTP server), realestate.mail.from,
+ * realestate.mail.workers (default 2) and realestate.mail.batch (default 20).
+ *
+ * @author Zhengxu
+ */
+@Singleton
+@Startup
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class MailDispatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(MailDispatcher.class.getName());
+
+    /** How long a claimed batch stays reserved for its worker */
+    private static final long LEASE_MILLIS = 5 * 60_000L;
+
+    /** SMTP connect and read timeout */
+    private static final int SMTP_TIMEOUT_MILLIS = 10_000;
+
+    @Resource
+    private ManagedExecutorService executor;
+
+    @EJB
+    private MailQueueEJB queue;
+
+    private Session session;
+    private InternetAddress from;
+    private int batchSize;
+    private Semaphore workers;
+    // set whenever there may be new work, so a finishing worker looks again
+    private final AtomicBoolean moreWork = new AtomicBoolean();
+
+    @PostConstruct
+    public void init() {
+        Properties props = new Properties();
+        props.put("mail.smtp.host", System.getProperty("realestate.mail.host", "localhost"));
+        props.put("mail.smtp.port", System.getProperty("realestate.mail.port", "2525"));
+        props.put("mail.smtp.connectiontimeout", String.valueOf(SMTP_TIMEOUT_MILLIS));
+        props.put("mail.smtp.timeout", String.valueOf(SMTP_TIMEOUT_MILLIS));
+        session = Session.getInstance(props);
+
+        try {
+            from = new InternetAddress(System.getProperty("realestate.mail.from", "CENTRE@glassfish.com"));
+        } catch (AddressException e) {
+            throw new IllegalStateException("Invalid realestate.mail.from address", e);
+        }
+        batchSize = setting("realestate.mail.batch", 20);
+        workers = new Semaphore(setting("realestate.mail.workers", 2));
+    }
+
+    /**
+     * Pick up retries and anything a missed wake-up left behind
+     */
+    @Schedule(hour = "*", minute = "*", persistent = false)
+    public void poll() {
+        wakeUp();
+    }
+
+    /**
+     * Delete messages that are no longer needed
+     */
+    @Schedule(hour = "*", minute = "35", persistent = false)
+    public void purge() {
+        try {
+            queue.purgeFinished();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Error purging finished mails", e);
+        }
+    }
+
+    /**
+     * Start a worker if one is free; otherwise a running worker will see the
+     * new work before it stops
+     */
+    public void wakeUp() {
+        moreWork.set(true);
+        if (!workers.tryAcquire()) {
+            return;
+        }
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            workers.release();
+            LOGGER.log(Level.WARNING, "Mail worker rejected by the executor, retrying at the next poll");
+        }
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                moreWork.set(false);
+                List<OutboundMail> batch = queue.claimBatch(batchSize, LEASE_MILLIS);
+                if (batch.isEmpty()) {
+                    if (!moreWork.get()) {
+                        break;
+                    }
+                    continue;
+                }
+                send(batch);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Mail worker stopped", e);
+        } finally {
+            workers.release();
+        }
+        // work queued between the last check and the release
+        if (moreWork.get()) {
+            wakeUp();
+        }
+    }
+
+    /**
+     * Send a batch over a single SMTP connection
+     * @param batch Claimed messages
+     */
+    private void send(List<OutboundMail> batch) {
+        Transport transport;
+        try {
+            transport = session.getTransport("smtp");
+            transport.connect();
+        } catch (MessagingException e) {
+            LOGGER.log(Level.WARNING, "Cannot connect to the mail relay: {0}", e.getMessage());
+            for (OutboundMail mail : batch) {
+                queue.markFailed(mail.getId(), "Cannot connect: " + e.getMessage(), false);
+            }
+            return;
+        }
+
+        List<Long> sent = new ArrayList<>();
+        try {
+            for (OutboundMail mail : batch) {
+                MimeMessage message;
+                try {
+                    message = toMessage(mail);
+                } catch (MessagingException e) {
+                    queue.markFailed(mail.getId(), "Invalid message: " + e.getMessage(), true);
+                    continue;
+                }
+                try {
+                    if (!transport.isConnected()) {
+                        transport.connect();
+                    }
+                    transport.sendMessage(message, message.getAllRecipients());
+                    sent.add(mail.getId());
+                } catch (SendFailedException e) {
+                    // the relay refused the recipient; retrying cannot help
+                    queue.markFailed(mail.getId(), e.getMessage(), e.getValidUnsentAddresses() == null
+                            || e.getValidUnsentAddresses().length == 0);
+                } catch (MessagingException e) {
+                    queue.markFailed(mail.getId(), e.getMessage(), false);
+                }
+            }
+        } finally {
+            try {
+                transport.close();
+            } catch (MessagingException e) {
+                LOGGER.log(Level.FINE, "Error closing SMTP connection", e);
+            }
+            queue.markSent(sent);
+        }
+        LOGGER.log(Level.INFO, "Sent {0} of {1} queued mails", new Object[]{sent.size(), batch.size()});
+    }
+
+    private MimeMessage toMessage(OutboundMail mail) throws MessagingException {
+        MimeMessage message = new MimeMessage(session);
+        message.setFrom(from);
+        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(mail.getRecipient(), true));
+        message.setSubject(mail.getSubject());
+        message.setSentDate(new Date());
+        message.setText(mail.getBody());
+        return message;
+    }
+
+    private static int setting(String name, int defaultValue) {
+        try {
+            int value = Integer.parseInt(System.getProperty(name, String.valueOf(defaultValue)).trim());
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        LOGGER.log(Level.WARNING, "Ignoring invalid {0}, using {1}", new Object[]{name, defaultValue});
+        return defaultValue;
+    }
+}
@@ -0,0 +1,181 @@
+package realestatemanagement.ejb;
+
+import jakarta.annotation.Resource;
+import jakarta.ejb.EJB;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import realestatemanagement.model.OutboundMail;
+
+/**
+ * Enterprise Java Bean for the durable outbound mail queue.
+ * Callers enqueue a message and return at once; MailDispatcher claims due
+ * messages in batches, sends them and reports the outcome back here. Every
+ * operation runs in a transaction of its own so a queued message is never
+ * lost with, or held up by, the caller's transaction.
+ *
+ * The body, which carries verification and recovery codes, is blanked as
+ * soon as a message is sent or given up on, and finished messages are
+ * purged once they are older than realestate.mail.retention seconds
+ * (default one day).
+ *
+ * @author Zhengxu
+ */
+@Stateless
+@LocalBean
+public class MailQueueEJB {
+
+    private static final Logger LOGGER = Logger.getLogger(MailQueueEJB.class.getName());
+
+    /** Attempts before a message is marked FAILED */
+    public static final int MAX_ATTEMPTS = 8;
+
+    /** Delay before the first retry; doubled on every further failure */
+    private static final long RETRY_BASE_MILLIS = 30_000L;
+
+    /** Longest delay between two attempts */
+    private static final long RETRY_MAX_MILLIS = 60 * 60_000L;
+
+    /** How long sent and failed messages are kept */
+    private static final long RETENTION_MILLIS = Long.getLong("realestate.mail.retention", 24 * 60 * 60L) * 1000L;
+
+    @PersistenceContext(unitName = "RealEstateManagementPU")
+    private EntityManager em;
+
+    @EJB
+    private MailDispatcher dispatcher;
+
+    @Resource
+    private TransactionSynchronizationRegistry txRegistry;
+
+    /**
+     * Queue a plain text message for delivery
+     * @param recipient Recipient address
+     * @param subject Subject line
+     * @param body Message text
+     * @return The queued message
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public OutboundMail enqueue(String recipient, String subject, String body) {
+        if (recipient == null || recipient.trim().isEmpty()) {
+            throw new IllegalArgumentException("Recipient is required");
+        }
+        if (subject == null || body == null) {
+            throw new IllegalArgumentException("Subject and body cannot be null");
+        }
+
+        Date now = new Date();
+        OutboundMail mail = new OutboundMail(recipient.trim(), subject, body);
+        mail.setCreated(now);
+        mail.setNextAttempt(now);
+        em.persist(mail);
+        em.flush(); // Force immediate persistence to get generated ID
+        AfterCommit.run(txRegistry, dispatcher::wakeUp);
+
+        LOGGER.log(Level.INFO, "Queued mail {0} to {1}", new Object[]{mail.getId(), mail.getRecipient()});
+        return mail;
+    }
+
+    /**
+     * Claim due messages for sending. Claimed messages are leased to the
+     * caller: if they are not reported sent or failed before the lease
+     * expires they become due again.
+     * @param limit Maximum number of messages
+     * @param leaseMillis Lease duration
+     * @return Claimed messages, oldest first
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public List<OutboundMail> claimBatch(int limit, long leaseMillis) {
+        Date now = new Date();
+        List<OutboundMail> batch = em.createNamedQuery("OutboundMail.findDue", OutboundMail.class)
+                .setParameter("statuses", EnumSet.of(OutboundMail.Status.PENDING, OutboundMail.Status.SENDING))
+                .setParameter("now", now)
+                .setMaxResults(limit)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getResultList();
+
+        Date leaseEnd = new Date(now.getTime() + leaseMillis);
+        for (OutboundMail mail : batch) {
+            mail.setStatus(OutboundMail.Status.SENDING);
+            mail.setNextAttempt(leaseEnd);
+        }
+        return batch;
+    }
+
+    /**
+     * Record messages accepted by the mail relay, and drop their text
+     * @param ids IDs of the sent messages
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void markSent(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+        em.createQuery("UPDATE OutboundMail m SET m.status = :status, m.sent = :now, m.lastError = NULL, m.body = '' "
+                + "WHERE m.id IN :ids")
+                .setParameter("status", OutboundMail.Status.SENT)
+                .setParameter("now", new Date())
+                .setParameter("ids", ids)
+                .executeUpdate();
+    }
+
+    /**
+     * Record a failed delivery attempt and schedule the next one with
+     * exponential backoff, or give up
+     * @param id Message ID
+     * @param error Reason for the failure
+     * @param permanent true if retrying cannot help, e.g. a malformed address
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void markFailed(Long id, String error, boolean permanent) {
+        OutboundMail mail = em.find(OutboundMail.class, id);
+        if (mail == null) {
+            return;
+        }
+        int attempts = mail.getAttempts() + 1;
+        mail.setAttempts(attempts);
+        mail.setLastError(error != null && error.length() > 1000 ? error.substring(0, 1000) : error);
+
+        if (permanent || attempts >= MAX_ATTEMPTS) {
+            mail.setStatus(OutboundMail.Status.FAILED);
+            mail.setBody("");
+            LOGGER.log(Level.WARNING, "Giving up on mail {0} to {1} after {2} attempts: {3}",
+                      new Object[]{id, mail.getRecipient(), attempts, error});
+            return;
+        }
+        long delay = Math.min(RETRY_MAX_MILLIS, RETRY_BASE_MILLIS << Math.min(attempts - 1, 20));
+        // jitter, so messages that failed together do not retry together
+        delay += ThreadLocalRandom.current().nextLong(delay / 4 + 1);
+        mail.setStatus(OutboundMail.Status.PENDING);
+        mail.setNextAttempt(new Date(System.currentTimeMillis() + delay));
+        LOGGER.log(Level.INFO, "Mail {0} attempt {1} failed, retrying in {2} s: {3}",
+                  new Object[]{id, attempts, delay / 1000, error});
+    }
+
+    /**
+     * Delete sent and failed messages older than the retention period
+     * @return Number of messages deleted
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public int purgeFinished() {
+        int deleted = em.createQuery("DELETE FROM OutboundMail m WHERE m.status IN :statuses AND m.created < :before")
+                .setParameter("statuses", EnumSet.of(OutboundMail.Status.SENT, OutboundMail.Status.FAILED))
+                .setParameter("before", new Date(System.currentTimeMillis() - RETENTION_MILLIS))
+                .executeUpdate();
+        if (deleted > 0) {
+            LOGGER.log(Level.INFO, "Purged {0} finished mails", deleted);
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,244 @@
+package realestatemanagement.ejb;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Application wide ranking of property managers by number of allocations,
+ * so the leaderboard and the allocation count of a manager are read from
+ * memory instead of counting allocations on every page render.
+ *
+ * The counts come from PROPERTYMANAGER.ALLOCATION_COUNT, which AllocationEJB
+ * adjusts in the transaction of each allocation and reports here once that
+ * transaction has committed. The callbacks of two commits can run in either
+ * order, so each count comes with ALLOCATION_COUNT_VERSION, bumped by the
+ * same update, and a count older than the one held is ignored. Managers are
+ * kept in a tree ordered by count, so updates take O(log n) and the top k
+ * are read in O(k).
+ *
+ * Every hour the counter columns are checked against the allocations
+ * themselves; any that drifted, e.g. through rows changed outside the
+ * application, are corrected and the ranking is rebuilt.
+ *
+ * @author Zhengxu
+ */
+@Singleton
+@Startup
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ManagerLeaderboard {
+
+    private static final Logger LOGGER = Logger.getLogger(ManagerLeaderboard.class.getName());
+
+    /** Rows read per query while reconciling */
+    private static final int LOAD_CHUNK_SIZE = 5000;
+
+    private static final long[] NO_IDS = new long[0];
+
+    @PersistenceContext(unitName = "RealEstateManagementPU")
+    private EntityManager em;
+
+    @EJB
+    private AllocationEJB allocationEJB;
+
+    // writes are versioned counts, so replaying one the load already saw keeps the newer count
+    private final RebuildableState<Ranking> state =
+            new RebuildableState<>(LOGGER, "manager leaderboard", new Ranking());
+
+    @PostConstruct
+    public void init() {
+        reconcile();
+    }
+
+    /**
+     * Correct any counter column that no longer matches the allocations,
+     * then rebuild the ranking from the columns. The current ranking keeps
+     * being served until the new one is complete.
+     */
+    @Schedule(hour = "*", minute = "25", persistent = false)
+    public void reconcile() {
+        long start = System.nanoTime();
+        int[] repaired = {0};
+        Ranking fresh = state.rebuild(() -> load(repaired));
+        if (fresh != null) {
+            LOGGER.log(Level.INFO, "Reconciled manager leaderboard of {0} managers, {1} counts corrected, in {2} ms",
+                      new Object[]{fresh.size(), repaired[0], (System.nanoTime() - start) / 1_000_000});
+        }
+    }
+
+    /**
+     * Read the ranking from the counter columns, correcting any that do not
+     * match the allocations
+     * @param repaired Incremented for each corrected count
+     * @return The new ranking
+     */
+    private Ranking load(int[] repaired) {
+        Map<Long, Long> actual = new HashMap<>();
+        for (Object[] row : em.createQuery(
+                "SELECT a.propertyManager.id, COUNT(a) FROM Allocation a GROUP BY a.propertyManager.id", Object[].class)
+                .getResultList()) {
+            actual.put((Long) row[0], (Long) row[1]);
+        }
+
+        Ranking fresh = new Ranking();
+        long lastId = Long.MIN_VALUE;
+        while (true) {
+            List<Object[]> rows = em.createQuery(
+                    "SELECT pm.id, pm.allocationCount, pm.allocationCountVersion FROM PropertyManager pm "
+                    + "WHERE pm.id > :lastId ORDER BY pm.id",
+                    Object[].class)
+                    .setParameter("lastId", lastId)
+                    .setMaxResults(LOAD_CHUNK_SIZE)
+                    .getResultList();
+            for (Object[] row : rows) {
+                lastId = (Long) row[0];
+                long count = (Long) row[1];
+                long version = (Long) row[2];
+                if (count != actual.getOrDefault(lastId, 0L)) {
+                    // the allocations may have changed since they were counted; recount under a
+                    // row lock. The repair reports its new version, which replaces this entry
+                    long corrected = allocationEJB.repairAllocationCount(lastId);
+                    if (corrected != count) {
+                        LOGGER.log(Level.INFO, "Reconciliation corrected allocation count of manager {0} from {1} to {2}",
+                                  new Object[]{lastId, count, corrected});
+                        repaired[0]++;
+                    }
+                    count = corrected;
+                }
+                fresh.put(lastId, count, version);
+            }
+            em.clear();
+            if (rows.size() < LOAD_CHUNK_SIZE) {
+                return fresh;
+            }
+        }
+    }
+
+    /**
+     * @return true once the first reconciliation has completed and the ranking can be used
+     */
+    public boolean isReady() {
+        return state.isReady();
+    }
+
+    /**
+     * Record the committed allocation count of a manager, unless a newer
+     * one is already held; also used for a new manager with a count of 0
+     * @param managerId Property manager ID
+     * @param count Number of allocations
+     * @param version ALLOCATION_COUNT_VERSION written with the count
+     */
+    public void put(long managerId, long count, long version) {
+        state.write(d -> d.put(managerId, count, version));
+    }
+
+    /**
+     * Remove a deleted manager
+     * @param managerId Property manager ID
+     */
+    public void remove(long managerId) {
+        state.write(d -> d.remove(managerId));
+    }
+
+    /**
+     * @param managerId Property manager ID
+     * @return Number of allocations of the manager, or -1 if it is not ranked
+     */
+    public long getCount(long managerId) {
+        return state.read(d -> d.count(managerId));
+    }
+
+    /**
+     * @param limit Maximum number of managers
+     * @return IDs of the managers with the most allocations, most first, ties by ID
+     */
+    public long[] top(int limit) {
+        if (limit <= 0) {
+            return NO_IDS;
+        }
+        return state.read(d -> d.top(limit));
+    }
+
+    // ==================== RANKING ====================
+
+    private static final class Rank {
+
+        // most allocations first, then oldest manager
+        static final Comparator<Rank> ORDER = Comparator.<Rank>comparingLong(r -> -r.count)
+                .thenComparingLong(r -> r.managerId);
+
+        final long managerId;
+        final long count;
+        final long version;
+
+        Rank(long managerId, long count, long version) {
+            this.managerId = managerId;
+            this.count = count;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Managers ordered by count, with a map to find a manager's current
+     * position. Not thread safe; ManagerLeaderboard guards it with the lock of its state.
+     */
+    private static final class Ranking {
+
+        private final TreeSet<Rank> ordered = new TreeSet<>(Rank.ORDER);
+        private final Map<Long, Rank> byId = new HashMap<>();
+
+        int size() {
+            return byId.size();
+        }
+
+        void put(long managerId, long count, long version) {
+            Rank previous = byId.get(managerId);
+            if (previous != null) {
+                if (previous.version > version) {
+                    return; // reported late, after a newer count
+                }
+                ordered.remove(previous);
+            }
+            Rank rank = new Rank(managerId, Math.max(0, count), version);
+            byId.put(managerId, rank);
+            ordered.add(rank);
+        }
+
+        void remove(long managerId) {
+            Rank previous = byId.remove(managerId);
+            if (previous != null) {
+                ordered.remove(previous);
+            }
+        }
+
+        long count(long managerId) {
+            Rank rank = byId.get(managerId);
+            return rank != null ? rank.count : -1;
+        }
+
+        long[] top(int limit) {
+            long[] ids = new long[Math.min(limit, ordered.size())];
+            Iterator<Rank> it = ordered.iterator();
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = it.next().managerId;
+            }
+            return ids;
+        }
+    }
+}
@@ -0,0 +1,533 @@
+package realestatemanagement.ejb;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Application wide running aggregates over listings, property managers and
+ * allocations, so counts and averages are read from memory instead of an
+ * aggregate scan on every page render.
+ *
+ * For each listing kind it keeps the count, sum, minimum, maximum and a
+ * quantile sketch of the price, overall and broken down by city and by
+ * number of bedrooms. The EJBs report every committed write; a full
+ * reconciliation from the database at startup and every hour repairs any
+ * drift, e.g. from rows changed outside the application.
+ *
+ * @author Zhengxu
+ */
+@Singleton
+@Startup
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class MarketStatistics {
+
+    private static final Logger LOGGER = Logger.getLogger(MarketStatistics.class.getName());
+
+    /** Rows read per query while reconciling */
+    private static final int RECONCILE_CHUNK_SIZE = 5000;
+
+    @PersistenceContext(unitName = "RealEstateManagementPU")
+    private EntityManager em;
+
+    // listing writes replace what the scan counted for the listing, so replaying
+    // one it already saw is exact; manager and allocation counts are deltas
+    private final RebuildableState<StatisticsData> state =
+            new RebuildableState<>(LOGGER, "market statistics", new StatisticsData());
+
+    @PostConstruct
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void init() {
+        reconcile();
+    }
+
+    /**
+     * Recompute every aggregate from the database. The current figures keep
+     * being served until the new ones are complete.
+     *
+     * Runs outside a transaction, so every chunk of the scan reads the latest
+     * committed rows rather than one snapshot taken when the scan began.
+     * Every write reported from the start of the reconciliation is replayed
+     * onto the new figures. A listing write replaces whatever the scan
+     * counted for that listing with its latest state, so it is exact whether
+     * the scan read the listing before or after the write. Manager and
+     * allocation counts are taken first, and the changes to them are replayed
+     * as deltas; one that commits while the count query runs may be counted
+     * twice until the next reconciliation.
+     */
+    @Schedule(hour = "*", minute = "20", persistent = false)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void reconcile() {
+        long start = System.nanoTime();
+        // no longer written once the new figures have replaced it
+        StatisticsData previous = state.read(d -> d);
+        StatisticsData fresh = state.rebuild(() -> {
+            StatisticsData loaded = new StatisticsData();
+            loaded.counted = new EnumMap<>(ListingEntry.Kind.class);
+            loaded.managers = em.createNamedQuery("getTotalManagers", Long.class).getSingleResult();
+            loaded.allocations = em.createNamedQuery("getTotalAllocations", Long.class).getSingleResult();
+            scanListings(loaded, ListingEntry.Kind.RENT,
+                    "SELECT rp.id, rp.weeklyRent, rp.noOfBedrooms, a.city "
+                    + "FROM RentProperty rp LEFT JOIN rp.address a WHERE rp.id > :lastId ORDER BY rp.id");
+            scanListings(loaded, ListingEntry.Kind.SALE,
+                    "SELECT sp.id, sp.salePrice, sp.noOfBedrooms, a.city "
+                    + "FROM SaleProperty sp LEFT JOIN sp.address a WHERE sp.id > :lastId ORDER BY sp.id");
+            return loaded;
+        }, d -> d.counted = null); // later writes are plain deltas again
+        if (fresh != null) {
+            logDrift(previous, fresh);
+            LOGGER.log(Level.INFO, "Reconciled market statistics in {0} ms",
+                      (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    /**
+     * @return true once the first reconciliation has completed and the figures can be used
+     */
+    public boolean isReady() {
+        return state.isReady();
+    }
+
+    // ==================== UPDATES ====================
+
+    /**
+     * Count a newly created listing
+     * @param entry Listing snapshot
+     */
+    public void listingAdded(ListingEntry entry) {
+        if (entry != null) {
+            state.write(d -> d.listingChanged(null, entry));
+        }
+    }
+
+    /**
+     * Replace the figures of an updated listing
+     * @param before Snapshot taken before the update
+     * @param after Snapshot taken after the update
+     */
+    public void listingUpdated(ListingEntry before, ListingEntry after) {
+        if (before == null) {
+            listingAdded(after);
+        } else if (after != null) {
+            state.write(d -> d.listingChanged(before, after));
+        }
+    }
+
+    /**
+     * Stop counting a deleted listing
+     * @param entry Snapshot taken before the delete
+     */
+    public void listingRemoved(ListingEntry entry) {
+        if (entry != null) {
+            state.write(d -> d.listingChanged(entry, null));
+        }
+    }
+
+    public void managerAdded() {
+        state.write(d -> d.managers++);
+    }
+
+    public void managerRemoved() {
+        state.write(d -> d.managers = Math.max(0, d.managers - 1));
+    }
+
+    public void allocationAdded() {
+        state.write(d -> d.allocations++);
+    }
+
+    public void allocationsAdded(int count) {
+        state.write(d -> d.allocations += count);
+    }
+
+    public void allocationRemoved() {
+        state.write(d -> d.allocations = Math.max(0, d.allocations - 1));
+    }
+
+    // ==================== READS ====================
+
+    /**
+     * Price statistics of all listings of one kind
+     * @param kind Rent or sale
+     * @return Summary, never null
+     */
+    public PriceSummary getSummary(ListingEntry.Kind kind) {
+        return state.read(d -> d.kinds[kind.ordinal()].total.summary());
+    }
+
+    /**
+     * Price statistics of the listings of one kind in one city
+     * @param kind Rent or sale
+     * @param city City, compared case-insensitively
+     * @return Summary, {@link PriceSummary#EMPTY} if there are no such listings
+     */
+    public PriceSummary getCitySummary(ListingEntry.Kind kind, String city) {
+        String key = ListingIndex.normalize(city);
+        if (key == null) {
+            return PriceSummary.EMPTY;
+        }
+        return state.read(d -> {
+            PriceAggregate group = d.kinds[kind.ordinal()].byCity.get(key);
+            return group != null ? group.summary() : PriceSummary.EMPTY;
+        });
+    }
+
+    /**
+     * Price statistics of the listings of one kind per city
+     * @param kind Rent or sale
+     * @return Summaries keyed by lower-cased city, in city order
+     */
+    public Map<String, PriceSummary> getCityBreakdown(ListingEntry.Kind kind) {
+        return state.read(d -> summaries(d.kinds[kind.ordinal()].byCity));
+    }
+
+    /**
+     * Price statistics of the listings of one kind per number of bedrooms
+     * @param kind Rent or sale
+     * @return Summaries keyed by bedroom count, in ascending order
+     */
+    public Map<Integer, PriceSummary> getBedroomBreakdown(ListingEntry.Kind kind) {
+        return state.read(d -> summaries(d.kinds[kind.ordinal()].byBedrooms));
+    }
+
+    public long getManagerCount() {
+        return state.read(d -> d.managers);
+    }
+
+    public long getAllocationCount() {
+        return state.read(d -> d.allocations);
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    private void scanListings(StatisticsData target, ListingEntry.Kind kind, String jpql) {
+        long lastId = Long.MIN_VALUE;
+        while (true) {
+            List<Object[]> rows = em.createQuery(jpql, Object[].class)
+                    .setParameter("lastId", lastId)
+                    .setMaxResults(RECONCILE_CHUNK_SIZE)
+                    .getResultList();
+            for (Object[] row : rows) {
+                lastId = (Long) row[0];
+                target.listingChanged(null, new ListingEntry(kind, lastId, longValue(row[1]),
+                        row[2] != null ? ((Number) row[2]).intValue() : 0, 0, false, null, (String) row[3]));
+            }
+            em.clear();
+            if (rows.size() < RECONCILE_CHUNK_SIZE) {
+                return;
+            }
+        }
+    }
+
+    private static void logDrift(StatisticsData previous, StatisticsData fresh) {
+        for (ListingEntry.Kind kind : ListingEntry.Kind.values()) {
+            long was = previous.kinds[kind.ordinal()].total.count;
+            long is = fresh.kinds[kind.ordinal()].total.count;
+            if (was != is) {
+                LOGGER.log(Level.INFO, "Reconciliation corrected {0} listing count from {1} to {2}",
+                          new Object[]{kind, was, is});
+            }
+        }
+        if (previous.managers != fresh.managers || previous.allocations != fresh.allocations) {
+            LOGGER.log(Level.INFO, "Reconciliation corrected manager/allocation counts from {0}/{1} to {2}/{3}",
+                      new Object[]{previous.managers, previous.allocations, fresh.managers, fresh.allocations});
+        }
+    }
+
+    private static <K> Map<K, PriceSummary> summaries(Map<K, PriceAggregate> groups) {
+        Map<K, PriceSummary> result = new TreeMap<>();
+        for (Map.Entry<K, PriceAggregate> group : groups.entrySet()) {
+            result.put(group.getKey(), group.getValue().summary());
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static long longValue(Object value) {
+        return value != null ? ((Number) value).longValue() : 0L;
+    }
+
+    // ==================== AGGREGATE STRUCTURES ====================
+
+    /**
+     * All figures. Not thread safe; MarketStatistics guards it with the lock of its state.
+     */
+    private static final class StatisticsData {
+
+        private final KindStatistics[] kinds = {new KindStatistics(), new KindStatistics()};
+        private long managers;
+        private long allocations;
+        // while being reconciled: what is counted for each listing, by kind; null otherwise
+        private Map<ListingEntry.Kind, Map<Long, ListingEntry>> counted;
+
+        /**
+         * Count a listing write. While being reconciled the listing's counted
+         * state is replaced by the new one, whatever it was; otherwise the
+         * write is applied as a delta.
+         * @param before Listing before the write, or null if it was created
+         * @param after Listing after the write, or null if it was removed
+         */
+        void listingChanged(ListingEntry before, ListingEntry after) {
+            if (counted != null) {
+                ListingEntry latest = after != null ? after : before;
+                Map<Long, ListingEntry> listings = counted.computeIfAbsent(latest.getKind(), k -> new HashMap<>());
+                before = after != null ? listings.put(latest.getId(), after) : listings.remove(latest.getId());
+            }
+            if (before != null) {
+                apply(before, -1);
+            }
+            if (after != null) {
+                apply(after, 1);
+            }
+        }
+
+        private void apply(ListingEntry entry, int sign) {
+            kinds[entry.getKind().ordinal()].apply(entry.getPrice(), entry.getBedrooms(), entry.getCity(), sign);
+        }
+    }
+
+    /**
+     * Aggregates of one listing kind
+     */
+    private static final class KindStatistics {
+
+        private final PriceAggregate total = new PriceAggregate(null);
+        private final Map<String, PriceAggregate> byCity = new HashMap<>();
+        private final Map<Integer, PriceAggregate> byBedrooms = new HashMap<>();
+
+        void apply(long price, int bedrooms, String city, int sign) {
+            total.apply(price, sign);
+            String key = ListingIndex.normalize(city);
+            if (key != null) {
+                applyToGroup(byCity, key, city.trim(), price, sign);
+            }
+            int rooms = Math.max(0, bedrooms);
+            applyToGroup(byBedrooms, rooms, String.valueOf(rooms), price, sign);
+        }
+
+        private static <K> void applyToGroup(Map<K, PriceAggregate> groups, K key, String label,
+                                             long price, int sign) {
+            PriceAggregate group = groups.get(key);
+            if (group == null) {
+                if (sign < 0) {
+                    return;
+                }
+                group = new PriceAggregate(label);
+                groups.put(key, group);
+            }
+            group.apply(price, sign);
+            if (group.count == 0) {
+                groups.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Count, sum, extremes and quantile sketch of a multiset of prices.
+     *
+     * The minimum and maximum are exact while values are only added. When
+     * the last occurrence of an extreme is removed, the next one is not
+     * known; the bound of the sketch bucket holding the new extreme is used
+     * instead, which is off by at most the sketch accuracy, until an added
+     * price or the next reconciliation makes it exact again.
+     */
+    private static final class PriceAggregate {
+
+        private final String label;
+        private final QuantileSketch sketch = new QuantileSketch();
+        private long count;
+        private long sum;
+        private long min;
+        private long max;
+        // occurrences of min and max; 0 while the extreme is a sketch bound
+        private long minCount;
+        private long maxCount;
+
+        PriceAggregate(String label) {
+            this.label = label;
+        }
+
+        void apply(long price, int sign) {
+            if (sign > 0) {
+                add(price);
+            } else {
+                remove(price);
+            }
+        }
+
+        private void add(long price) {
+            if (count == 0 || price < min || (minCount == 0 && price <= min)) {
+                min = price;
+                minCount = 1;
+            } else if (price == min) {
+                minCount++;
+            }
+            if (count == 0 || price > max || (maxCount == 0 && price >= max)) {
+                max = price;
+                maxCount = 1;
+            } else if (price == max) {
+                maxCount++;
+            }
+            count++;
+            sum += price;
+            sketch.add(price);
+        }
+
+        private void remove(long price) {
+            if (!sketch.remove(price)) {
+                return; // never counted here, e.g. drift that the next reconciliation repairs
+            }
+            count--;
+            sum -= price;
+            if (count == 0) {
+                min = max = minCount = maxCount = 0;
+                return;
+            }
+            if (minCount == 0 || (price == min && --minCount == 0)) {
+                min = sketch.lowerBound();
+                minCount = 0;
+            }
+            if (maxCount == 0 || (price == max && --maxCount == 0)) {
+                max = sketch.upperBound();
+                maxCount = 0;
+            }
+        }
+
+        PriceSummary summary() {
+            if (count == 0) {
+                return new PriceSummary(label, 0, 0, 0, 0, 0);
+            }
+            long median = Math.max(min, Math.min(max, sketch.quantile(0.5, count)));
+            return new PriceSummary(label, count, sum, min, max, median);
+        }
+    }
+
+    /**
+     * Log-bucketed histogram with a fixed relative accuracy: bucket i
+     * holds the values in (GAMMA^(i-1), GAMMA^i], so any quantile is answered
+     * within {@link #RELATIVE_ACCURACY} of the true value. Unlike sampling
+     * sketches it supports removal, which an update or delete needs. Values of
+     * 0 or less share one bucket. The bucket array only spans the occupied
+     * range, a few hundred buckets for realistic prices.
+     */
+    private static final class QuantileSketch {
+
+        private static final double RELATIVE_ACCURACY = 0.01;
+        private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+        private static final double LOG_GAMMA = Math.log(GAMMA);
+        private static final int SLACK = 8;
+
+        private long zeroCount;
+        private long[] counts = new long[0];
+        // bucket index of counts[0]
+        private int offset;
+
+        private static int bucket(long value) {
+            return (int) Math.ceil(Math.log(value) / LOG_GAMMA);
+        }
+
+        void add(long value) {
+            if (value <= 0) {
+                zeroCount++;
+                return;
+            }
+            int index = bucket(value);
+            ensureBucket(index);
+            counts[index - offset]++;
+        }
+
+        boolean remove(long value) {
+            if (value <= 0) {
+                if (zeroCount == 0) {
+                    return false;
+                }
+                zeroCount--;
+                return true;
+            }
+            int at = bucket(value) - offset;
+            if (at < 0 || at >= counts.length || counts[at] == 0) {
+                return false;
+            }
+            counts[at]--;
+            return true;
+        }
+
+        private void ensureBucket(int index) {
+            if (counts.length == 0) {
+                offset = Math.max(0, index - SLACK);
+                counts = new long[2 * SLACK];
+            } else if (index < offset) {
+                int newOffset = Math.max(0, index - SLACK);
+                long[] grown = new long[counts.length + offset - newOffset];
+                System.arraycopy(counts, 0, grown, offset - newOffset, counts.length);
+                counts = grown;
+                offset = newOffset;
+            } else if (index - offset >= counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(counts.length * 2, index - offset + SLACK));
+            }
+        }
+
+        /**
+         * @param q Quantile between 0 and 1
+         * @param total Number of values in the sketch
+         * @return estimate of the value at that quantile
+         */
+        long quantile(double q, long total) {
+            long rank = (long) (q * (total - 1));
+            long seen = zeroCount;
+            if (rank < seen) {
+                return 0;
+            }
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen > rank) {
+                    return Math.round(2 * Math.pow(GAMMA, i + offset) / (GAMMA + 1));
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @return a value no greater than the smallest value in the sketch
+         */
+        long lowerBound() {
+            if (zeroCount > 0) {
+                return 0;
+            }
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    return (long) Math.floor(Math.pow(GAMMA, i + offset - 1));
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @return a value no smaller than the largest value in the sketch
+         */
+        long upperBound() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] > 0) {
+                    return (long) Math.ceil(Math.pow(GAMMA, i + offset));
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package realestatemanagement.ejb;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Application wide registry of operational counters and gauges, exposed by
+ * the /metrics servlet. Counters only go up; gauges are read when the
+ * metrics are collected. Names follow the Prometheus conventions, e.g.
+ * realestate_sessions_created_total.
+ *
+ * @author Zhengxu
+ */
+public final class Metrics {
+
+    private static final Logger LOGGER = Logger.getLogger(Metrics.class.getName());
+
+    private static final ConcurrentMap<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, LongSupplier> GAUGES = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Get or create a counter
+     * @param name Metric name
+     * @return Counter to increment
+     */
+    public static LongAdder counter(String name) {
+        return COUNTERS.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    /**
+     * Register a gauge, replacing any gauge of the same name
+     * @param name Metric name
+     * @param value Reads the current value
+     */
+    public static void gauge(String name, LongSupplier value) {
+        GAUGES.put(name, value);
+    }
+
+    /**
+     * Read every counter and gauge
+     * @return Current values by metric name, in name order
+     */
+    public static Map<String, Long> snapshot() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> counter : COUNTERS.entrySet()) {
+            values.put(counter.getKey(), counter.getValue().sum());
+        }
+        for (Map.Entry<String, LongSupplier> gauge : GAUGES.entrySet()) {
+            try {
+                values.put(gauge.getKey(), gauge.getValue().getAsLong());
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Error reading gauge " + gauge.getKey(), e);
+            }
+        }
+        return Collections.unmodifiableMap(values);
+    }
+}
@@ -0,0 +1,503 @@
+package realestatemanagement.ejb;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Application wide in-memory trigram index for substring search over
+ * property managers (first name, last name, email) and users (first name,
+ * last name), replacing LIKE '%term%' scans.
+ *
+ * Every indexed text is broken into its overlapping three character
+ * sequences; each trigram has a sorted posting list of the slots containing
+ * it. A search intersects the posting lists of the term's trigrams, starting
+ * from the shortest, checks the few remaining candidates for the actual
+ * substring, and ranks them: exact field matches first, then prefix matches,
+ * then matches at the start of a word, then anywhere; ties by last name,
+ * first name and ID. Terms shorter than three characters are matched by a
+ * scan of the in-memory texts. Only the IDs of the top results are returned;
+ * the caller hydrates those from JPA.
+ *
+ * The index is built at startup, rebuilt nightly to repair any drift, and
+ * updated by PropertyManagerEJB and UserEJB after each committed create,
+ * update or delete.
+ *
+ * @author Zhengxu
+ */
+@Singleton
+@Startup
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class NameSearchIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(NameSearchIndex.class.getName());
+
+    /** Rows read per query while building the index */
+    private static final int LOAD_CHUNK_SIZE = 5000;
+
+    private static final long[] NO_IDS = new long[0];
+
+    /**
+     * What is indexed
+     */
+    public enum Kind {
+        /** Property managers: first name, last name, email */
+        MANAGER,
+        /** Users: first name, last name */
+        USER
+    }
+
+    /** Field positions within an indexed document */
+    static final int FIRST_NAME = 0;
+    static final int LAST_NAME = 1;
+    static final int EMAIL = 2;
+
+    @PersistenceContext(unitName = "RealEstateManagementPU")
+    private EntityManager em;
+
+    // writes are puts and removes by ID, so replaying one the load already saw changes nothing
+    private final RebuildableState<TrigramIndex[]> state =
+            new RebuildableState<>(LOGGER, "name search index", newData());
+
+    @PostConstruct
+    public void init() {
+        rebuild();
+    }
+
+    private static TrigramIndex[] newData() {
+        return new TrigramIndex[]{new TrigramIndex(), new TrigramIndex()};
+    }
+
+    /**
+     * Rebuild the whole index from the database. The current index keeps
+     * serving searches until the new one is complete.
+     */
+    @Schedule(hour = "3", minute = "50", persistent = false)
+    public void rebuild() {
+        long start = System.nanoTime();
+        TrigramIndex[] fresh = state.rebuild(() -> {
+            TrigramIndex[] loaded = newData();
+            loadManagers(loaded[Kind.MANAGER.ordinal()]);
+            loadUsers(loaded[Kind.USER.ordinal()]);
+            return loaded;
+        });
+        if (fresh != null) {
+            LOGGER.log(Level.INFO, "Built name search index with {0} managers and {1} users in {2} ms",
+                      new Object[]{fresh[Kind.MANAGER.ordinal()].size(), fresh[Kind.USER.ordinal()].size(),
+                          (System.nanoTime() - start) / 1_000_000});
+        }
+    }
+
+    /**
+     * @return true once the index has been built and can answer searches
+     */
+    public boolean isReady() {
+        return state.isReady();
+    }
+
+    /**
+     * Add a property manager, or replace it if it is already indexed
+     * @param id Manager ID
+     * @param firstName First name
+     * @param lastName Last name
+     * @param email Email address, may be null
+     */
+    public void putManager(long id, String firstName, String lastName, String email) {
+        String[] fields = {normalize(firstName), normalize(lastName), normalize(email)};
+        state.write(d -> d[Kind.MANAGER.ordinal()].put(id, fields));
+    }
+
+    /**
+     * Add a user, or replace it if it is already indexed
+     * @param id User ID
+     * @param firstName First name
+     * @param lastName Last name
+     */
+    public void putUser(long id, String firstName, String lastName) {
+        String[] fields = {normalize(firstName), normalize(lastName)};
+        state.write(d -> d[Kind.USER.ordinal()].put(id, fields));
+    }
+
+    /**
+     * Remove a manager or user
+     * @param kind What the ID refers to
+     * @param id Manager or user ID
+     */
+    public void remove(Kind kind, long id) {
+        state.write(d -> d[kind.ordinal()].remove(id));
+    }
+
+    /**
+     * Find the managers whose first name, last name or email contains a term
+     * @param term Search term, case insensitive
+     * @param limit Maximum number of IDs to return
+     * @return Manager IDs, best match first
+     */
+    public long[] searchManagers(String term, int limit) {
+        String t = normalize(term);
+        if (t == null) {
+            return NO_IDS;
+        }
+        return search(Kind.MANAGER, new String[]{t}, new int[]{(1 << FIRST_NAME) | (1 << LAST_NAME) | (1 << EMAIL)}, limit);
+    }
+
+    /**
+     * Find the users whose first name contains one term and whose last name
+     * contains another
+     * @param firstName First name term, or null for any
+     * @param lastName Last name term, or null for any
+     * @param limit Maximum number of IDs to return
+     * @return User IDs, best match first
+     */
+    public long[] searchUsers(String firstName, String lastName, int limit) {
+        String first = normalize(firstName);
+        String last = normalize(lastName);
+        if (first == null && last == null) {
+            return NO_IDS;
+        }
+        if (first == null) {
+            return search(Kind.USER, new String[]{last}, new int[]{1 << LAST_NAME}, limit);
+        }
+        if (last == null) {
+            return search(Kind.USER, new String[]{first}, new int[]{1 << FIRST_NAME}, limit);
+        }
+        return search(Kind.USER, new String[]{first, last}, new int[]{1 << FIRST_NAME, 1 << LAST_NAME}, limit);
+    }
+
+    private long[] search(Kind kind, String[] terms, int[] fieldMasks, int limit) {
+        return state.read(d -> d[kind.ordinal()].search(terms, fieldMasks, Math.max(1, limit)));
+    }
+
+    private void loadManagers(TrigramIndex target) {
+        long lastId = Long.MIN_VALUE;
+        while (true) {
+            List<Object[]> rows = em.createQuery(
+                    "SELECT pm.id, pm.firstName, pm.lastName, pm.email "
+                    + "FROM PropertyManager pm WHERE pm.id > :lastId ORDER BY pm.id", Object[].class)
+                    .setParameter("lastId", lastId)
+                    .setMaxResults(LOAD_CHUNK_SIZE)
+                    .getResultList();
+            for (Object[] row : rows) {
+                lastId = (Long) row[0];
+                target.put(lastId, new String[]{
+                    normalize((String) row[1]), normalize((String) row[2]), normalize((String) row[3])});
+            }
+            em.clear();
+            if (rows.size() < LOAD_CHUNK_SIZE) {
+                return;
+            }
+        }
+    }
+
+    private void loadUsers(TrigramIndex target) {
+        int lastId = Integer.MIN_VALUE;
+        while (true) {
+            List<Object[]> rows = em.createQuery(
+                    "SELECT u.id, u.firstname, u.lastname FROM User u WHERE u.id > :lastId ORDER BY u.id", Object[].class)
+                    .setParameter("lastId", lastId)
+                    .setMaxResults(LOAD_CHUNK_SIZE)
+                    .getResultList();
+            for (Object[] row : rows) {
+                lastId = (Integer) row[0];
+                target.put(lastId, new String[]{normalize((String) row[1]), normalize((String) row[2])});
+            }
+            em.clear();
+            if (rows.size() < LOAD_CHUNK_SIZE) {
+                return;
+            }
+        }
+    }
+
+    private static String normalize(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed.toLowerCase(Locale.ROOT);
+    }
+
+    // ==================== INDEX STRUCTURES ====================
+
+    /**
+     * Trigram postings over one kind of document. Not thread safe;
+     * NameSearchIndex guards it with the lock of its state.
+     */
+    private static final class TrigramIndex {
+
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private final Map<Long, Integer> slotById = new HashMap<>();
+        private final BitSet freeSlots = new BitSet();
+        private int slotCount;
+
+        // columns indexed by slot; fields are null for a free slot
+        private long[] ids = new long[INITIAL_CAPACITY];
+        private String[][] fields = new String[INITIAL_CAPACITY][];
+
+        // trigram -> slots containing it, sorted ascending
+        private final Map<Long, Postings> postings = new HashMap<>();
+
+        int size() {
+            return slotById.size();
+        }
+
+        void put(long id, String[] documentFields) {
+            Integer existing = slotById.get(id);
+            int slot;
+            if (existing != null) {
+                unlink(existing);
+                slot = existing;
+            } else {
+                slot = allocateSlot();
+            }
+            ids[slot] = id;
+            fields[slot] = documentFields;
+            for (long trigram : trigrams(documentFields)) {
+                postings.computeIfAbsent(trigram, t -> new Postings()).add(slot);
+            }
+            slotById.put(id, slot);
+        }
+
+        void remove(long id) {
+            Integer slot = slotById.remove(id);
+            if (slot != null) {
+                unlink(slot);
+                fields[slot] = null;
+                freeSlots.set(slot);
+            }
+        }
+
+        private void unlink(int slot) {
+            for (long trigram : trigrams(fields[slot])) {
+                Postings list = postings.get(trigram);
+                if (list != null && list.remove(slot) && list.size == 0) {
+                    postings.remove(trigram);
+                }
+            }
+        }
+
+        private int allocateSlot() {
+            int slot = freeSlots.nextSetBit(0);
+            if (slot >= 0) {
+                freeSlots.clear(slot);
+                return slot;
+            }
+            slot = slotCount++;
+            if (slot == ids.length) {
+                int capacity = ids.length * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                fields = Arrays.copyOf(fields, capacity);
+            }
+            return slot;
+        }
+
+        // distinct trigrams of all fields of a document
+        private static long[] trigrams(String[] documentFields) {
+            long[] result = new long[16];
+            int count = 0;
+            for (String field : documentFields) {
+                if (field == null) {
+                    continue;
+                }
+                for (int i = 0; i + 3 <= field.length(); i++) {
+                    if (count == result.length) {
+                        result = Arrays.copyOf(result, count * 2);
+                    }
+                    result[count++] = trigram(field, i);
+                }
+            }
+            long[] sorted = Arrays.copyOf(result, count);
+            Arrays.sort(sorted);
+            int distinct = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[distinct++] = sorted[i];
+                }
+            }
+            return Arrays.copyOf(sorted, distinct);
+        }
+
+        private static long trigram(String text, int at) {
+            return ((long) text.charAt(at) << 32) | ((long) text.charAt(at + 1) << 16) | text.charAt(at + 2);
+        }
+
+        long[] search(String[] terms, int[] fieldMasks, int limit) {
+            int[] candidates = null;
+            for (String term : terms) {
+                if (term.length() < 3) {
+                    continue;
+                }
+                candidates = intersect(candidates, term);
+                if (candidates.length == 0) {
+                    return NO_IDS;
+                }
+            }
+
+            // max-heap on result order, so the head is the worst match kept so far
+            Comparator<Match> order = Comparator.<Match>comparingInt(m -> -m.score)
+                    .thenComparing(m -> sortName(m.slot))
+                    .thenComparingLong(m -> ids[m.slot]);
+            PriorityQueue<Match> heap = new PriorityQueue<>(Math.min(limit, 1024) + 1, order.reversed());
+            if (candidates != null) {
+                for (int slot : candidates) {
+                    offer(heap, slot, terms, fieldMasks, limit);
+                }
+            } else {
+                // every term is too short for trigrams: scan the texts
+                for (int slot = 0; slot < slotCount; slot++) {
+                    if (fields[slot] != null) {
+                        offer(heap, slot, terms, fieldMasks, limit);
+                    }
+                }
+            }
+            long[] result = new long[heap.size()];
+            for (int i = result.length - 1; i >= 0; i--) {
+                result[i] = ids[heap.poll().slot];
+            }
+            return result;
+        }
+
+        // slots whose trigrams include all of the term's, intersected with the current candidates
+        private int[] intersect(int[] candidates, String term) {
+            long[] grams = trigrams(new String[]{term});
+            Postings[] lists = new Postings[grams.length];
+            for (int i = 0; i < grams.length; i++) {
+                lists[i] = postings.get(grams[i]);
+                if (lists[i] == null) {
+                    return new int[0];
+                }
+            }
+            Arrays.sort(lists, Comparator.comparingInt(p -> p.size));
+            int[] result = candidates != null
+                    ? Postings.intersect(candidates, candidates.length, lists[0].slots, lists[0].size)
+                    : Arrays.copyOf(lists[0].slots, lists[0].size);
+            for (int i = 1; i < lists.length && result.length > 0; i++) {
+                result = Postings.intersect(result, result.length, lists[i].slots, lists[i].size);
+            }
+            return result;
+        }
+
+        private void offer(PriorityQueue<Match> heap, int slot, String[] terms, int[] fieldMasks, int limit) {
+            int score = 0;
+            for (int t = 0; t < terms.length; t++) {
+                int best = 0;
+                for (int f = 0; f < fields[slot].length; f++) {
+                    if ((fieldMasks[t] & (1 << f)) != 0) {
+                        best = Math.max(best, score(fields[slot][f], terms[t]));
+                    }
+                }
+                if (best == 0) {
+                    // trigrams matched, but not as one substring of the right field
+                    return;
+                }
+                score += best;
+            }
+            heap.add(new Match(slot, score));
+            if (heap.size() > limit) {
+                heap.poll();
+            }
+        }
+
+        private static int score(String field, String term) {
+            if (field == null) {
+                return 0;
+            }
+            int at = field.indexOf(term);
+            if (at < 0) {
+                return 0;
+            }
+            if (at == 0) {
+                return field.length() == term.length() ? 4 : 3;
+            }
+            // start of a word, e.g. the surname in "mary ann" or the domain of an email
+            return Character.isLetterOrDigit(field.charAt(at - 1)) ? 1 : 2;
+        }
+
+        private String sortName(int slot) {
+            String[] f = fields[slot];
+            String last = f.length > LAST_NAME && f[LAST_NAME] != null ? f[LAST_NAME] : "";
+            String first = f[FIRST_NAME] != null ? f[FIRST_NAME] : "";
+            return last + '\u0000' + first;
+        }
+    }
+
+    private static final class Match {
+
+        final int slot;
+        final int score;
+
+        Match(int slot, int score) {
+            this.slot = slot;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Sorted list of slots, as a growable primitive array
+     */
+    private static final class Postings {
+
+        int[] slots = new int[4];
+        int size;
+
+        void add(int slot) {
+            int at = Arrays.binarySearch(slots, 0, size, slot);
+            if (at >= 0) {
+                return;
+            }
+            at = -at - 1;
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            System.arraycopy(slots, at, slots, at + 1, size - at);
+            slots[at] = slot;
+            size++;
+        }
+
+        boolean remove(int slot) {
+            int at = Arrays.binarySearch(slots, 0, size, slot);
+            if (at < 0) {
+                return false;
+            }
+            System.arraycopy(slots, at + 1, slots, at, size - at - 1);
+            size--;
+            return true;
+        }
+
+        static int[] intersect(int[] a, int aSize, int[] b, int bSize) {
+            int[] result = new int[Math.min(aSize, bSize)];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < aSize && j < bSize) {
+                if (a[i] < b[j]) {
+                    i++;
+                } else if (a[i] > b[j]) {
+                    j++;
+                } else {
+                    result[count++] = a[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(result, count);
+        }
+    }
+}
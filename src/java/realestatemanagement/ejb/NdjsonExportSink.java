@@ -0,0 +1,96 @@
+package realestatemanagement.ejb;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+
+/**
+ * Writes an export as newline delimited JSON, one object per row keyed by
+ * the header column names
+ *
+ * @author Zhengxu
+ */
+public class NdjsonExportSink implements ExportSink {
+
+    private final Writer out;
+    private String[] keys;
+
+    public NdjsonExportSink(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void header(String... columns) {
+        keys = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            keys[i] = quote(columns[i]); // encoded once, reused for every row
+        }
+    }
+
+    @Override
+    public void row(Object... values) throws IOException {
+        if (keys == null || keys.length != values.length) {
+            throw new IllegalStateException("Row does not match the export header");
+        }
+        out.write('{');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(keys[i]);
+            out.write(':');
+            Object value = values[i];
+            if (value == null) {
+                out.write("null");
+            } else if (value instanceof Number || value instanceof Boolean) {
+                out.write(value.toString());
+            } else if (value instanceof Date) {
+                out.write(quote(ExportFormat.timestamp((Date) value)));
+            } else {
+                out.write(quote(value.toString()));
+            }
+        }
+        out.write("}\n");
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Encode text as a JSON string literal
+     * @param text Text to encode
+     * @return Quoted and escaped text
+     */
+    public static String quote(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,95 @@
+package realestatemanagement.ejb;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque cursor identifying the last row of a listing page.
+ * The next page is fetched by seeking past (sortValue, lastId) instead of
+ * skipping rows with an OFFSET, so every page costs the same regardless of
+ * how deep into the table it is.
+ *
+ * @author Zhengxu
+ */
+public final class PageToken implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ListingSort sort;
+    private final long sortValue;
+    private final long lastId;
+
+    public PageToken(ListingSort sort, long sortValue, long lastId) {
+        if (sort == null) {
+            throw new IllegalArgumentException("Page token sort cannot be null");
+        }
+        this.sort = sort;
+        this.sortValue = sortValue;
+        this.lastId = lastId;
+    }
+
+    /**
+     * Encode the token as a URL safe string
+     * @return Encoded token
+     */
+    public String encode() {
+        String raw = sort.getParameter() + ":" + sortValue + ":" + lastId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Decode a token previously produced by {@link #encode()}
+     * @param encoded Encoded token, may be null or empty for the first page
+     * @param sort Sort order the caller is paging with
+     * @return Decoded token, or null for the first page
+     * @throws IllegalArgumentException if the token is malformed or was issued for another sort order
+     */
+    public static PageToken decode(String encoded, ListingSort sort) {
+        if (encoded == null || encoded.trim().isEmpty()) {
+            return null;
+        }
+
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(encoded.trim()), StandardCharsets.US_ASCII).split(":");
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed page token", e);
+        }
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Malformed page token");
+        }
+
+        ListingSort tokenSort = ListingSort.fromParameter(parts[0]);
+        if (tokenSort != sort || !tokenSort.getParameter().equals(parts[0])) {
+            throw new IllegalArgumentException("Page token was issued for a different sort order");
+        }
+
+        try {
+            return new PageToken(tokenSort, Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed page token", e);
+        }
+    }
+
+    /**
+     * @return the sort
+     */
+    public ListingSort getSort() {
+        return sort;
+    }
+
+    /**
+     * @return the sortValue
+     */
+    public long getSortValue() {
+        return sortValue;
+    }
+
+    /**
+     * @return the lastId
+     */
+    public long getLastId() {
+        return lastId;
+    }
+}
@@ -0,0 +1,247 @@
+package realestatemanagement.ejb;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Singleton;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Adaptive password hashing with PBKDF2-HMAC-SHA512 and a random salt per
+ * password.
+ *
+ * Hashes are stored as $pbkdf2-sha512$i=ITERATIONS$SALT$HASH with base64
+ * salt and hash, so the cost can be raised without invalidating existing
+ * passwords: a hash made with fewer iterations than the current setting,
+ * or a legacy unsalted SHA-512 hex digest, still verifies and is reported
+ * as needing a rehash.
+ *
+ * Hashing is slow on purpose, so it runs on a small dedicated pool rather
+ * than on the request threads. At most one hash per pool thread runs at a
+ * time; when the queue is full further requests are refused at once
+ * instead of piling up behind a login storm.
+ *
+ * Settings, read as system properties at startup:
+ * realestate.password.iterations (default 210000),
+ * realestate.password.threads (default: number of cores),
+ * realestate.password.queue (default 64) and
+ * realestate.password.timeout in milliseconds (default 10000).
+ *
+ * @author Zhengxu
+ */
+@Singleton
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class PasswordHasher {
+
+    private static final Logger LOGGER = Logger.getLogger(PasswordHasher.class.getName());
+
+    /**
+     * Outcome of checking a password against a stored hash
+     */
+    public enum Result {
+        /** The password does not match */
+        INVALID,
+        /** The password matches */
+        VALID,
+        /** The password matches, but the stored hash is legacy or weaker than the current setting */
+        VALID_NEEDS_REHASH
+    }
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA512";
+    private static final String PREFIX = "$pbkdf2-sha512$i=";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 512;
+    private static final int LEGACY_HEX_LENGTH = 128;
+
+    private static final Base64.Encoder ENCODER = Base64.getEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getDecoder();
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    private ThreadPoolExecutor executor;
+    private int iterations;
+    private long timeoutMillis;
+
+    @PostConstruct
+    public void init() {
+        iterations = setting("realestate.password.iterations", 210_000);
+        int threads = setting("realestate.password.threads", Runtime.getRuntime().availableProcessors());
+        int queue = setting("realestate.password.queue", 64);
+        timeoutMillis = setting("realestate.password.timeout", 10_000);
+
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queue), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+
+        // report what the configured cost means, to help size it against the login latency target
+        executor.execute(() -> {
+            long start = System.nanoTime();
+            pbkdf2("calibration".toCharArray(), new byte[SALT_BYTES], iterations);
+            long micros = (System.nanoTime() - start) / 1000;
+            LOGGER.log(Level.INFO, "Password hashing: {0,number,#} iterations take {1,number,#} ms, "
+                      + "about {2,number,#} logins per second per thread",
+                      new Object[]{iterations, micros / 1000, micros > 0 ? 1_000_000 / micros : 0});
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Hash a password with a new salt and the current cost
+     * @param password Plain text password
+     * @return Hash in the versioned storage format
+     * @throws IllegalStateException if the hashing pool is saturated or too slow
+     */
+    public String hash(String password) {
+        if (password == null) {
+            throw new IllegalArgumentException("Password cannot be null");
+        }
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        int cost = iterations;
+        byte[] hash = run(() -> pbkdf2(password.toCharArray(), salt, cost));
+        return PREFIX + cost + "$" + ENCODER.encodeToString(salt) + "$" + ENCODER.encodeToString(hash);
+    }
+
+    /**
+     * Check a password against a stored hash
+     * @param password Plain text password
+     * @param stored Stored hash, in the current or the legacy format
+     * @return Whether the password matches and whether the hash should be replaced
+     * @throws IllegalStateException if the hashing pool is saturated or too slow
+     */
+    public Result verify(String password, String stored) {
+        if (password == null || stored == null) {
+            return Result.INVALID;
+        }
+        if (stored.length() == LEGACY_HEX_LENGTH && !stored.startsWith("$")) {
+            return MessageDigest.isEqual(legacyHash(password).getBytes(), stored.toLowerCase().getBytes())
+                    ? Result.VALID_NEEDS_REHASH : Result.INVALID;
+        }
+
+        // $pbkdf2-sha512$i=ITERATIONS$SALT$HASH
+        if (!stored.startsWith(PREFIX)) {
+            LOGGER.log(Level.WARNING, "Unrecognised password hash format");
+            return Result.INVALID;
+        }
+        String[] parts = stored.substring(PREFIX.length()).split("\\$");
+        int cost;
+        byte[] salt;
+        byte[] expected;
+        try {
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Expected iterations, salt and hash");
+            }
+            cost = Integer.parseInt(parts[0]);
+            salt = DECODER.decode(parts[1]);
+            expected = DECODER.decode(parts[2]);
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, "Malformed password hash: {0}", e.getMessage());
+            return Result.INVALID;
+        }
+
+        byte[] actual = run(() -> pbkdf2(password.toCharArray(), salt, cost));
+        if (!MessageDigest.isEqual(expected, actual)) {
+            return Result.INVALID;
+        }
+        return cost < iterations ? Result.VALID_NEEDS_REHASH : Result.VALID;
+    }
+
+    /**
+     * @return the PBKDF2 iteration count used for new hashes
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    private byte[] run(Callable<byte[]> task) {
+        Future<byte[]> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException("Too many password checks in progress, please try again shortly");
+        }
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new IllegalStateException("Password check timed out, please try again shortly");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while checking password", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    private static byte[] pbkdf2(char[] password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new UnsupportedOperationException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * The unsalted SHA-512 hex digest earlier releases stored, over the
+     * password bytes in the platform charset exactly as they were hashed then
+     */
+    private static String legacyHash(String password) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-512").digest(password.getBytes());
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new UnsupportedOperationException(e);
+        }
+    }
+
+    private static int setting(String name, int defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        LOGGER.log(Level.WARNING, "Ignoring invalid {0}={1}, using {2}", new Object[]{name, value, defaultValue});
+        return defaultValue;
+    }
+}
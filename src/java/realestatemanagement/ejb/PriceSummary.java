@@ -0,0 +1,77 @@
+package realestatemanagement.ejb;
+
+import java.io.Serializable;
+
+/**
+ * Immutable price statistics of a group of listings, e.g. all rent listings
+ * or the sale listings of one city. Prices are weekly rents for rent listings
+ * and sale prices for sale listings.
+ *
+ * @author Zhengxu
+ */
+public final class PriceSummary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Summary of an empty group */
+    public static final PriceSummary EMPTY = new PriceSummary(null, 0, 0, 0, 0, 0);
+
+    private final String label;
+    private final long count;
+    private final long sum;
+    private final long min;
+    private final long max;
+    private final long median;
+
+    public PriceSummary(String label, long count, long sum, long min, long max, long median) {
+        this.label = label;
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+        this.median = median;
+    }
+
+    /**
+     * @return the group name as first seen, e.g. the city as entered, or null for a whole listing kind
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * @return the lowest price, or 0 for an empty group
+     */
+    public long getMin() {
+        return min;
+    }
+
+    /**
+     * @return the highest price, or 0 for an empty group
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return the median price estimated by the quantile sketch, within 1% of the true median
+     */
+    public long getMedian() {
+        return median;
+    }
+
+    /**
+     * @return the mean price, or 0 for an empty group
+     */
+    public double getAverage() {
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+}
@@ -1,5 +1,7 @@
 package realestatemanagement.ejb;
 
+import jakarta.annotation.Resource;
+import jakarta.ejb.EJB;
 import jakarta.ejb.LocalBean;
 import jakarta.ejb.Stateless;
 import jakarta.ejb.TransactionAttribute;
@@ -7,12 +9,25 @@ import jakarta.ejb.TransactionAttributeType;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import realestatemanagement.model.Address;
 import realestatemanagement.model.Property;
 import realestatemanagement.model.RentProperty;
 import realestatemanagement.model.SaleProperty;
@@ -29,10 +44,29 @@ import realestatemanagement.model.SaleProperty;
 public class PropertyEJB {
 
     private static final Logger LOGGER = Logger.getLogger(PropertyEJB.class.getName());
+
+    /** Upper bound on the page size accepted by the paginated listing queries */
+    public static final int MAX_PAGE_SIZE = 100;
+
+    /** EclipseLink query hints used by {@link FetchProfile#BATCH_ADDRESS} */
+    private static final String BATCH_HINT = "eclipselink.batch";
+    private static final String BATCH_TYPE_HINT = "eclipselink.batch.type";
     
     @PersistenceContext(unitName = "RealEstateManagementPU")
     private EntityManager em;
 
+    @EJB
+    private ListingIndex listingIndex;
+
+    @EJB
+    private MarketStatistics marketStatistics;
+
+    @EJB
+    private AutocompleteIndex autocompleteIndex;
+
+    @Resource
+    private TransactionSynchronizationRegistry txRegistry;
+
     // ==================== SALE PROPERTY OPERATIONS ====================
 
     /**
@@ -51,6 +85,7 @@ public class PropertyEJB {
         try {
             em.persist(property);
             em.flush(); // Force immediate persistence to get generated ID
+            indexAfterCommit(property);
             
             LOGGER.log(Level.INFO, "Created new sale property with ID: {0}, Price: {1}", 
                       new Object[]{property.getId(), property.getSalePrice()});
@@ -80,8 +115,10 @@ public class PropertyEJB {
             if (existingProperty == null) {
                 throw new IllegalArgumentException("Sale property with ID " + property.getId() + " not found");
             }
+            ListingEntry before = ListingEntry.of(existingProperty);
             
             SaleProperty updatedProperty = em.merge(property);
+            indexAfterCommit(before, updatedProperty);
             LOGGER.log(Level.INFO, "Updated sale property with ID: {0}", property.getId());
             return updatedProperty;
         } catch (Exception e) {
@@ -103,6 +140,7 @@ public class PropertyEJB {
         try {
             SaleProperty property = findSalePropertyById(id);
             if (property != null) {
+                unindexAfterCommit(property);
                 em.remove(property);
                 LOGGER.log(Level.INFO, "Deleted sale property with ID: {0}", id);
             } else {
@@ -144,8 +182,21 @@ public class PropertyEJB {
      */
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public List<SaleProperty> findAllSaleProperties() {
+        return findAllSaleProperties(FetchProfile.DEFAULT);
+    }
+
+    /**
+     * Get all sale properties, loading their addresses as the profile says
+     * @param profile How to load the address of each property
+     * @return List of all sale properties
+     */
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public List<SaleProperty> findAllSaleProperties(FetchProfile profile) {
         try {
-            TypedQuery<SaleProperty> query = em.createNamedQuery("findAllSalePropertys", SaleProperty.class);
+            TypedQuery<SaleProperty> query = profile == FetchProfile.JOIN_ADDRESS
+                    ? em.createQuery("SELECT sp FROM SaleProperty sp" + fetchClause("sp", profile), SaleProperty.class)
+                    : em.createNamedQuery("findAllSalePropertys", SaleProperty.class);
+            applyFetchHints(query, "sp", profile);
             List<SaleProperty> properties = query.getResultList();
             LOGGER.log(Level.INFO, "Retrieved {0} sale properties", properties.size());
             return properties;
@@ -155,102 +206,107 @@ public class PropertyEJB {
         }
     }
 
+    /**
+     * Get one page of sale properties using keyset pagination
+     * @param after Token of the last row of the previous page, or null for the first page
+     * @param pageSize Maximum number of properties to return
+     * @param sort Sort order to page through
+     * @return Page of sale properties with the token of the following page
+     */
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public ListingPage<SaleProperty> findSalePropertiesPage(PageToken after, int pageSize, ListingSort sort) {
+        return findSalePropertiesPage(after, pageSize, sort, FetchProfile.DEFAULT);
+    }
+
+    /**
+     * Get one page of sale properties using keyset pagination
+     * @param after Token of the last row of the previous page, or null for the first page
+     * @param pageSize Maximum number of properties to return
+     * @param sort Sort order to page through
+     * @param profile How to load the address of each property
+     * @return Page of sale properties with the token of the following page
+     */
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public ListingPage<SaleProperty> findSalePropertiesPage(PageToken after, int pageSize, ListingSort sort,
+                                                              FetchProfile profile) {
+        return findListingPage(SaleProperty.class, "sp", "salePrice", after, pageSize, sort, profile);
+    }
+
     /**
      * Search sale properties by price range
      * @param minPrice Minimum price
      * @param maxPrice Maximum price
-     * @return List of sale properties within price range
+     * @return Every sale property within the price range, cheapest first
+     * @deprecated use {@link #searchSaleProperties(PropertySearchCriteria)}
      */
+    @Deprecated
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public List<SaleProperty> findSalePropertiesByPriceRange(Long minPrice, Long maxPrice) {
-        if (minPrice != null && maxPrice != null && minPrice > maxPrice) {
-            throw new IllegalArgumentException("Minimum price cannot be greater than maximum price");
-        }
-        
-        try {
-            StringBuilder queryStr = new StringBuilder("SELECT sp FROM SaleProperty sp WHERE 1=1");
-            
-            if (minPrice != null) {
-                queryStr.append(" AND sp.salePrice >= :minPrice");
-            }
-            if (maxPrice != null) {
-                queryStr.append(" AND sp.salePrice <= :maxPrice");
-            }
-            
-            queryStr.append(" ORDER BY sp.salePrice ASC");
-            
-            TypedQuery<SaleProperty> query = em.createQuery(queryStr.toString(), SaleProperty.class);
-            
-            if (minPrice != null) {
-                query.setParameter("minPrice", minPrice);
-            }
-            if (maxPrice != null) {
-                query.setParameter("maxPrice", maxPrice);
-            }
-            
-            List<SaleProperty> results = query.getResultList();
-            LOGGER.log(Level.INFO, "Found {0} sale properties in price range {1}-{2}", 
-                      new Object[]{results.size(), minPrice, maxPrice});
-            return results;
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Error searching sale properties by price range", e);
-            return new ArrayList<>();
-        }
+        Map<String, Object> params = new HashMap<>();
+        return findAllListings(SaleProperty.class, "sp", "salePrice",
+                priceRange("sp.salePrice", minPrice, maxPrice, params), params);
     }
 
     /**
      * Search sale properties by location (city)
      * @param city City name
-     * @return List of sale properties in the specified city
+     * @return Every sale property in the city, ignoring case, cheapest first
+     * @deprecated use {@link #searchSaleProperties(PropertySearchCriteria)}
      */
+    @Deprecated
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public List<SaleProperty> findSalePropertiesByCity(String city) {
         if (city == null || city.trim().isEmpty()) {
             LOGGER.log(Level.WARNING, "Search attempted with empty city");
             return new ArrayList<>();
         }
-        
-        try {
-            TypedQuery<SaleProperty> query = em.createQuery(
-                "SELECT sp FROM SaleProperty sp JOIN sp.address a WHERE LOWER(a.city) = LOWER(:city) ORDER BY sp.salePrice ASC", 
-                SaleProperty.class);
-            query.setParameter("city", city.trim());
-            
-            List<SaleProperty> results = query.getResultList();
-            LOGGER.log(Level.INFO, "Found {0} sale properties in city: {1}", 
-                      new Object[]{results.size(), city});
-            return results;
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Error searching sale properties by city: " + city, e);
-            return new ArrayList<>();
-        }
+
+        Map<String, Object> params = new HashMap<>();
+        params.put("city", city.trim());
+        return findAllListings(SaleProperty.class, "sp", "salePrice",
+                " JOIN sp.address a WHERE LOWER(a.city) = LOWER(:city)", params);
     }
 
     /**
      * Search sale properties by bedroom count
      * @param bedrooms Number of bedrooms
-     * @return List of sale properties with specified bedroom count
+     * @return Every sale property with the bedroom count, cheapest first
+     * @deprecated use {@link #searchSaleProperties(PropertySearchCriteria)}
      */
+    @Deprecated
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public List<SaleProperty> findSalePropertiesByBedrooms(int bedrooms) {
         if (bedrooms < 0) {
             throw new IllegalArgumentException("Number of bedrooms cannot be negative");
         }
-        
-        try {
-            TypedQuery<SaleProperty> query = em.createQuery(
-                "SELECT sp FROM SaleProperty sp WHERE sp.noOfBedrooms = :bedrooms ORDER BY sp.salePrice ASC", 
-                SaleProperty.class);
-            query.setParameter("bedrooms", bedrooms);
-            
-            List<SaleProperty> results = query.getResultList();
-            LOGGER.log(Level.INFO, "Found {0} sale properties with {1} bedrooms", 
-                      new Object[]{results.size(), bedrooms});
-            return results;
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Error searching sale properties by bedrooms: " + bedrooms, e);
-            return new ArrayList<>();
-        }
+
+        Map<String, Object> params = new HashMap<>();
+        params.put("bedrooms", bedrooms);
+        return findAllListings(SaleProperty.class, "sp", "salePrice",
+                " WHERE sp.noOfBedrooms = :bedrooms", params);
+    }
+
+    /**
+     * Search sale properties matching every criterion that is set.
+     * Answered from the in-memory listing index once it is built, otherwise
+     * all filtering, ordering and the result limit are evaluated by the database.
+     * @param criteria Search criteria
+     * @return Matching sale properties, at most criteria.getLimit()
+     */
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public List<SaleProperty> searchSaleProperties(PropertySearchCriteria criteria) {
+        return searchSaleProperties(criteria, FetchProfile.DEFAULT);
+    }
+
+    /**
+     * Search sale properties matching every criterion that is set
+     * @param criteria Search criteria
+     * @param profile How to load the address of each result
+     * @return Matching sale properties, at most criteria.getLimit()
+     */
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public List<SaleProperty> searchSaleProperties(PropertySearchCriteria criteria, FetchProfile profile) {
+        return searchListings(SaleProperty.class, "salePrice", criteria, profile);
     }
 
     // ==================== RENT PROPERTY OPERATIONS ====================
@@ -271,6 +327,7 @@ public class PropertyEJB {
         try {
             em.persist(property);
             em.flush(); // Force immediate persistence to get generated ID
+            indexAfterCommit(property);
             
             LOGGER.log(Level.INFO, "Created new rent property with ID: {0}, Weekly Rent: {1}", 
                       new Object[]{property.getId(), property.getWeeklyRent()});
@@ -300,8 +357,10 @@ public class PropertyEJB {
             if (existingProperty == null) {
                 throw new IllegalArgumentException("Rent property with ID " + property.getId() + " not found");
             }
+            ListingEntry before = ListingEntry.of(existingProperty);
             
             RentProperty updatedProperty = em.merge(property);
+            indexAfterCommit(before, updatedProperty);
             LOGGER.log(Level.INFO, "Updated rent property with ID: {0}", property.getId());
             return updatedProperty;
         } catch (Exception e) {
@@ -323,6 +382,7 @@ public class PropertyEJB {
         try {
             RentProperty property = findRentPropertyById(id);
             if (property != null) {
+                unindexAfterCommit(property);
                 em.remove(property);
                 LOGGER.log(Level.INFO, "Deleted rent property with ID: {0}", id);
             } else {
@@ -364,8 +424,21 @@ public class PropertyEJB {
      */
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public List<RentProperty> findAllRentProperties() {
+        return findAllRentProperties(FetchProfile.DEFAULT);
+    }
+
+    /**
+     * Get all rent properties, loading their addresses as the profile says
+     * @param profile How to load the address of each property
+     * @return List of all rent properties
+     */
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public List<RentProperty> findAllRentProperties(FetchProfile profile) {
         try {
-            TypedQuery<RentProperty> query = em.createNamedQuery("findAllRentPropertys", RentProperty.class);
+            TypedQuery<RentProperty> query = profile == FetchProfile.JOIN_ADDRESS
+                    ? em.createQuery("SELECT rp FROM RentProperty rp" + fetchClause("rp", profile), RentProperty.class)
+                    : em.createNamedQuery("findAllRentPropertys", RentProperty.class);
+            applyFetchHints(query, "rp", profile);
             List<RentProperty> properties = query.getResultList();
             LOGGER.log(Level.INFO, "Retrieved {0} rent properties", properties.size());
             return properties;
@@ -375,98 +448,103 @@ public class PropertyEJB {
         }
     }
 
+    /**
+     * Get one page of rent properties using keyset pagination
+     * @param after Token of the last row of the previous page, or null for the first page
+     * @param pageSize Maximum number of properties to return
+     * @param sort Sort order to page through
+     * @return Page of rent properties with the token of the following page
+     */
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public ListingPage<RentProperty> findRentPropertiesPage(PageToken after, int pageSize, ListingSort sort) {
+        return findRentPropertiesPage(after, pageSize, sort, FetchProfile.DEFAULT);
+    }
+
+    /**
+     * Get one page of rent properties using keyset pagination
+     * @param after Token of the last row of the previous page, or null for the first page
+     * @param pageSize Maximum number of properties to return
+     * @param sort Sort order to page through
+     * @param profile How to load the address of each property
+     * @return Page of rent properties with the token of the following page
+     */
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public ListingPage<RentProperty> findRentPropertiesPage(PageToken after, int pageSize, ListingSort sort,
+                                                              FetchProfile profile) {
+        return findListingPage(RentProperty.class, "rp", "weeklyRent", after, pageSize, sort, profile);
+    }
+
     /**
      * Search rent properties by weekly rent range
      * @param minRent Minimum weekly rent
      * @param maxRent Maximum weekly rent
-     * @return List of rent properties within rent range
+     * @return Every rent property within the rent range, cheapest first
+     * @deprecated use {@link #searchRentProperties(PropertySearchCriteria)}
      */
+    @Deprecated
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public List<RentProperty> findRentPropertiesByRentRange(Long minRent, Long maxRent) {
-        if (minRent != null && maxRent != null && minRent > maxRent) {
-            throw new IllegalArgumentException("Minimum rent cannot be greater than maximum rent");
-        }
-        
-        try {
-            StringBuilder queryStr = new StringBuilder("SELECT rp FROM RentProperty rp WHERE 1=1");
-            
-            if (minRent != null) {
-                queryStr.append(" AND rp.weeklyRent >= :minRent");
-            }
-            if (maxRent != null) {
-                queryStr.append(" AND rp.weeklyRent <= :maxRent");
-            }
-            
-            queryStr.append(" ORDER BY rp.weeklyRent ASC");
-            
-            TypedQuery<RentProperty> query = em.createQuery(queryStr.toString(), RentProperty.class);
-            
-            if (minRent != null) {
-                query.setParameter("minRent", minRent);
-            }
-            if (maxRent != null) {
-                query.setParameter("maxRent", maxRent);
-            }
-            
-            List<RentProperty> results = query.getResultList();
-            LOGGER.log(Level.INFO, "Found {0} rent properties in rent range {1}-{2}", 
-                      new Object[]{results.size(), minRent, maxRent});
-            return results;
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Error searching rent properties by rent range", e);
-            return new ArrayList<>();
-        }
+        Map<String, Object> params = new HashMap<>();
+        return findAllListings(RentProperty.class, "rp", "weeklyRent",
+                priceRange("rp.weeklyRent", minRent, maxRent, params), params);
     }
 
     /**
      * Search rent properties by furnished status
      * @param isFurnished Furnished status
-     * @return List of rent properties with specified furnished status
+     * @return Every rent property with the furnished status, cheapest first
+     * @deprecated use {@link #searchRentProperties(PropertySearchCriteria)}
      */
+    @Deprecated
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public List<RentProperty> findRentPropertiesByFurnishedStatus(Boolean isFurnished) {
-        try {
-            TypedQuery<RentProperty> query = em.createQuery(
-                "SELECT rp FROM RentProperty rp WHERE rp.isFurnished = :isFurnished ORDER BY rp.weeklyRent ASC", 
-                RentProperty.class);
-            query.setParameter("isFurnished", isFurnished);
-            
-            List<RentProperty> results = query.getResultList();
-            LOGGER.log(Level.INFO, "Found {0} rent properties with furnished status: {1}", 
-                      new Object[]{results.size(), isFurnished});
-            return results;
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Error searching rent properties by furnished status: " + isFurnished, e);
-            return new ArrayList<>();
-        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("isFurnished", isFurnished);
+        return findAllListings(RentProperty.class, "rp", "weeklyRent",
+                " WHERE rp.isFurnished = :isFurnished", params);
     }
 
     /**
      * Search rent properties by location (city)
      * @param city City name
-     * @return List of rent properties in the specified city
+     * @return Every rent property in the city, ignoring case, cheapest first
+     * @deprecated use {@link #searchRentProperties(PropertySearchCriteria)}
      */
+    @Deprecated
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public List<RentProperty> findRentPropertiesByCity(String city) {
         if (city == null || city.trim().isEmpty()) {
             LOGGER.log(Level.WARNING, "Search attempted with empty city");
             return new ArrayList<>();
         }
-        
-        try {
-            TypedQuery<RentProperty> query = em.createQuery(
-                "SELECT rp FROM RentProperty rp JOIN rp.address a WHERE LOWER(a.city) = LOWER(:city) ORDER BY rp.weeklyRent ASC", 
-                RentProperty.class);
-            query.setParameter("city", city.trim());
-            
-            List<RentProperty> results = query.getResultList();
-            LOGGER.log(Level.INFO, "Found {0} rent properties in city: {1}", 
-                      new Object[]{results.size(), city});
-            return results;
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Error searching rent properties by city: " + city, e);
-            return new ArrayList<>();
-        }
+
+        Map<String, Object> params = new HashMap<>();
+        params.put("city", city.trim());
+        return findAllListings(RentProperty.class, "rp", "weeklyRent",
+                " JOIN rp.address a WHERE LOWER(a.city) = LOWER(:city)", params);
+    }
+
+    /**
+     * Search rent properties matching every criterion that is set.
+     * Answered from the in-memory listing index once it is built, otherwise
+     * all filtering, ordering and the result limit are evaluated by the database.
+     * @param criteria Search criteria
+     * @return Matching rent properties, at most criteria.getLimit()
+     */
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public List<RentProperty> searchRentProperties(PropertySearchCriteria criteria) {
+        return searchRentProperties(criteria, FetchProfile.DEFAULT);
+    }
+
+    /**
+     * Search rent properties matching every criterion that is set
+     * @param criteria Search criteria
+     * @param profile How to load the address of each result
+     * @return Matching rent properties, at most criteria.getLimit()
+     */
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public List<RentProperty> searchRentProperties(PropertySearchCriteria criteria, FetchProfile profile) {
+        return searchListings(RentProperty.class, "weeklyRent", criteria, profile);
     }
 
     // ==================== GENERAL PROPERTY OPERATIONS ====================
@@ -505,6 +583,9 @@ public class PropertyEJB {
      */
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public long getTotalSalePropertyCount() {
+        if (marketStatistics.isReady()) {
+            return marketStatistics.getSummary(ListingEntry.Kind.SALE).getCount();
+        }
         try {
             TypedQuery<Long> query = em.createQuery("SELECT COUNT(sp) FROM SaleProperty sp", Long.class);
             Long result = query.getSingleResult();
@@ -521,6 +602,9 @@ public class PropertyEJB {
      */
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public long getTotalRentPropertyCount() {
+        if (marketStatistics.isReady()) {
+            return marketStatistics.getSummary(ListingEntry.Kind.RENT).getCount();
+        }
         try {
             TypedQuery<Long> query = em.createQuery("SELECT COUNT(rp) FROM RentProperty rp", Long.class);
             Long result = query.getSingleResult();
@@ -537,6 +621,9 @@ public class PropertyEJB {
      */
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public double getAverageSalePrice() {
+        if (marketStatistics.isReady()) {
+            return marketStatistics.getSummary(ListingEntry.Kind.SALE).getAverage();
+        }
         try {
             TypedQuery<Double> query = em.createQuery("SELECT AVG(sp.salePrice) FROM SaleProperty sp", Double.class);
             Double result = query.getSingleResult();
@@ -553,6 +640,9 @@ public class PropertyEJB {
      */
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public double getAverageWeeklyRent() {
+        if (marketStatistics.isReady()) {
+            return marketStatistics.getSummary(ListingEntry.Kind.RENT).getAverage();
+        }
         try {
             TypedQuery<Double> query = em.createQuery("SELECT AVG(rp.weeklyRent) FROM RentProperty rp", Double.class);
             Double result = query.getSingleResult();
@@ -563,14 +653,494 @@ public class PropertyEJB {
         }
     }
 
+    /**
+     * Get average weekly rent of the rent properties in one city
+     * @param city City, compared case-insensitively
+     * @return Average weekly rent or 0 if there are no properties in the city
+     */
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public double getAverageWeeklyRent(String city) {
+        if (city == null || city.trim().isEmpty()) {
+            return getAverageWeeklyRent();
+        }
+        if (marketStatistics.isReady()) {
+            return marketStatistics.getCitySummary(ListingEntry.Kind.RENT, city).getAverage();
+        }
+        try {
+            TypedQuery<Double> query = em.createQuery(
+                    "SELECT AVG(rp.weeklyRent) FROM RentProperty rp WHERE LOWER(rp.address.city) = :city", Double.class);
+            query.setParameter("city", city.trim().toLowerCase());
+            Double result = query.getSingleResult();
+            return result != null ? result : 0.0;
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error getting average weekly rent for city: " + city, e);
+            return 0.0;
+        }
+    }
+
+    // ==================== BULK OPERATIONS ====================
+
+    /**
+     * Persist a chunk of listings in a transaction of its own.
+     * Rows are validated with the create rules, persisted without the
+     * per-row flush of createRentProperty/createSaleProperty, and written in
+     * a single flush so EclipseLink can send them as JDBC batches. IDs come
+     * from the preallocated table generator, so persist needs no round trip.
+     * If any row fails, the whole chunk is rolled back.
+     * @param chunk Rent and/or sale properties with their addresses
+     * @return Number of properties persisted
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public int importChunk(List<? extends Property> chunk) {
+        if (chunk == null || chunk.isEmpty()) {
+            return 0;
+        }
+        for (Property property : chunk) {
+            validateListing(property);
+        }
+
+        for (Property property : chunk) {
+            em.persist(property);
+        }
+        em.flush();
+        for (Property property : chunk) {
+            indexAfterCommit(property);
+        }
+        em.clear();
+        return chunk.size();
+    }
+
+    // ==================== EXPORT OPERATIONS ====================
+
+    /**
+     * Stream every rent property to an export sink in ID order.
+     * Runs outside a transaction so a long export is not cut short by the
+     * transaction timeout; rows are read in chunks and never kept.
+     * @param sink Destination
+     * @return Number of properties written
+     * @throws IOException if the sink cannot be written
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public long exportRentProperties(ExportSink sink) throws IOException {
+        sink.header("id", "propertyType", "noOfBedrooms", "noOfBathrooms", "weeklyRent", "isFurnished",
+                "streetNumber", "streetName", "city", "postcode", "country", "propertyDescription");
+        long count = KeysetExport.stream(em,
+                "SELECT rp.id, rp.propertyType, rp.noOfBedrooms, rp.noOfBathrooms, rp.weeklyRent, rp.isFurnished, "
+                + "a.streetNumber, a.streetName, a.city, a.postcode, a.country, rp.propertyDescription "
+                + "FROM RentProperty rp LEFT JOIN rp.address a WHERE rp.id > :lastId ORDER BY rp.id", sink);
+        LOGGER.log(Level.INFO, "Exported {0} rent properties", count);
+        return count;
+    }
+
+    /**
+     * Stream every sale property to an export sink in ID order
+     * @param sink Destination
+     * @return Number of properties written
+     * @throws IOException if the sink cannot be written
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public long exportSaleProperties(ExportSink sink) throws IOException {
+        sink.header("id", "propertyType", "noOfBedrooms", "noOfBathrooms", "salePrice",
+                "streetNumber", "streetName", "city", "postcode", "country", "propertyDescription");
+        long count = KeysetExport.stream(em,
+                "SELECT sp.id, sp.propertyType, sp.noOfBedrooms, sp.noOfBathrooms, sp.salePrice, "
+                + "a.streetNumber, a.streetName, a.city, a.postcode, a.country, sp.propertyDescription "
+                + "FROM SaleProperty sp LEFT JOIN sp.address a WHERE sp.id > :lastId ORDER BY sp.id", sink);
+        LOGGER.log(Level.INFO, "Exported {0} sale properties", count);
+        return count;
+    }
+
+    // ==================== SEARCH HELPERS ====================
+
+    /**
+     * Search the listing index, or until it is ready, build and run a
+     * Criteria API query for the given listing type. Only
+     * the criteria that are set become predicates, and the address table is
+     * joined only when a city is given. The city and property type are
+     * compared with plain equality so the ADDRESS/PROPERTY indexes can be
+     * used; case folding is left to the column collation (MySQL's default
+     * collations are case-insensitive).
+     * @param type Listing entity class
+     * @param priceAttribute Name of the price attribute for this listing type
+     * @param criteria Search criteria
+     * @param profile How to load the address of each result
+     * @return Matching listings
+     */
+    private <T extends Property> List<T> searchListings(Class<T> type, String priceAttribute,
+                                                        PropertySearchCriteria criteria, FetchProfile profile) {
+        if (criteria == null) {
+            throw new IllegalArgumentException("Search criteria cannot be null");
+        }
+        criteria.validate();
+
+        if (listingIndex.isReady()) {
+            // Filter and rank in memory, then load only the rows of the result
+            ListingEntry.Kind kind = RentProperty.class.isAssignableFrom(type)
+                    ? ListingEntry.Kind.RENT : ListingEntry.Kind.SALE;
+            return findByIdsInOrder(type, listingIndex.search(kind, criteria), profile);
+        }
+
+        try {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<T> cq = cb.createQuery(type);
+            Root<T> root = cq.from(type);
+            Path<Long> price = root.get(priceAttribute);
+            Path<Integer> bedrooms = root.get("noOfBedrooms");
+            List<Predicate> predicates = new ArrayList<>();
+
+            Join<T, Address> address = null;
+            if (profile == FetchProfile.JOIN_ADDRESS) {
+                // The fetch join doubles as the join for the city predicate
+                address = (Join<T, Address>) root.<T, Address>fetch("address", JoinType.LEFT);
+            }
+            if (criteria.getCity() != null && !criteria.getCity().trim().isEmpty()) {
+                if (address == null) {
+                    address = root.join("address");
+                }
+                predicates.add(cb.equal(address.get("city"), criteria.getCity().trim()));
+            }
+            if (criteria.getPropertyType() != null && !criteria.getPropertyType().trim().isEmpty()) {
+                predicates.add(cb.equal(root.get("propertyType"), criteria.getPropertyType().trim()));
+            }
+            if (criteria.getMinPrice() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(price, criteria.getMinPrice()));
+            }
+            if (criteria.getMaxPrice() != null) {
+                predicates.add(cb.lessThanOrEqualTo(price, criteria.getMaxPrice()));
+            }
+            if (criteria.getMinBedrooms() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(bedrooms, criteria.getMinBedrooms()));
+            }
+            if (criteria.getMaxBedrooms() != null) {
+                predicates.add(cb.lessThanOrEqualTo(bedrooms, criteria.getMaxBedrooms()));
+            }
+            if (criteria.getMinBathrooms() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.<Integer>get("noOfBathrooms"), criteria.getMinBathrooms()));
+            }
+            if (criteria.getFurnished() != null && RentProperty.class.isAssignableFrom(type)) {
+                predicates.add(cb.equal(root.get("isFurnished"), criteria.getFurnished()));
+            }
+            if (criteria.getExcludeId() != null) {
+                predicates.add(cb.notEqual(root.get("id"), criteria.getExcludeId()));
+            }
+
+            cq.select(root).where(predicates.toArray(new Predicate[0]));
+            switch (criteria.getSort()) {
+                case PRICE_DESC:
+                    cq.orderBy(cb.desc(price), cb.asc(root.get("id")));
+                    break;
+                case BEDROOMS_DESC:
+                    cq.orderBy(cb.desc(bedrooms), cb.asc(price), cb.asc(root.get("id")));
+                    break;
+                case NEWEST:
+                    cq.orderBy(cb.desc(root.get("id")));
+                    break;
+                default:
+                    cq.orderBy(cb.asc(price), cb.asc(root.get("id")));
+            }
+
+            TypedQuery<T> query = em.createQuery(cq);
+            query.setMaxResults(criteria.getLimit());
+            applyFetchHints(query, "p", profile);
+
+            List<T> results = query.getResultList();
+            LOGGER.log(Level.INFO, "Found {0} {1} matching search criteria",
+                      new Object[]{results.size(), type.getSimpleName()});
+            return results;
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error searching " + type.getSimpleName(), e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Load listings by ID, returned in the order of the given IDs. IDs whose
+     * rows no longer exist are skipped.
+     * @param type Listing entity class
+     * @param ids Property IDs in result order
+     * @param profile How to load the address of each listing
+     * @return Listings in the same order as the IDs
+     */
+    private <T extends Property> List<T> findByIdsInOrder(Class<T> type, long[] ids, FetchProfile profile) {
+        List<T> results = new ArrayList<>(ids.length);
+        if (ids.length == 0) {
+            return results;
+        }
+
+        try {
+            List<Long> idList = new ArrayList<>(ids.length);
+            for (long id : ids) {
+                idList.add(id);
+            }
+            TypedQuery<T> query = em.createQuery(
+                "SELECT p FROM " + type.getSimpleName() + " p" + fetchClause("p", profile)
+                + " WHERE p.id IN :ids", type);
+            query.setParameter("ids", idList);
+            applyFetchHints(query, "p", profile);
+
+            Map<Long, T> byId = new HashMap<>();
+            for (T property : query.getResultList()) {
+                byId.put(property.getId(), property);
+            }
+            for (long id : ids) {
+                T property = byId.get(id);
+                if (property != null) {
+                    results.add(property);
+                }
+            }
+            return results;
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error loading " + type.getSimpleName() + " search results", e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Add a new property to the listing index, market statistics and
+     * autocomplete index once the current transaction commits
+     * @param property Persisted property
+     */
+    private void indexAfterCommit(Property property) {
+        indexAfterCommit(null, property);
+    }
+
+    /**
+     * Update the listing index, market statistics and autocomplete index
+     * with a property once the current transaction commits
+     * @param before Snapshot of the property before an update, or null for a new property
+     * @param property Persisted property
+     */
+    private void indexAfterCommit(ListingEntry before, Property property) {
+        ListingEntry entry = ListingEntry.of(property);
+        AfterCommit.run(txRegistry, () -> {
+            listingIndex.put(entry);
+            marketStatistics.listingUpdated(before, entry);
+            autocompleteIndex.listingChanged(before, entry);
+        });
+    }
+
+    /**
+     * Remove a property from the listing index, market statistics and
+     * autocomplete index once the current transaction commits
+     * @param property Property about to be removed
+     */
+    private void unindexAfterCommit(Property property) {
+        ListingEntry entry = ListingEntry.of(property);
+        AfterCommit.run(txRegistry, () -> {
+            listingIndex.remove(entry.getId());
+            marketStatistics.listingRemoved(entry);
+            autocompleteIndex.listingChanged(entry, null);
+        });
+    }
+
+    // ==================== FETCH PROFILE HELPERS ====================
+
+    /**
+     * Get the JPQL fetch join for a profile, to append after the FROM clause.
+     * The address is a to-one association, so the join never multiplies rows
+     * and is safe to combine with setMaxResults.
+     * @param alias JPQL alias of the property
+     * @param profile Fetch profile
+     * @return LEFT JOIN FETCH clause, or an empty string
+     */
+    private static String fetchClause(String alias, FetchProfile profile) {
+        return profile == FetchProfile.JOIN_ADDRESS ? " LEFT JOIN FETCH " + alias + ".address" : "";
+    }
+
+    /**
+     * Add the EclipseLink batch fetch hints for a profile. IN batching loads
+     * the addresses of the rows actually returned, so unlike JOIN batching it
+     * also works with setMaxResults.
+     * @param query Query to configure
+     * @param alias JPQL alias of the property
+     * @param profile Fetch profile
+     */
+    private static void applyFetchHints(Query query, String alias, FetchProfile profile) {
+        if (profile == FetchProfile.BATCH_ADDRESS) {
+            query.setHint(BATCH_HINT, alias + ".address");
+            query.setHint(BATCH_TYPE_HINT, "IN");
+        }
+    }
+
+    // ==================== PAGINATION HELPERS ====================
+
+    /**
+     * Seek to the page following the given token. The WHERE clause compares
+     * against the last (sort value, ID) pair instead of using an OFFSET, so
+     * the database walks the (price, ID) or primary key index straight to the
+     * first row of the page and reads at most pageSize + 1 rows.
+     * @param type Listing entity class
+     * @param alias JPQL alias for the entity
+     * @param priceAttribute Name of the price attribute used by {@link ListingSort#PRICE}
+     * @param after Token of the last row of the previous page, or null
+     * @param pageSize Requested page size
+     * @param sort Sort order
+     * @param profile How to load the address of each listing
+     * @return Page of listings
+     */
+    private <T extends Property> ListingPage<T> findListingPage(Class<T> type, String alias, String priceAttribute,
+                                                               PageToken after, int pageSize, ListingSort sort,
+                                                               FetchProfile profile) {
+        if (sort == null) {
+            sort = ListingSort.ID;
+        }
+        if (after != null && after.getSort() != sort) {
+            throw new IllegalArgumentException("Page token was issued for a different sort order");
+        }
+        int size = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+        String price = alias + "." + priceAttribute;
+        String id = alias + ".id";
+
+        StringBuilder queryStr = new StringBuilder("SELECT ").append(alias)
+                .append(" FROM ").append(type.getSimpleName()).append(" ").append(alias)
+                .append(fetchClause(alias, profile));
+        if (after != null) {
+            if (sort == ListingSort.PRICE) {
+                queryStr.append(" WHERE ").append(price).append(" > :lastValue OR (")
+                        .append(price).append(" = :lastValue AND ").append(id).append(" > :lastId)");
+            } else {
+                queryStr.append(" WHERE ").append(id).append(" > :lastId");
+            }
+        }
+        if (sort == ListingSort.PRICE) {
+            queryStr.append(" ORDER BY ").append(price).append(" ASC, ").append(id).append(" ASC");
+        } else {
+            queryStr.append(" ORDER BY ").append(id).append(" ASC");
+        }
+
+        try {
+            TypedQuery<T> query = em.createQuery(queryStr.toString(), type);
+            if (after != null) {
+                query.setParameter("lastId", after.getLastId());
+                if (sort == ListingSort.PRICE) {
+                    query.setParameter("lastValue", after.getSortValue());
+                }
+            }
+            // Fetch one extra row to find out whether another page follows
+            query.setMaxResults(size + 1);
+            applyFetchHints(query, alias, profile);
+
+            List<T> rows = query.getResultList();
+            if (rows.size() <= size) {
+                return new ListingPage<>(rows, null);
+            }
+
+            List<T> items = new ArrayList<>(rows.subList(0, size));
+            T last = items.get(size - 1);
+            long sortValue = sort == ListingSort.PRICE ? priceOf(last) : last.getId();
+            return new ListingPage<>(items, new PageToken(sort, sortValue, last.getId()));
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error retrieving page of " + type.getSimpleName(), e);
+            return ListingPage.empty();
+        }
+    }
+
+    /**
+     * Read every listing matching a filter for the deprecated finders, which
+     * promise the whole result set. Rows are read MAX_LIMIT at a time by
+     * seeking past the last (price, ID) pair, like {@link #findListingPage},
+     * so no single statement has to return an unbounded result.
+     * @param type Listing entity class
+     * @param alias JPQL alias for the entity
+     * @param priceAttribute Name of the price attribute to order by
+     * @param filter Joins and WHERE clause to append after the FROM clause
+     * @param params Parameters of the filter
+     * @return Every matching listing, cheapest first; empty on error
+     */
+    private <T extends Property> List<T> findAllListings(Class<T> type, String alias, String priceAttribute,
+                                                         String filter, Map<String, Object> params) {
+        String price = alias + "." + priceAttribute;
+        String id = alias + ".id";
+        String select = "SELECT " + alias + " FROM " + type.getSimpleName() + " " + alias + filter;
+        String seek = " AND (" + price + " > :lastValue OR (" + price + " = :lastValue AND " + id + " > :lastId))";
+        String order = " ORDER BY " + price + " ASC, " + id + " ASC";
+
+        List<T> results = new ArrayList<>();
+        try {
+            List<T> rows;
+            do {
+                boolean first = results.isEmpty();
+                TypedQuery<T> query = em.createQuery(select + (first ? "" : seek) + order, type);
+                for (Map.Entry<String, Object> param : params.entrySet()) {
+                    query.setParameter(param.getKey(), param.getValue());
+                }
+                if (!first) {
+                    T last = results.get(results.size() - 1);
+                    query.setParameter("lastValue", priceOf(last));
+                    query.setParameter("lastId", last.getId());
+                }
+                query.setMaxResults(PropertySearchCriteria.MAX_LIMIT);
+                rows = query.getResultList();
+                results.addAll(rows);
+            } while (rows.size() == PropertySearchCriteria.MAX_LIMIT);
+
+            LOGGER.log(Level.INFO, "Found {0} {1} listings", new Object[]{results.size(), type.getSimpleName()});
+            return results;
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error searching " + type.getSimpleName(), e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Build the WHERE clause of a price range, leaving out open ends
+     * @param price JPQL path of the price attribute
+     * @param min Minimum price, or null
+     * @param max Maximum price, or null
+     * @param params Receives the bound parameters
+     * @return WHERE clause to append after the FROM clause
+     */
+    private static String priceRange(String price, Long min, Long max, Map<String, Object> params) {
+        StringBuilder where = new StringBuilder(" WHERE 1=1");
+        if (min != null) {
+            where.append(" AND ").append(price).append(" >= :minPrice");
+            params.put("minPrice", min);
+        }
+        if (max != null) {
+            where.append(" AND ").append(price).append(" <= :maxPrice");
+            params.put("maxPrice", max);
+        }
+        return where.toString();
+    }
+
+    /**
+     * Get the price used for price ordering of a listing
+     * @param property Rent or sale property
+     * @return Weekly rent or sale price, 0 if not set
+     */
+    private long priceOf(Property property) {
+        Long price = null;
+        if (property instanceof RentProperty) {
+            price = ((RentProperty) property).getWeeklyRent();
+        } else if (property instanceof SaleProperty) {
+            price = ((SaleProperty) property).getSalePrice();
+        }
+        return price != null ? price : 0L;
+    }
+
     // ==================== VALIDATION METHODS ====================
 
+    /**
+     * Validate a rent or sale property with the same rules as create
+     * @param property Property to validate
+     * @throws IllegalArgumentException if validation fails
+     */
+    static void validateListing(Property property) {
+        if (property instanceof RentProperty) {
+            validateRentProperty((RentProperty) property);
+        } else if (property instanceof SaleProperty) {
+            validateSaleProperty((SaleProperty) property);
+        } else {
+            throw new IllegalArgumentException("Property must be a rent or sale property");
+        }
+    }
+
     /**
      * Validate sale property data
      * @param property SaleProperty to validate
      * @throws IllegalArgumentException if validation fails
      */
-    private void validateSaleProperty(SaleProperty property) {
+    private static void validateSaleProperty(SaleProperty property) {
         validateBaseProperty(property);
         
         if (property.getSalePrice() == null || property.getSalePrice() <= 0) {
@@ -583,7 +1153,7 @@ public class PropertyEJB {
      * @param property RentProperty to validate
      * @throws IllegalArgumentException if validation fails
      */
-    private void validateRentProperty(RentProperty property) {
+    private static void validateRentProperty(RentProperty property) {
         validateBaseProperty(property);
         
         if (property.getWeeklyRent() == null || property.getWeeklyRent() <= 0) {
@@ -600,7 +1170,7 @@ public class PropertyEJB {
      * @param property Property to validate
      * @throws IllegalArgumentException if validation fails
      */
-    private void validateBaseProperty(Property property) {
+    private static void validateBaseProperty(Property property) {
         if (property.getPropertyType() == null || property.getPropertyType().trim().isEmpty()) {
             throw new IllegalArgumentException("Property type is required");
         }
@@ -630,7 +1200,7 @@ public class PropertyEJB {
      * @param address Address to validate
      * @throws IllegalArgumentException if validation fails
      */
-    private void validateAddress(realestatemanagement.model.Address address) {
+    private static void validateAddress(realestatemanagement.model.Address address) {
         if (address.getStreetNumber() <= 0) {
             throw new IllegalArgumentException("Street number must be greater than 0");
         }
@@ -0,0 +1,325 @@
+package realestatemanagement.ejb;
+
+import jakarta.ejb.EJB;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.json.Json;
+import jakarta.json.JsonException;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
+import jakarta.json.stream.JsonParser;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import realestatemanagement.model.Address;
+import realestatemanagement.model.Property;
+import realestatemanagement.model.RentProperty;
+import realestatemanagement.model.SaleProperty;
+
+/**
+ * Enterprise Java Bean for bulk listing imports.
+ * Reads CSV or JSON one row at a time, rejects rows that fail the create
+ * validation, and hands the valid ones to PropertyEJB in chunks that are
+ * each committed in their own transaction. A chunk that fails to commit is
+ * retried row by row, so one bad row only costs itself.
+ *
+ * The column names are those of the export, so an export can be imported again:
+ * propertyType, noOfBedrooms, noOfBathrooms, propertyDescription,
+ * weeklyRent and isFurnished (rent) or salePrice (sale),
+ * streetNumber, streetName, city, postcode, country. Other columns are ignored.
+ *
+ * @author Zhengxu
+ */
+@Stateless
+@LocalBean
+public class PropertyImportEJB {
+
+    private static final Logger LOGGER = Logger.getLogger(PropertyImportEJB.class.getName());
+
+    /** Rows committed per transaction when no chunk size is given */
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    /** Largest accepted chunk size */
+    public static final int MAX_CHUNK_SIZE = 5000;
+
+    @EJB
+    private PropertyEJB propertyEJB;
+
+    /**
+     * Import listings from CSV with a header line
+     * @param in CSV input
+     * @param kind Whether the rows are rent or sale listings
+     * @param chunkSize Rows per transaction, clamped to 1..{@link #MAX_CHUNK_SIZE}
+     * @return Report of imported and rejected rows
+     * @throws IOException if the input cannot be read
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public ImportReport importCsv(Reader in, ListingEntry.Kind kind, int chunkSize) throws IOException {
+        Importer importer = new Importer(kind, chunkSize);
+        CsvReader csv = new CsvReader(in);
+        List<String> header = csv.next();
+        if (header == null) {
+            return importer.finish();
+        }
+
+        List<String> record;
+        while ((record = csv.next()) != null) {
+            if (record.size() == 1 && record.get(0).isEmpty()) {
+                continue; // blank line
+            }
+            long row = importer.rowRead();
+            if (record.size() != header.size()) {
+                importer.report.failed(row, "Expected " + header.size() + " fields but found " + record.size());
+                continue;
+            }
+            Map<String, String> values = new HashMap<>();
+            for (int i = 0; i < header.size(); i++) {
+                values.put(header.get(i).trim(), record.get(i));
+            }
+            importer.add(row, values);
+        }
+        return importer.finish();
+    }
+
+    /**
+     * Import listings from JSON: either one array of objects, read as a
+     * stream, or newline delimited objects
+     * @param in JSON input
+     * @param kind Whether the rows are rent or sale listings
+     * @param chunkSize Rows per transaction, clamped to 1..{@link #MAX_CHUNK_SIZE}
+     * @return Report of imported and rejected rows
+     * @throws IOException if the input cannot be read or is not JSON
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public ImportReport importJson(Reader in, ListingEntry.Kind kind, int chunkSize) throws IOException {
+        Importer importer = new Importer(kind, chunkSize);
+        PushbackReader reader = new PushbackReader(in, 1);
+        int c;
+        do {
+            c = reader.read();
+        } while (c != -1 && Character.isWhitespace(c));
+        if (c == -1) {
+            return importer.finish();
+        }
+        reader.unread(c);
+
+        try {
+            if (c == '[') {
+                try (JsonParser parser = Json.createParser(reader)) {
+                    parser.next(); // START_ARRAY
+                    while (parser.hasNext()) {
+                        JsonParser.Event event = parser.next();
+                        if (event == JsonParser.Event.END_ARRAY) {
+                            break;
+                        }
+                        long row = importer.rowRead();
+                        if (event != JsonParser.Event.START_OBJECT) {
+                            parser.getValue(); // skip it
+                            importer.report.failed(row, "Expected a JSON object");
+                            continue;
+                        }
+                        importer.add(row, toValues(parser.getObject()));
+                    }
+                }
+            } else {
+                BufferedReader lines = new BufferedReader(reader);
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    if (line.trim().isEmpty()) {
+                        continue;
+                    }
+                    long row = importer.rowRead();
+                    try {
+                        importer.add(row, toValues(Json.createReader(new StringReader(line)).readObject()));
+                    } catch (JsonException e) {
+                        importer.report.failed(row, "Invalid JSON: " + e.getMessage());
+                    }
+                }
+            }
+        } catch (JsonException e) {
+            throw new IOException("Invalid JSON input", e);
+        }
+        return importer.finish();
+    }
+
+    private static Map<String, String> toValues(JsonObject object) {
+        Map<String, String> values = new HashMap<>();
+        for (Map.Entry<String, JsonValue> entry : object.entrySet()) {
+            JsonValue value = entry.getValue();
+            if (value instanceof JsonString) {
+                values.put(entry.getKey(), ((JsonString) value).getString());
+            } else if (value.getValueType() != JsonValue.ValueType.NULL) {
+                values.put(entry.getKey(), value.toString());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Build an unsaved listing from one input row
+     * @param kind Rent or sale
+     * @param values Column values by name
+     * @return Listing with its address, not yet validated
+     * @throws IllegalArgumentException if a value is missing or malformed
+     */
+    private static Property toListing(ListingEntry.Kind kind, Map<String, String> values) {
+        Address address = new Address();
+        address.setStreetNumber(intValue(values, "streetNumber"));
+        address.setStreetName(values.get("streetName"));
+        address.setCity(values.get("city"));
+        address.setPostcode(longValue(values, "postcode"));
+        address.setCountry(values.get("country"));
+
+        Property property;
+        if (kind == ListingEntry.Kind.RENT) {
+            RentProperty rent = new RentProperty();
+            rent.setWeeklyRent(longValue(values, "weeklyRent"));
+            rent.setIsFurnished(booleanValue(values, "isFurnished"));
+            property = rent;
+        } else {
+            SaleProperty sale = new SaleProperty();
+            sale.setSalePrice(longValue(values, "salePrice"));
+            property = sale;
+        }
+        property.setPropertyType(values.get("propertyType"));
+        property.setNoOfBedrooms(intValue(values, "noOfBedrooms"));
+        property.setNoOfBathrooms(intValue(values, "noOfBathrooms"));
+        property.setPropertyDescription(values.get("propertyDescription"));
+        property.setAddress(address);
+        return property;
+    }
+
+    private static String required(Map<String, String> values, String column) {
+        String value = values.get(column);
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException(column + " is required");
+        }
+        return value.trim();
+    }
+
+    private static int intValue(Map<String, String> values, String column) {
+        try {
+            return Integer.parseInt(required(values, column));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(column + " must be a whole number");
+        }
+    }
+
+    private static Long longValue(Map<String, String> values, String column) {
+        try {
+            return Long.valueOf(required(values, column));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(column + " must be a whole number");
+        }
+    }
+
+    private static Boolean booleanValue(Map<String, String> values, String column) {
+        String value = required(values, column).toLowerCase();
+        switch (value) {
+            case "true":
+            case "yes":
+            case "1":
+                return Boolean.TRUE;
+            case "false":
+            case "no":
+            case "0":
+                return Boolean.FALSE;
+            default:
+                throw new IllegalArgumentException(column + " must be true or false");
+        }
+    }
+
+    /**
+     * State of one import run: the report and the chunk being filled
+     */
+    private class Importer {
+
+        private final ListingEntry.Kind kind;
+        private final int chunkSize;
+        private final long started = System.currentTimeMillis();
+        private final ImportReport report = new ImportReport();
+        private final List<Property> chunk = new ArrayList<>();
+        private final List<Long> chunkRows = new ArrayList<>();
+
+        Importer(ListingEntry.Kind kind, int chunkSize) {
+            if (kind == null) {
+                throw new IllegalArgumentException("Listing kind cannot be null");
+            }
+            this.kind = kind;
+            this.chunkSize = Math.max(1, Math.min(chunkSize, MAX_CHUNK_SIZE));
+        }
+
+        long rowRead() {
+            report.rowRead();
+            return report.getRows();
+        }
+
+        void add(long row, Map<String, String> values) {
+            Property property;
+            try {
+                property = toListing(kind, values);
+                PropertyEJB.validateListing(property);
+            } catch (IllegalArgumentException e) {
+                report.failed(row, e.getMessage());
+                return;
+            }
+            chunk.add(property);
+            chunkRows.add(row);
+            if (chunk.size() >= chunkSize) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            try {
+                report.imported(propertyEJB.importChunk(new ArrayList<>(chunk)));
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Import chunk ending at row {0} failed, retrying row by row",
+                        chunkRows.get(chunkRows.size() - 1));
+                for (int i = 0; i < chunk.size(); i++) {
+                    Property property = chunk.get(i);
+                    // forget the IDs the rolled back persist assigned
+                    property.setId(null);
+                    property.getAddress().setId(0);
+                    try {
+                        report.imported(propertyEJB.importChunk(List.of(property)));
+                    } catch (RuntimeException rowFailure) {
+                        report.failed(chunkRows.get(i), rootMessage(rowFailure));
+                    }
+                }
+            }
+            chunk.clear();
+            chunkRows.clear();
+        }
+
+        ImportReport finish() {
+            flush();
+            report.setElapsedMillis(System.currentTimeMillis() - started);
+            LOGGER.log(Level.INFO, "Imported {0} of {1} {2} listings in {3} ms, {4} rejected",
+                    new Object[]{report.getImported(), report.getRows(), kind, report.getElapsedMillis(), report.getFailed()});
+            return report;
+        }
+    }
+
+    private static String rootMessage(Throwable e) {
+        Throwable cause = e;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+}
@@ -1,5 +1,7 @@
 package realestatemanagement.ejb;
 
+import jakarta.annotation.Resource;
+import jakarta.ejb.EJB;
 import jakarta.ejb.LocalBean;
 import jakarta.ejb.Stateless;
 import jakarta.ejb.TransactionAttribute;
@@ -9,10 +11,15 @@ import jakarta.persistence.NoResultException;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import realestatemanagement.model.LookupKey;
 import realestatemanagement.model.PropertyManager;
 
 /**
@@ -27,10 +34,34 @@ import realestatemanagement.model.PropertyManager;
 public class PropertyManagerEJB {
 
     private static final Logger LOGGER = Logger.getLogger(PropertyManagerEJB.class.getName());
+
+    /** Sort keys accepted by {@link #findManagersPage}, mapped to the JPQL they order by */
+    private static final Map<String, String> SORT_COLUMNS = Map.of(
+            "id", "pm.id",
+            "firstName", "pm.firstName",
+            "lastName", "pm.lastName");
+
+    /** Most managers returned by {@link #searchManagers} */
+    private static final int SEARCH_LIMIT = Integer.getInteger("realestate.search.limit", 100);
     
     @PersistenceContext(unitName = "RealEstateManagementPU")
     private EntityManager em;
 
+    @EJB
+    private MarketStatistics marketStatistics;
+
+    @EJB
+    private NameSearchIndex nameSearchIndex;
+
+    @EJB
+    private AutocompleteIndex autocompleteIndex;
+
+    @EJB
+    private ManagerLeaderboard leaderboard;
+
+    @Resource
+    private TransactionSynchronizationRegistry txRegistry;
+
     /**
      * Get all property managers
      * @return List of all property managers ordered by last name, first name
@@ -48,6 +79,32 @@ public class PropertyManagerEJB {
         }
     }
 
+    /**
+     * Get one page of property managers
+     * @param first Offset of the first manager
+     * @param max Maximum number of managers
+     * @param sortField Sort key, "id", "firstName" or "lastName"; anything else sorts by ID
+     * @param ascending Sort direction
+     * @return Property managers of the page
+     */
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public List<PropertyManager> findManagersPage(int first, int max, String sortField, boolean ascending) {
+        String column = SORT_COLUMNS.getOrDefault(sortField, "pm.id");
+        String direction = ascending ? " ASC" : " DESC";
+        String orderBy = column + direction + ("pm.id".equals(column) ? "" : ", pm.id" + direction);
+
+        try {
+            TypedQuery<PropertyManager> query = em.createQuery(
+                "SELECT pm FROM PropertyManager pm ORDER BY " + orderBy, PropertyManager.class);
+            query.setFirstResult(Math.max(0, first));
+            query.setMaxResults(Math.max(1, max));
+            return query.getResultList();
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error retrieving page of property managers", e);
+            return new ArrayList<>();
+        }
+    }
+
     /**
      * Find property manager by ID
      * @param id Property manager ID
@@ -155,7 +212,10 @@ public class PropertyManagerEJB {
     }
 
     /**
-     * Flexible search for property managers with partial name matching
+     * Flexible search for property managers with partial name matching.
+     * Matches are found in the name search index and ranked there, exact
+     * and prefix matches first; only the best realestate.search.limit
+     * (default 100) are loaded.
      * @param searchTerm Search term to match against first name, last name, or email
      * @return List of matching property managers
      */
@@ -164,6 +224,10 @@ public class PropertyManagerEJB {
         if (searchTerm == null || searchTerm.trim().isEmpty()) {
             return findAllManagers();
         }
+
+        if (nameSearchIndex.isReady()) {
+            return findManagersInOrder(nameSearchIndex.searchManagers(searchTerm, SEARCH_LIMIT));
+        }
         
         try {
             String searchPattern = "%" + searchTerm.trim().toLowerCase() + "%";
@@ -177,6 +241,7 @@ public class PropertyManagerEJB {
                 PropertyManager.class);
             
             query.setParameter("searchTerm", searchPattern);
+            query.setMaxResults(SEARCH_LIMIT);
             
             List<PropertyManager> results = query.getResultList();
             LOGGER.log(Level.INFO, "Found {0} property managers matching search term: {1}", 
@@ -189,7 +254,45 @@ public class PropertyManagerEJB {
     }
 
     /**
-     * Find property manager by email
+     * Load property managers by ID, keeping the order of the IDs
+     * @param ids Manager IDs
+     * @return Managers that still exist, in the order of the IDs
+     */
+    private List<PropertyManager> findManagersInOrder(long[] ids) {
+        List<PropertyManager> results = new ArrayList<>(ids.length);
+        if (ids.length == 0) {
+            return results;
+        }
+
+        try {
+            List<Long> idList = new ArrayList<>(ids.length);
+            for (long id : ids) {
+                idList.add(id);
+            }
+            TypedQuery<PropertyManager> query = em.createQuery(
+                "SELECT pm FROM PropertyManager pm WHERE pm.id IN :ids", PropertyManager.class);
+            query.setParameter("ids", idList);
+
+            Map<Long, PropertyManager> byId = new HashMap<>();
+            for (PropertyManager manager : query.getResultList()) {
+                byId.put(manager.getId(), manager);
+            }
+            for (long id : ids) {
+                PropertyManager manager = byId.get(id);
+                if (manager != null) {
+                    results.add(manager);
+                }
+            }
+            return results;
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error loading property manager search results", e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Find property manager by email, ignoring case, through the unique
+     * index on the normalized EMAIL_KEY column
      * @param email Email address
      * @return PropertyManager or null if not found
      */
@@ -201,10 +304,8 @@ public class PropertyManagerEJB {
         }
         
         try {
-            TypedQuery<PropertyManager> query = em.createQuery(
-                "SELECT pm FROM PropertyManager pm WHERE LOWER(pm.email) = LOWER(:email)", 
-                PropertyManager.class);
-            query.setParameter("email", email.trim());
+            TypedQuery<PropertyManager> query = em.createNamedQuery("findPropertyManagerByEmail", PropertyManager.class);
+            query.setParameter("emailKey", LookupKey.of(email));
             
             return query.getSingleResult();
         } catch (NoResultException e) {
@@ -246,6 +347,10 @@ public class PropertyManagerEJB {
             
             em.persist(manager);
             em.flush(); // Force immediate persistence to get generated ID
+            AfterCommit.run(txRegistry, marketStatistics::managerAdded);
+            long id = manager.getId();
+            AfterCommit.run(txRegistry, () -> leaderboard.put(id, 0, 0));
+            indexAfterCommit(null, null, manager);
             
             LOGGER.log(Level.INFO, "Created new property manager with ID: {0}", manager.getId());
             return manager;
@@ -285,7 +390,10 @@ public class PropertyManagerEJB {
                 manager.setEmail(manager.getEmail().trim().toLowerCase());
             }
             
+            String oldFirstName = existingManager.getFirstName();
+            String oldLastName = existingManager.getLastName();
             PropertyManager updatedManager = em.merge(manager);
+            indexAfterCommit(oldFirstName, oldLastName, updatedManager);
             LOGGER.log(Level.INFO, "Updated property manager with ID: {0}", manager.getId());
             return updatedManager;
         } catch (Exception e) {
@@ -308,12 +416,20 @@ public class PropertyManagerEJB {
             PropertyManager manager = findPropertyManagerById(id);
             if (manager != null) {
                 // Check if manager has allocations
-                long allocationCount = getTotalPropertiesForManager(manager);
+                long allocationCount = countAllocations(manager);
                 if (allocationCount > 0) {
                     throw new IllegalStateException("Cannot delete property manager with " + allocationCount + " property allocations");
                 }
                 
                 em.remove(manager);
+                AfterCommit.run(txRegistry, marketStatistics::managerRemoved);
+                String firstName = manager.getFirstName();
+                String lastName = manager.getLastName();
+                AfterCommit.run(txRegistry, () -> {
+                    leaderboard.remove(id);
+                    nameSearchIndex.remove(NameSearchIndex.Kind.MANAGER, id);
+                    autocompleteIndex.managerChanged(firstName, lastName, null, null);
+                });
                 LOGGER.log(Level.INFO, "Deleted property manager with ID: {0}", id);
             } else {
                 LOGGER.log(Level.WARNING, "Attempted to delete non-existent property manager with ID: {0}", id);
@@ -324,6 +440,24 @@ public class PropertyManagerEJB {
         }
     }
 
+    /**
+     * Update the name search and autocomplete indexes with a manager once
+     * the current transaction commits
+     * @param oldFirstName First name before an update, or null for a new manager
+     * @param oldLastName Last name before an update, or null for a new manager
+     * @param manager Persisted manager
+     */
+    private void indexAfterCommit(String oldFirstName, String oldLastName, PropertyManager manager) {
+        long id = manager.getId();
+        String firstName = manager.getFirstName();
+        String lastName = manager.getLastName();
+        String email = manager.getEmail();
+        AfterCommit.run(txRegistry, () -> {
+            nameSearchIndex.putManager(id, firstName, lastName, email);
+            autocompleteIndex.managerChanged(oldFirstName, oldLastName, firstName, lastName);
+        });
+    }
+
     /**
      * Delete a property manager entity
      * @param manager PropertyManager entity to delete
@@ -343,6 +477,9 @@ public class PropertyManagerEJB {
      */
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public long getTotalManagerCount() {
+        if (marketStatistics.isReady()) {
+            return marketStatistics.getManagerCount();
+        }
         try {
             TypedQuery<Long> query = em.createNamedQuery("getTotalManagers", Long.class);
             Long result = query.getSingleResult();
@@ -354,7 +491,8 @@ public class PropertyManagerEJB {
     }
 
     /**
-     * Get total number of properties managed by a specific property manager
+     * Get total number of properties managed by a specific property manager,
+     * from the leaderboard or else the manager's allocation count column
      * @param manager PropertyManager entity
      * @return Number of properties managed
      */
@@ -364,12 +502,19 @@ public class PropertyManagerEJB {
             LOGGER.log(Level.WARNING, "Attempted to get property count for null manager");
             return 0L;
         }
+        if (manager.getId() != null && leaderboard.isReady()) {
+            long count = leaderboard.getCount(manager.getId());
+            if (count >= 0) {
+                return count;
+            }
+        }
         
         try {
-            TypedQuery<Long> query = em.createNamedQuery("getTotalProperties", Long.class);
-            query.setParameter("manager", manager);
-            Long result = query.getSingleResult();
-            return result != null ? result : 0L;
+            TypedQuery<Long> query = em.createNamedQuery("PropertyManager.allocationCount", Long.class);
+            query.setParameter("id", manager.getId());
+            return query.getSingleResult();
+        } catch (NoResultException e) {
+            return 0L;
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error getting property count for manager: " + manager.getId(), e);
             return 0L;
@@ -377,7 +522,20 @@ public class PropertyManagerEJB {
     }
 
     /**
-     * Get property managers with the most properties
+     * Count the allocations of a manager exactly, by counting the rows
+     * @param manager PropertyManager entity
+     * @return Number of allocations
+     */
+    private long countAllocations(PropertyManager manager) {
+        TypedQuery<Long> query = em.createNamedQuery("getTotalProperties", Long.class);
+        query.setParameter("manager", manager);
+        Long result = query.getSingleResult();
+        return result != null ? result : 0L;
+    }
+
+    /**
+     * Get property managers with the most properties, ranked by the
+     * leaderboard or else by the allocation count column
      * @param limit Maximum number of results to return
      * @return List of property managers ordered by property count (descending)
      */
@@ -386,13 +544,15 @@ public class PropertyManagerEJB {
         if (limit <= 0) {
             limit = 10; // Default limit
         }
+
+        if (leaderboard.isReady()) {
+            return findManagersInOrder(leaderboard.top(limit));
+        }
         
         try {
             TypedQuery<PropertyManager> query = em.createQuery(
                 "SELECT pm FROM PropertyManager pm " +
-                "LEFT JOIN pm.allocations a " +
-                "GROUP BY pm " +
-                "ORDER BY COUNT(a) DESC", 
+                "ORDER BY pm.allocationCount DESC, pm.id", 
                 PropertyManager.class);
             
             query.setMaxResults(limit);
@@ -403,6 +563,23 @@ public class PropertyManagerEJB {
         }
     }
 
+    /**
+     * Stream every property manager to an export sink in ID order.
+     * Runs outside a transaction; rows are read in chunks and never kept.
+     * @param sink Destination
+     * @return Number of managers written
+     * @throws IOException if the sink cannot be written
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public long exportManagers(ExportSink sink) throws IOException {
+        sink.header("id", "firstName", "lastName", "phone", "mobile", "email");
+        long count = KeysetExport.stream(em,
+                "SELECT pm.id, pm.firstName, pm.lastName, pm.phone, pm.mobile, pm.email "
+                + "FROM PropertyManager pm WHERE pm.id > :lastId ORDER BY pm.id", sink);
+        LOGGER.log(Level.INFO, "Exported {0} property managers", count);
+        return count;
+    }
+
     /**
      * Validate property manager data
      * @param manager PropertyManager to validate
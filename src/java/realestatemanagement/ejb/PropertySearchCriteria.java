@@ -0,0 +1,218 @@
+package realestatemanagement.ejb;
+
+import java.io.Serializable;
+
+/**
+ * Filter, sort and limit for a property search.
+ * Every field is optional; unset fields do not restrict the search.
+ * The price bounds apply to the weekly rent for rent properties and to the
+ * sale price for sale properties. The furnished flag only applies to rent
+ * properties.
+ *
+ * @author Zhengxu
+ */
+public class PropertySearchCriteria implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Number of results returned when no limit is set */
+    public static final int DEFAULT_LIMIT = 50;
+
+    /** Largest number of results a single search may return */
+    public static final int MAX_LIMIT = 1000;
+
+    /**
+     * Result orderings supported by the search
+     */
+    public enum Sort {
+        PRICE_ASC,
+        PRICE_DESC,
+        BEDROOMS_DESC,
+        NEWEST
+    }
+
+    private String city;
+    private String propertyType;
+    private Long minPrice;
+    private Long maxPrice;
+    private Integer minBedrooms;
+    private Integer maxBedrooms;
+    private Integer minBathrooms;
+    private Boolean furnished;
+    private Long excludeId;
+    private Sort sort = Sort.PRICE_ASC;
+    private int limit = DEFAULT_LIMIT;
+
+    /**
+     * Check that the bounds are consistent
+     * @throws IllegalArgumentException if a minimum is greater than its maximum or a count is negative
+     */
+    public void validate() {
+        if (minPrice != null && maxPrice != null && minPrice > maxPrice) {
+            throw new IllegalArgumentException("Minimum price cannot be greater than maximum price");
+        }
+        if (minBedrooms != null && maxBedrooms != null && minBedrooms > maxBedrooms) {
+            throw new IllegalArgumentException("Minimum bedrooms cannot be greater than maximum bedrooms");
+        }
+        if ((minBedrooms != null && minBedrooms < 0) || (maxBedrooms != null && maxBedrooms < 0)) {
+            throw new IllegalArgumentException("Number of bedrooms cannot be negative");
+        }
+        if (minBathrooms != null && minBathrooms < 0) {
+            throw new IllegalArgumentException("Number of bathrooms cannot be negative");
+        }
+    }
+
+    /**
+     * @return the city, or null if the search is not restricted by city
+     */
+    public String getCity() {
+        return city;
+    }
+
+    /**
+     * @param city the city to set
+     */
+    public void setCity(String city) {
+        this.city = city;
+    }
+
+    /**
+     * @return the propertyType
+     */
+    public String getPropertyType() {
+        return propertyType;
+    }
+
+    /**
+     * @param propertyType the propertyType to set
+     */
+    public void setPropertyType(String propertyType) {
+        this.propertyType = propertyType;
+    }
+
+    /**
+     * @return the minPrice
+     */
+    public Long getMinPrice() {
+        return minPrice;
+    }
+
+    /**
+     * @param minPrice the minPrice to set
+     */
+    public void setMinPrice(Long minPrice) {
+        this.minPrice = minPrice;
+    }
+
+    /**
+     * @return the maxPrice
+     */
+    public Long getMaxPrice() {
+        return maxPrice;
+    }
+
+    /**
+     * @param maxPrice the maxPrice to set
+     */
+    public void setMaxPrice(Long maxPrice) {
+        this.maxPrice = maxPrice;
+    }
+
+    /**
+     * @return the minBedrooms
+     */
+    public Integer getMinBedrooms() {
+        return minBedrooms;
+    }
+
+    /**
+     * @param minBedrooms the minBedrooms to set
+     */
+    public void setMinBedrooms(Integer minBedrooms) {
+        this.minBedrooms = minBedrooms;
+    }
+
+    /**
+     * @return the maxBedrooms
+     */
+    public Integer getMaxBedrooms() {
+        return maxBedrooms;
+    }
+
+    /**
+     * @param maxBedrooms the maxBedrooms to set
+     */
+    public void setMaxBedrooms(Integer maxBedrooms) {
+        this.maxBedrooms = maxBedrooms;
+    }
+
+    /**
+     * @return the minBathrooms
+     */
+    public Integer getMinBathrooms() {
+        return minBathrooms;
+    }
+
+    /**
+     * @param minBathrooms the minBathrooms to set
+     */
+    public void setMinBathrooms(Integer minBathrooms) {
+        this.minBathrooms = minBathrooms;
+    }
+
+    /**
+     * @return the furnished flag, or null for either
+     */
+    public Boolean getFurnished() {
+        return furnished;
+    }
+
+    /**
+     * @param furnished the furnished to set
+     */
+    public void setFurnished(Boolean furnished) {
+        this.furnished = furnished;
+    }
+
+    /**
+     * @return the ID of a property to leave out of the results
+     */
+    public Long getExcludeId() {
+        return excludeId;
+    }
+
+    /**
+     * @param excludeId the excludeId to set
+     */
+    public void setExcludeId(Long excludeId) {
+        this.excludeId = excludeId;
+    }
+
+    /**
+     * @return the sort
+     */
+    public Sort getSort() {
+        return sort;
+    }
+
+    /**
+     * @param sort the sort to set, null restores the default price ordering
+     */
+    public void setSort(Sort sort) {
+        this.sort = sort != null ? sort : Sort.PRICE_ASC;
+    }
+
+    /**
+     * @return the limit
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @param limit the limit to set, clamped to between 1 and {@link #MAX_LIMIT}
+     */
+    public void setLimit(int limit) {
+        this.limit = Math.max(1, Math.min(limit, MAX_LIMIT));
+    }
+}
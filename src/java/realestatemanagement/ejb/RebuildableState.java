@@ -0,0 +1,162 @@
+package realestatemanagement.ejb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * In-memory data of a singleton that is rebuilt from the database while it
+ * keeps being served and written. Reads and writes go through a read-write
+ * lock. Writes made while a rebuild is loading are recorded and replayed
+ * onto the new data before it replaces the current one, so no write is lost
+ * whether the load saw it or not. Each owner states what replaying a write
+ * the load already saw does to its data.
+ *
+ * @param <T> Data type, need not be thread safe
+ * @author Zhengxu
+ */
+final class RebuildableState<T> {
+
+    private final Logger logger;
+    private final String name;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    // guarded by lock
+    private T data;
+    // writes made while a rebuild is loading, replayed onto the new data; guarded by lock
+    private List<Consumer<T>> pending;
+
+    private volatile boolean ready;
+
+    /**
+     * @param logger Logger of the owner
+     * @param name What the data is, for log messages
+     * @param initial Data served until the first rebuild completes, may be null
+     */
+    RebuildableState(Logger logger, String name, T initial) {
+        this.logger = logger;
+        this.name = name;
+        this.data = initial;
+    }
+
+    /**
+     * @return true once a rebuild has completed
+     */
+    boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Read the current data under the read lock
+     * @param query Reads the data; must not modify it
+     * @return Result of the query
+     */
+    <R> R read(Function<T, R> query) {
+        lock.readLock().lock();
+        try {
+            return query.apply(data);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Apply a write to the current data, and replay it onto the data being
+     * loaded by a rebuild in progress
+     * @param change Write
+     */
+    void write(Consumer<T> change) {
+        lock.writeLock().lock();
+        try {
+            change.accept(data);
+            if (pending != null) {
+                pending.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Apply a write to the current data only; a rebuild in progress does not
+     * see it unless its load does
+     * @param change Write
+     */
+    void writeCurrent(Consumer<T> change) {
+        lock.writeLock().lock();
+        try {
+            change.accept(data);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Load new data and replace the current data with it, unless another
+     * rebuild is in progress
+     * @param loader Loads the new data; runs without the lock
+     * @return The new data, or null if the rebuild did not run or failed
+     */
+    T rebuild(Supplier<T> loader) {
+        return rebuild(loader, fresh -> {
+        });
+    }
+
+    /**
+     * Load new data and replace the current data with it, unless another
+     * rebuild is in progress
+     * @param loader Loads the new data; runs without the lock
+     * @param complete Applied to the new data under the lock after the
+     *        recorded writes have been replayed, just before it is swapped in
+     * @return The new data, or null if the rebuild did not run or failed
+     */
+    T rebuild(Supplier<T> loader, Consumer<T> complete) {
+        if (!rebuilding.compareAndSet(false, true)) {
+            logger.log(Level.INFO, "Rebuild of {0} already in progress", name);
+            return null;
+        }
+        try {
+            lock.writeLock().lock();
+            try {
+                pending = new ArrayList<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            T fresh = loader.get();
+
+            lock.writeLock().lock();
+            try {
+                for (Consumer<T> change : pending) {
+                    change.accept(fresh);
+                }
+                complete.accept(fresh);
+                data = fresh;
+                ready = true;
+            } finally {
+                pending = null;
+                lock.writeLock().unlock();
+            }
+            return fresh;
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                pending = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            logger.log(Level.SEVERE, "Error rebuilding " + name, e);
+            return null;
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package realestatemanagement.ejb;
 
+import jakarta.annotation.Resource;
+import jakarta.ejb.EJB;
 import jakarta.ejb.LocalBean;
 import jakarta.ejb.Stateless;
 import jakarta.ejb.TransactionAttribute;
@@ -7,12 +9,20 @@ import jakarta.ejb.TransactionAttributeType;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceException;
 import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import realestatemanagement.model.LookupKey;
 import realestatemanagement.model.User;
 
 /**
@@ -26,10 +36,25 @@ import realestatemanagement.model.User;
 public class UserEJB {
 
     private static final Logger LOGGER = Logger.getLogger(UserEJB.class.getName());
+
+    /** Most users returned by {@link #searchUsersByName} */
+    private static final int SEARCH_LIMIT = Integer.getInteger("realestate.search.limit", 100);
     
     @PersistenceContext(unitName = "RealEstateManagementPU")
     private EntityManager em;
 
+    @EJB
+    private UserExistenceFilter existenceFilter;
+
+    @EJB
+    private NameSearchIndex nameSearchIndex;
+
+    @EJB
+    private VerificationCodeStore codeStore;
+
+    @Resource
+    private TransactionSynchronizationRegistry txRegistry;
+
     /**
      * Find user by ID
      * @param id User ID
@@ -51,7 +76,9 @@ public class UserEJB {
     }
     
     /**
-     * Find user by email address using named query
+     * Find user by email address using named query. Addresses that are
+     * certainly not registered are answered from the {@link UserExistenceFilter}
+     * without a query.
      * @param email User email
      * @return User entity or null if not found
      */
@@ -62,11 +89,18 @@ public class UserEJB {
             return null;
         }
         
+        if (!existenceFilter.mightContainEmail(email)) {
+            return null;
+        }
+        
         try {
             TypedQuery<User> query = em.createNamedQuery("User.findByEmail", User.class);
-            query.setParameter("email", email.trim().toLowerCase());
+            query.setParameter("email", LookupKey.of(email));
             return query.getSingleResult();
         } catch (NoResultException e) {
+            if (existenceFilter.isReady()) {
+                existenceFilter.falsePositive();
+            }
             LOGGER.log(Level.INFO, "No user found with email: " + email);
             return null;
         } catch (Exception e) {
@@ -76,7 +110,8 @@ public class UserEJB {
     }
 
     /**
-     * Find user by username
+     * Find user by username. Usernames that are certainly not registered are
+     * answered from the {@link UserExistenceFilter} without a query.
      * @param username Username
      * @return User entity or null if not found
      */
@@ -87,11 +122,18 @@ public class UserEJB {
             return null;
         }
         
+        if (!existenceFilter.mightContainUsername(username)) {
+            return null;
+        }
+        
         try {
             TypedQuery<User> query = em.createNamedQuery("User.findByUsername", User.class);
-            query.setParameter("username", username.trim());
+            query.setParameter("username", LookupKey.of(username));
             return query.getSingleResult();
         } catch (NoResultException e) {
+            if (existenceFilter.isReady()) {
+                existenceFilter.falsePositive();
+            }
             LOGGER.log(Level.INFO, "No user found with username: " + username);
             return null;
         } catch (Exception e) {
@@ -101,9 +143,15 @@ public class UserEJB {
     }
 
     /**
-     * Create a new user
+     * Create a new user. Uniqueness of the username and email, ignoring case,
+     * is enforced by the UNQ_USER_USERNAME_KEY and UNQ_USER_EMAIL_KEY
+     * constraints: the insert is
+     * attempted straight away and a violation is reported as a
+     * {@link DuplicateUserException}, instead of two lookups beforehand
+     * that would still race with a concurrent registration.
      * @param user User entity to create
      * @return Created user with generated ID
+     * @throws DuplicateUserException if the username or email is taken
      */
     @TransactionAttribute(TransactionAttributeType.REQUIRED)
     public User createUser(User user) {
@@ -114,16 +162,6 @@ public class UserEJB {
         // Validate required fields
         validateUser(user);
         
-        // Check for duplicate email
-        if (findUserByEmail(user.getEmail()) != null) {
-            throw new IllegalArgumentException("User with email " + user.getEmail() + " already exists");
-        }
-        
-        // Check for duplicate username
-        if (findUserByUsername(user.getUsername()) != null) {
-            throw new IllegalArgumentException("User with username " + user.getUsername() + " already exists");
-        }
-        
         try {
             // Set creation timestamp
             user.setSince(new Date());
@@ -131,17 +169,76 @@ public class UserEJB {
             // Normalize email to lowercase
             user.setEmail(user.getEmail().trim().toLowerCase());
             
+            // before the insert, so a concurrent lookup never misses the new user
+            existenceFilter.add(user.getUsername(), user.getEmail());
             em.persist(user);
-            em.flush(); // Force immediate persistence to get generated ID
+            em.flush(); // Force immediate persistence to get generated ID and surface constraint violations
+            indexAfterCommit(user);
             
             LOGGER.log(Level.INFO, "Created new user with ID: " + user.getId());
             return user;
-        } catch (Exception e) {
+        } catch (PersistenceException e) {
+            DuplicateUserException duplicate = toDuplicate(user, e);
+            if (duplicate != null) {
+                LOGGER.log(Level.INFO, duplicate.getMessage());
+                throw duplicate;
+            }
             LOGGER.log(Level.SEVERE, "Error creating user: " + user.getEmail(), e);
             throw new RuntimeException("Failed to create user", e);
         }
     }
 
+    /**
+     * Register a user whose email address is confirmed by a verification
+     * code. The code is used up in the same transaction as the insert, so
+     * two registrations racing with one code cannot both succeed.
+     * @param user User entity to create
+     * @param verificationCode Registration code mailed to the user's email
+     * @return Created user with generated ID
+     * @throws DuplicateUserException if the username or email is taken
+     * @throws InvalidCodeException if the code is wrong, expired or already used
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    public User createUser(User user, String verificationCode) {
+        User created = createUser(user);
+        if (!codeStore.verify(VerificationCodeStore.Purpose.REGISTRATION, created.getEmail(), verificationCode)) {
+            throw new InvalidCodeException("Wrong or expired verification code");
+        }
+        return created;
+    }
+
+    /**
+     * Translate a unique constraint violation on insert
+     * @param user User that was being inserted
+     * @param e Exception thrown by the flush
+     * @return Duplicate exception, or null if the cause was something else
+     */
+    private DuplicateUserException toDuplicate(User user, PersistenceException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (!(cause instanceof SQLException)) {
+                continue;
+            }
+            SQLException sql = (SQLException) cause;
+            // SQLSTATE class 23 is an integrity constraint violation
+            if (!(sql instanceof SQLIntegrityConstraintViolationException)
+                    && (sql.getSQLState() == null || !sql.getSQLState().startsWith("23"))) {
+                continue;
+            }
+            String detail = sql.getMessage() == null ? "" : sql.getMessage().toUpperCase();
+            if (detail.contains("UNQ_USER_USERNAME")) {
+                return new DuplicateUserException(DuplicateUserException.Field.USERNAME,
+                        "User with username " + user.getUsername() + " already exists");
+            }
+            if (detail.contains("UNQ_USER_EMAIL")) {
+                return new DuplicateUserException(DuplicateUserException.Field.EMAIL,
+                        "User with email " + user.getEmail() + " already exists");
+            }
+            return new DuplicateUserException(DuplicateUserException.Field.UNKNOWN,
+                    "User with username " + user.getUsername() + " or email " + user.getEmail() + " already exists");
+        }
+        return null;
+    }
+
     /**
      * Update an existing user
      * @param user User entity to update
@@ -177,7 +274,14 @@ public class UserEJB {
             // Normalize email
             user.setEmail(user.getEmail().trim().toLowerCase());
             
+            // new keys go into the filter now, old ones come out once the rename has committed
+            String oldUsername = existingUser.getUsername().equals(user.getUsername()) ? null : existingUser.getUsername();
+            String oldEmail = existingUser.getEmail().equals(user.getEmail()) ? null : existingUser.getEmail();
+            existenceFilter.add(oldUsername == null ? null : user.getUsername(),
+                    oldEmail == null ? null : user.getEmail());
             User updatedUser = em.merge(user);
+            AfterCommit.run(txRegistry, () -> existenceFilter.remove(oldUsername, oldEmail));
+            indexAfterCommit(updatedUser);
             LOGGER.log(Level.INFO, "Updated user with ID: " + user.getId());
             return updatedUser;
         } catch (Exception e) {
@@ -186,6 +290,56 @@ public class UserEJB {
         }
     }
 
+    /**
+     * Update the name search index with a user once the current
+     * transaction commits
+     * @param user Persisted user
+     */
+    private void indexAfterCommit(User user) {
+        int id = user.getId();
+        String firstName = user.getFirstname();
+        String lastName = user.getLastname();
+        AfterCommit.run(txRegistry, () -> nameSearchIndex.putUser(id, firstName, lastName));
+    }
+
+    /**
+     * Replace the stored password hash of a user, e.g. after upgrading a
+     * legacy hash on login
+     * @param id User ID
+     * @param passwordHash New hash in the format of {@link PasswordHasher}
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    public void updatePasswordHash(Integer id, String passwordHash) {
+        if (id == null || passwordHash == null || passwordHash.isEmpty()) {
+            throw new IllegalArgumentException("User ID and password hash cannot be null");
+        }
+        
+        User user = em.find(User.class, id);
+        if (user == null) {
+            throw new IllegalArgumentException("User with ID " + id + " not found");
+        }
+        user.setPassword(passwordHash);
+        LOGGER.log(Level.INFO, "Updated password hash of user with ID: {0}", id);
+    }
+
+    /**
+     * Set a new password hash for a user who proved access to their email
+     * address with a recovery code. The code is used up in the same
+     * transaction as the update, so it cannot reset the password twice.
+     * @param id User ID
+     * @param passwordHash New hash in the format of {@link PasswordHasher}
+     * @param recoveryCode Recovery code mailed to the user's email
+     * @throws InvalidCodeException if the code is wrong, expired or already used
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    public void resetPasswordHash(Integer id, String passwordHash, String recoveryCode) {
+        updatePasswordHash(id, passwordHash);
+        String email = em.find(User.class, id).getEmail();
+        if (!codeStore.verify(VerificationCodeStore.Purpose.RECOVERY, email, recoveryCode)) {
+            throw new InvalidCodeException("Wrong or expired recovery code");
+        }
+    }
+
     /**
      * Delete a user by ID
      * @param id User ID to delete
@@ -199,7 +353,11 @@ public class UserEJB {
         try {
             User user = findUserById(id);
             if (user != null) {
+                String username = user.getUsername();
+                String email = user.getEmail();
                 em.remove(user);
+                AfterCommit.run(txRegistry, () -> existenceFilter.remove(username, email));
+                AfterCommit.run(txRegistry, () -> nameSearchIndex.remove(NameSearchIndex.Kind.USER, id));
                 LOGGER.log(Level.INFO, "Deleted user with ID: " + id);
             } else {
                 LOGGER.log(Level.WARNING, "Attempted to delete non-existent user with ID: " + id);
@@ -226,13 +384,21 @@ public class UserEJB {
     }
 
     /**
-     * Search users by name
+     * Search users by name. When a name is given, matches are found in the
+     * name search index and ranked there, exact and prefix matches first;
+     * only the best realestate.search.limit (default 100) are loaded.
      * @param firstName First name (can be partial)
      * @param lastName Last name (can be partial)
      * @return List of matching users
      */
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public List<User> searchUsersByName(String firstName, String lastName) {
+        boolean hasName = (firstName != null && !firstName.trim().isEmpty())
+                || (lastName != null && !lastName.trim().isEmpty());
+        if (hasName && nameSearchIndex.isReady()) {
+            return findUsersInOrder(nameSearchIndex.searchUsers(firstName, lastName, SEARCH_LIMIT));
+        }
+
         try {
             StringBuilder queryStr = new StringBuilder("SELECT u FROM User u WHERE 1=1");
             
@@ -261,6 +427,42 @@ public class UserEJB {
         }
     }
 
+    /**
+     * Load users by ID, keeping the order of the IDs
+     * @param ids User IDs
+     * @return Users that still exist, in the order of the IDs
+     */
+    private List<User> findUsersInOrder(long[] ids) {
+        List<User> results = new ArrayList<>(ids.length);
+        if (ids.length == 0) {
+            return results;
+        }
+
+        try {
+            List<Integer> idList = new ArrayList<>(ids.length);
+            for (long id : ids) {
+                idList.add((int) id);
+            }
+            TypedQuery<User> query = em.createQuery("SELECT u FROM User u WHERE u.id IN :ids", User.class);
+            query.setParameter("ids", idList);
+
+            Map<Integer, User> byId = new HashMap<>();
+            for (User user : query.getResultList()) {
+                byId.put(user.getId(), user);
+            }
+            for (long id : ids) {
+                User user = byId.get((int) id);
+                if (user != null) {
+                    results.add(user);
+                }
+            }
+            return results;
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error loading user search results", e);
+            throw new RuntimeException("Failed to search users", e);
+        }
+    }
+
     /**
      * Get total count of users
      * @return Total number of users
@@ -0,0 +1,384 @@
+package realestatemanagement.ejb;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * In-memory counting Bloom filter of the registered usernames and email
+ * addresses, so lookups of names that are not registered, e.g. while a new
+ * user fills in the registration form, are answered without a database
+ * round trip. A negative answer is definite; a positive one means "maybe"
+ * and is confirmed by the indexed lookup in {@link UserEJB}.
+ *
+ * The filter must never answer "no" for a registered user, so it only ever
+ * errs towards "maybe": new keys are added before the insert is flushed,
+ * and keys are removed only after a delete or rename has committed. A
+ * rolled back insert leaves a stale key behind, which the nightly rebuild
+ * from the USER table clears.
+ *
+ * The filter only learns of users registered through this node, so its
+ * negative answers are trusted only when this node is the only one that
+ * registers users: the system property realestate.userfilter.singleNode
+ * must be set to true for that. By default, as on a cluster where a user
+ * registered on another node would be denied here until the next rebuild,
+ * the filter is not built and every lookup goes to the database.
+ *
+ * Sizing: the system properties realestate.userfilter.capacity (expected
+ * number of users, default 100000; the rebuild uses at least twice the
+ * current count) and realestate.userfilter.fpp (target false positive
+ * rate, default 0.01).
+ *
+ * @author Zhengxu
+ */
+@Singleton
+@Startup
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class UserExistenceFilter {
+
+    private static final Logger LOGGER = Logger.getLogger(UserExistenceFilter.class.getName());
+
+    /** Rows read per query while rebuilding */
+    private static final int REBUILD_CHUNK_SIZE = 5000;
+
+    /** How long adds are remembered, to be replayed onto a rebuilt filter */
+    private static final long RECENT_ADD_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final int CAPACITY = Integer.getInteger("realestate.userfilter.capacity", 100_000);
+    private static final double FPP = Double.parseDouble(System.getProperty("realestate.userfilter.fpp", "0.01"));
+    private static final boolean SINGLE_NODE = Boolean.getBoolean("realestate.userfilter.singleNode");
+
+    @PersistenceContext(unitName = "RealEstateManagementPU")
+    private EntityManager em;
+
+    // adds are replayed onto a rebuilt filter, and one the load already saw only
+    // errs towards "maybe"; removes apply to the current filter only, as replaying
+    // one the load did not see could take away the count of another key.
+    // Null until the first rebuild, which is never on a deployment not declared single node
+    private final RebuildableState<CountingBloomFilter> state =
+            new RebuildableState<>(LOGGER, "user filter", null);
+    // keys added during the last minute; an insert in flight while a rebuild
+    // starts may commit after the scan has passed its ID
+    private final ConcurrentLinkedDeque<RecentAdd> recentAdds = new ConcurrentLinkedDeque<>();
+
+    private final LongAdder negatives = Metrics.counter("realestate_user_filter_negatives_total");
+    private final LongAdder positives = Metrics.counter("realestate_user_filter_positives_total");
+    private final LongAdder falsePositives = Metrics.counter("realestate_user_filter_false_positives_total");
+
+    @PostConstruct
+    public void init() {
+        Metrics.gauge("realestate_user_filter_entries", () -> isReady() ? state.read(CountingBloomFilter::size) : 0);
+        // observed rate: lookups the filter could not rule out among those for unregistered keys
+        Metrics.gauge("realestate_user_filter_false_positive_ppm", () -> {
+            long fp = falsePositives.sum();
+            long total = fp + negatives.sum();
+            return total == 0 ? 0 : fp * 1_000_000 / total;
+        });
+        // rate expected from the current fill of the filter
+        Metrics.gauge("realestate_user_filter_expected_false_positive_ppm",
+                () -> isReady() ? Math.round(state.read(CountingBloomFilter::expectedFalsePositiveRate) * 1_000_000) : 0);
+        if (!SINGLE_NODE) {
+            LOGGER.log(Level.INFO, "User filter disabled, set realestate.userfilter.singleNode=true on single node deployments");
+            return;
+        }
+        rebuild();
+    }
+
+    /**
+     * Rebuild the filter from the USER table, clearing stale keys. Lookups
+     * keep using the current filter until the new one is complete.
+     */
+    @Schedule(hour = "3", minute = "40", persistent = false)
+    public void rebuild() {
+        if (!SINGLE_NODE) {
+            return;
+        }
+        long start = System.nanoTime();
+        long[] users = {0};
+        if (state.rebuild(() -> load(users)) != null) {
+            LOGGER.log(Level.INFO, "Rebuilt user filter with {0} users in {1} ms",
+                    new Object[]{users[0], (System.nanoTime() - start) / 1_000_000});
+        }
+    }
+
+    /**
+     * Build a filter of the users in the USER table and the recently added keys
+     * @param users Set to the number of users counted
+     * @return The new filter
+     */
+    private CountingBloomFilter load(long[] users) {
+        users[0] = em.createQuery("SELECT COUNT(u) FROM User u", Long.class).getSingleResult();
+        int capacity = (int) Math.min(Integer.MAX_VALUE / 16, Math.max(CAPACITY, 2 * users[0]));
+        CountingBloomFilter fresh = new CountingBloomFilter(capacity, FPP);
+
+        int lastId = Integer.MIN_VALUE;
+        while (true) {
+            List<Object[]> rows = em.createQuery(
+                    "SELECT u.id, u.username, u.email FROM User u WHERE u.id > :lastId ORDER BY u.id", Object[].class)
+                    .setParameter("lastId", lastId)
+                    .setMaxResults(REBUILD_CHUNK_SIZE)
+                    .getResultList();
+            for (Object[] row : rows) {
+                lastId = (Integer) row[0];
+                addTo(fresh, (String) row[1], (String) row[2]);
+            }
+            em.clear();
+            if (rows.size() < REBUILD_CHUNK_SIZE) {
+                break;
+            }
+        }
+        for (RecentAdd add : recentAdds) {
+            addTo(fresh, add.username, add.email);
+        }
+        return fresh;
+    }
+
+    /**
+     * @return true once the filter has been built and negative answers can
+     *         be trusted, which is never on a deployment not declared single node
+     */
+    public boolean isReady() {
+        return state.isReady() && SINGLE_NODE;
+    }
+
+    /**
+     * @param username Username
+     * @return false if no user with this username is registered, true if one may be
+     */
+    public boolean mightContainUsername(String username) {
+        return mightContain(usernameKey(username));
+    }
+
+    /**
+     * @param email Email address
+     * @return false if no user with this email is registered, true if one may be
+     */
+    public boolean mightContainEmail(String email) {
+        return mightContain(emailKey(email));
+    }
+
+    /**
+     * Record that a "maybe" answer was not confirmed by the database
+     */
+    public void falsePositive() {
+        falsePositives.increment();
+    }
+
+    /**
+     * Add the keys of a user that is about to be inserted or renamed. Call
+     * before the change is flushed.
+     * @param username Username, may be null
+     * @param email Email address, may be null
+     */
+    public void add(String username, String email) {
+        if (!SINGLE_NODE || (username == null && email == null)) {
+            return;
+        }
+        long now = System.nanoTime();
+        recentAdds.addLast(new RecentAdd(username, email, now));
+        for (Iterator<RecentAdd> it = recentAdds.iterator(); it.hasNext(); ) {
+            if (now - it.next().time <= RECENT_ADD_NANOS) {
+                break;
+            }
+            it.remove();
+        }
+
+        state.write(f -> {
+            if (f != null) {
+                addTo(f, username, email);
+            }
+        });
+    }
+
+    /**
+     * Remove the keys of a user that has been deleted or renamed. Call only
+     * after the change has committed.
+     * @param username Username, may be null
+     * @param email Email address, may be null
+     */
+    public void remove(String username, String email) {
+        if (!state.isReady()) {
+            return;
+        }
+        state.writeCurrent(f -> {
+            if (username != null) {
+                f.remove(usernameKey(username));
+            }
+            if (email != null) {
+                f.remove(emailKey(email));
+            }
+        });
+    }
+
+    private boolean mightContain(byte[] key) {
+        if (!isReady()) {
+            return true;
+        }
+        if (state.read(f -> f.mightContain(key))) {
+            positives.increment();
+            return true;
+        }
+        negatives.increment();
+        return false;
+    }
+
+    private static void addTo(CountingBloomFilter target, String username, String email) {
+        if (username != null) {
+            target.add(usernameKey(username));
+        }
+        if (email != null) {
+            target.add(emailKey(email));
+        }
+    }
+
+    // normalized as loosely as the database compares them, so a lookup never misses a stored user
+    private static byte[] usernameKey(String username) {
+        return ("u:" + username.trim().toLowerCase(Locale.ROOT)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] emailKey(String email) {
+        return ("e:" + email.trim().toLowerCase(Locale.ROOT)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class RecentAdd {
+
+        final String username;
+        final String email;
+        final long time;
+
+        RecentAdd(String username, String email, long time) {
+            this.username = username;
+            this.email = email;
+            this.time = time;
+        }
+    }
+
+    // ==================== COUNTING BLOOM FILTER ====================
+
+    /**
+     * Bloom filter with 4 bit counters, packed eight to an int, so keys can
+     * be removed. A counter that reaches 15 sticks there: it can no longer
+     * tell how many keys share it, and decrementing it could cause a false
+     * negative. Positions come from double hashing a 64 bit hash of the key.
+     */
+    private static final class CountingBloomFilter {
+
+        private static final int MAX_COUNT = 15;
+
+        private final AtomicIntegerArray counters;
+        private final int size;
+        private final int hashes;
+        private final LongAdder entries = new LongAdder();
+
+        CountingBloomFilter(int capacity, double fpp) {
+            double bits = -capacity * Math.log(fpp) / (Math.log(2) * Math.log(2));
+            this.size = (int) Math.max(64, Math.min(Integer.MAX_VALUE - 8, Math.ceil(bits)));
+            this.hashes = Math.max(1, (int) Math.round(bits / capacity * Math.log(2)));
+            this.counters = new AtomicIntegerArray((size + 7) / 8);
+        }
+
+        long size() {
+            return entries.sum();
+        }
+
+        double expectedFalsePositiveRate() {
+            return Math.pow(1 - Math.exp(-(double) hashes * Math.max(0, entries.sum()) / size), hashes);
+        }
+
+        void add(byte[] key) {
+            long hash = hash(key);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashes; i++) {
+                increment(index(h1 + i * h2));
+            }
+            entries.increment();
+        }
+
+        void remove(byte[] key) {
+            long hash = hash(key);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashes; i++) {
+                decrement(index(h1 + i * h2));
+            }
+            entries.decrement();
+        }
+
+        boolean mightContain(byte[] key) {
+            long hash = hash(key);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashes; i++) {
+                if (count(index(h1 + i * h2)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int index(int combined) {
+            return (combined & Integer.MAX_VALUE) % size;
+        }
+
+        private int count(int index) {
+            return (counters.get(index >>> 3) >>> ((index & 7) << 2)) & 0xF;
+        }
+
+        private void increment(int index) {
+            int slot = index >>> 3;
+            int shift = (index & 7) << 2;
+            while (true) {
+                int word = counters.get(slot);
+                int count = (word >>> shift) & 0xF;
+                if (count == MAX_COUNT || counters.compareAndSet(slot, word, word + (1 << shift))) {
+                    return;
+                }
+            }
+        }
+
+        private void decrement(int index) {
+            int slot = index >>> 3;
+            int shift = (index & 7) << 2;
+            while (true) {
+                int word = counters.get(slot);
+                int count = (word >>> shift) & 0xF;
+                if (count == 0 || count == MAX_COUNT || counters.compareAndSet(slot, word, word - (1 << shift))) {
+                    return;
+                }
+            }
+        }
+
+        // 64 bit FNV-1a, finished with the MurmurHash3 mixer
+        private static long hash(byte[] key) {
+            long h = 0xcbf29ce484222325L;
+            for (byte b : key) {
+                h ^= b & 0xff;
+                h *= 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb93e7f3a87d7L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package realestatemanagement.ejb;
+
+import jakarta.ejb.Local;
+import java.util.Date;
+
+/**
+ * Shared storage behind {@link VerificationCodeStore}, so a code issued on
+ * one node can be verified on another. The default implementation is
+ * {@link JpaVerificationCodePersistence}; another can be bound in the
+ * deployment descriptor, e.g. backed by a distributed cache.
+ *
+ * Keys are the purpose and normalized email; only hashes of codes are
+ * passed in.
+ *
+ * @author Zhengxu
+ */
+@Local
+public interface VerificationCodePersistence {
+
+    /**
+     * Store a code, replacing any previous code of the key
+     * @param key Purpose and email
+     * @param codeHash Hash of the code
+     * @param expires When the code stops being valid
+     */
+    void save(String key, String codeHash, Date expires);
+
+    /**
+     * Read the current code of a key
+     * @param key Purpose and email
+     * @param now Current time
+     * @return Hash of the code, or null if there is none or it has expired
+     */
+    String find(String key, Date now);
+
+    /**
+     * Atomically use up a code: succeeds for exactly one caller, and only
+     * while the code is the current one of the key and has not expired.
+     * Runs in the caller's transaction, so the code is used up exactly when
+     * the change it authorizes commits
+     * @param key Purpose and email
+     * @param codeHash Hash of the code entered
+     * @param now Current time
+     * @return true if the code was valid and is now consumed
+     */
+    boolean consume(String key, String codeHash, Date now);
+
+    /**
+     * Remove every code that has expired
+     * @param now Current time
+     * @return Number of codes removed
+     */
+    int purgeExpired(Date now);
+}
@@ -0,0 +1,381 @@
+package realestatemanagement.ejb;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Application wide store of the verification and recovery codes mailed to
+ * users, replacing the copy previously kept in the HTTP session. Codes
+ * expire after a fixed time and can be used once.
+ *
+ * Codes issued on this node are kept in memory for a constant time lookup;
+ * expiry is driven by a hashed timing wheel rather than a timer per code.
+ * Every code is also written through to the {@link VerificationCodePersistence},
+ * so it can be verified on any node. {@link #check} only reads a code, to
+ * reject a wrong one early; {@link #verify} uses it up with a conditional
+ * delete in the transaction of the change it authorizes, so exactly one
+ * change can commit with it across the cluster. With realestate.codes.shared
+ * set to false the store works from memory alone, for a single node.
+ *
+ * Memory is bounded by realestate.codes.max (default 100000 codes). When it
+ * is reached, new codes are only kept in the shared storage, or refused if
+ * there is none. Codes are valid for realestate.codes.ttl seconds (default
+ * 900). Only SHA-256 hashes of the codes are held.
+ *
+ * @author Zhengxu
+ */
+@Singleton
+@Startup
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class VerificationCodeStore {
+
+    private static final Logger LOGGER = Logger.getLogger(VerificationCodeStore.class.getName());
+
+    /**
+     * What a code was issued for
+     */
+    public enum Purpose {
+        /** Confirms the email address of a new user */
+        REGISTRATION,
+        /** Allows a user to set a new password */
+        RECOVERY
+    }
+
+    /** Length of a generated code */
+    public static final int CODE_LENGTH = 20;
+
+    private static final String CODE_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+            + "1234567890"
+            + "abcdefghijklmnopqrstuvwxyz"
+            + "!@#$%&*-+=?";
+
+    // SecureRandom is thread safe but contended; one instance per thread
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(SecureRandom::new);
+
+    private static final long TTL_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("realestate.codes.ttl", 900));
+    private static final int MAX_CODES = Integer.getInteger("realestate.codes.max", 100_000);
+    private static final boolean SHARED = Boolean.parseBoolean(System.getProperty("realestate.codes.shared", "true"));
+
+    @EJB
+    private VerificationCodePersistence persistence;
+
+    @Resource
+    private TransactionSynchronizationRegistry txRegistry;
+
+    private final ConcurrentHashMap<String, Entry> codes = new ConcurrentHashMap<>();
+    private final TimingWheel wheel = new TimingWheel(512, TimeUnit.SECONDS.toNanos(1));
+
+    private final LongAdder issued = Metrics.counter("realestate_codes_issued_total");
+    private final LongAdder verified = Metrics.counter("realestate_codes_verified_total");
+    private final LongAdder rejected = Metrics.counter("realestate_codes_rejected_total");
+    private final LongAdder expired = Metrics.counter("realestate_codes_expired_total");
+
+    @PostConstruct
+    public void init() {
+        Metrics.gauge("realestate_codes_held", codes::size);
+    }
+
+    /**
+     * Generate a random code from a pooled secure generator
+     * @return Code of {@link #CODE_LENGTH} characters
+     */
+    public static String generateCode() {
+        SecureRandom random = RANDOM.get();
+        char[] code = new char[CODE_LENGTH];
+        for (int i = 0; i < code.length; i++) {
+            code[i] = CODE_CHARS.charAt(random.nextInt(CODE_CHARS.length()));
+        }
+        return new String(code);
+    }
+
+    /**
+     * Issue a new code for an email address, replacing any previous code
+     * for the same purpose
+     * @param purpose What the code is for
+     * @param email Email address the code is mailed to
+     * @return The code
+     * @throws IllegalStateException if the code cannot be stored
+     */
+    public String issue(Purpose purpose, String email) {
+        String key = key(purpose, email);
+        String code = generateCode();
+        byte[] hash = hash(code);
+        long now = System.nanoTime();
+        wheel.advance(now, this::expire);
+
+        if (SHARED) {
+            persistence.save(key, toHex(hash), new Date(System.currentTimeMillis() + TimeUnit.NANOSECONDS.toMillis(TTL_NANOS)));
+        }
+        if (codes.size() < MAX_CODES) {
+            Entry entry = new Entry(key, hash, now + TTL_NANOS);
+            codes.put(key, entry);
+            wheel.schedule(entry);
+        } else if (!SHARED) {
+            throw new IllegalStateException("Too many outstanding codes, please try again later.");
+        } else {
+            // kept in the shared storage only; remove any older code held here
+            codes.remove(key);
+        }
+        issued.increment();
+        return code;
+    }
+
+    /**
+     * Use up a code entered by the user, as part of the caller's transaction:
+     * call it once the change the code authorizes has been written. Only one
+     * caller can use a code; if the caller's transaction rolls back, the code
+     * stays valid. Unlike {@link #check} there is no local fallback, since a
+     * code used on another node must never be accepted here.
+     * @param purpose What the code is for
+     * @param email Email address the code was mailed to
+     * @param code Code entered
+     * @return true if the code was the current, unexpired one for the email
+     *         and is now used up; false if it was wrong or has been used or
+     *         replaced concurrently
+     */
+    public boolean verify(Purpose purpose, String email, String code) {
+        if (email == null || code == null || code.isEmpty()) {
+            rejected.increment();
+            return false;
+        }
+        String key = key(purpose, email);
+        byte[] hash = hash(code.trim());
+
+        Entry entry = codes.get(key);
+        boolean valid;
+        if (SHARED) {
+            // the shared row decides: it may have been used or replaced on another node
+            valid = persistence.consume(key, toHex(hash), new Date());
+            if (valid && entry != null) {
+                onCompletion(committed -> {
+                    if (committed) {
+                        codes.remove(key, entry);
+                    }
+                });
+            }
+        } else {
+            valid = entry != null && System.nanoTime() - entry.deadline < 0 && MessageDigest.isEqual(entry.hash, hash)
+                    && codes.remove(key, entry);
+            if (valid) {
+                onCompletion(committed -> {
+                    if (!committed) {
+                        codes.putIfAbsent(key, entry);
+                    }
+                });
+            }
+        }
+        if (valid) {
+            verified.increment();
+        } else {
+            rejected.increment();
+        }
+        return valid;
+    }
+
+    /**
+     * Check a code entered by the user without using it up, to reject a
+     * wrong code before doing any work; the change must still use it up with
+     * {@link #verify}
+     * @param purpose What the code is for
+     * @param email Email address the code was mailed to
+     * @param code Code entered
+     * @return true if the code is the current, unexpired one for the email
+     */
+    public boolean check(Purpose purpose, String email, String code) {
+        if (email == null || code == null || code.isEmpty()) {
+            rejected.increment();
+            return false;
+        }
+        String key = key(purpose, email);
+        byte[] hash = hash(code.trim());
+
+        Entry entry = codes.get(key);
+        boolean valid = entry != null && System.nanoTime() - entry.deadline < 0 && MessageDigest.isEqual(entry.hash, hash);
+        if (SHARED) {
+            try {
+                String shared = persistence.find(key, new Date());
+                valid = shared != null && MessageDigest.isEqual(
+                        shared.getBytes(StandardCharsets.US_ASCII), toHex(hash).getBytes(StandardCharsets.US_ASCII));
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Shared code storage unavailable, checking " + key + " locally", e);
+            }
+        }
+        if (!valid) {
+            rejected.increment();
+        }
+        return valid;
+    }
+
+    /**
+     * Run an action when the current transaction completes, or straight away
+     * as committed if there is none
+     * @param action Receives whether the transaction committed
+     */
+    private void onCompletion(Consumer<Boolean> action) {
+        if (txRegistry.getTransactionKey() == null) {
+            action.accept(true);
+            return;
+        }
+        txRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                action.accept(status == Status.STATUS_COMMITTED);
+            }
+        });
+    }
+
+    /**
+     * Expire codes whose time has passed, also while no codes are issued,
+     * and purge them from the shared storage
+     */
+    @Schedule(hour = "*", minute = "*/10", persistent = false)
+    public void purgeExpired() {
+        wheel.advance(System.nanoTime(), this::expire);
+        if (SHARED) {
+            try {
+                persistence.purgeExpired(new Date());
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Error purging expired verification codes", e);
+            }
+        }
+    }
+
+    private void expire(Entry entry) {
+        if (codes.remove(entry.key, entry)) {
+            expired.increment();
+        }
+    }
+
+    private static String key(Purpose purpose, String email) {
+        if (email == null || email.trim().isEmpty()) {
+            throw new IllegalArgumentException("Email is required");
+        }
+        return purpose + ":" + email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static byte[] hash(String code) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(code.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static final class Entry {
+
+        final String key;
+        final byte[] hash;
+        final long deadline;
+        // wheel tick at which the entry expires
+        long tick;
+
+        Entry(String key, byte[] hash, long deadline) {
+            this.key = key;
+            this.hash = hash;
+            this.deadline = deadline;
+        }
+    }
+
+    // ==================== TIMING WHEEL ====================
+
+    /**
+     * Hashed timing wheel: a ring of slots, one per tick. An entry goes into
+     * the slot of the tick at which it expires, modulo the ring size, and is
+     * expired when the wheel passes that slot in the right round. Scheduling
+     * is constant time and advancing only visits the slots passed. The wheel
+     * is advanced by whichever thread gets there first; others skip it. A
+     * code that is used up or replaced stays in its slot until its deadline.
+     */
+    private static final class TimingWheel {
+
+        private final ConcurrentLinkedQueue<Entry>[] slots;
+        private final long tickNanos;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final long origin = System.nanoTime();
+        // last tick processed; guarded by lock
+        private long currentTick;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        TimingWheel(int size, long tickNanos) {
+            this.slots = new ConcurrentLinkedQueue[size];
+            for (int i = 0; i < size; i++) {
+                slots[i] = new ConcurrentLinkedQueue<>();
+            }
+            this.tickNanos = tickNanos;
+        }
+
+        private long tickOf(long nanos) {
+            return (nanos - origin) / tickNanos;
+        }
+
+        void schedule(Entry entry) {
+            // the tick after the deadline, so an entry is never expired early
+            entry.tick = tickOf(entry.deadline) + 1;
+            slots[(int) (entry.tick % slots.length)].add(entry);
+        }
+
+        void advance(long now, Consumer<Entry> expire) {
+            if (!lock.tryLock()) {
+                return;
+            }
+            try {
+                long target = tickOf(now);
+                // after a long pause every slot is visited once
+                long steps = Math.min(target - currentTick, slots.length);
+                for (long i = 1; i <= steps; i++) {
+                    ConcurrentLinkedQueue<Entry> slot = slots[(int) ((currentTick + i) % slots.length)];
+                    for (Iterator<Entry> it = slot.iterator(); it.hasNext(); ) {
+                        Entry entry = it.next();
+                        if (entry.tick <= target) {
+                            it.remove();
+                            expire.accept(entry);
+                        }
+                    }
+                }
+                if (target > currentTick) {
+                    currentTick = target;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
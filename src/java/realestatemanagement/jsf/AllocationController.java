@@ -1,17 +1,19 @@
 package realestatemanagement.jsf;
 
-import jakarta.annotation.PostConstruct;
 import jakarta.ejb.EJB;
  import jakarta.faces.application.FacesMessage;
 import jakarta.faces.context.FacesContext;
 import jakarta.faces.view.ViewScoped;
 import jakarta.inject.Named;
 
+import realestatemanagement.ejb.AllocationConflictException;
 import realestatemanagement.ejb.AllocationEJB;
+import realestatemanagement.ejb.AllocationSummary;
 import realestatemanagement.model.Allocation;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import realestatemanagement.ejb.FetchProfile;
 import realestatemanagement.ejb.PropertyEJB;
 import realestatemanagement.ejb.PropertyManagerEJB;
 import realestatemanagement.model.PropertyManager;
@@ -28,7 +30,8 @@ import realestatemanagement.model.Property;
 @ViewScoped
 public class AllocationController implements  java.io.Serializable {
 
-    private String total;
+    private static final int PAGE_SIZE = 20;
+
     @EJB
     private AllocationEJB allocationEJB;
     @EJB
@@ -37,44 +40,63 @@ public class AllocationController implements  java.io.Serializable {
     private PropertyEJB propertyEJB;
     private Allocation allocation = new Allocation();
     
-    private List<Allocation> allocationList = new ArrayList<>();
-    private List<PropertyManager> managerList = new ArrayList<>();
-    private List<RentProperty> rentProperties = new ArrayList<>();
-    private List<SaleProperty> saleProperties = new ArrayList<>();
+    // Each list is loaded on first use by the page that renders it and then
+    // kept in step with this view's own creates and deletes; null means not loaded
+    private PagedListModel<AllocationSummary> allocations;
+    private List<AllocationSummary> allocationList;
+    private List<PropertyManager> managerList;
+    private List<RentProperty> rentProperties;
+    private List<SaleProperty> saleProperties;
     private Long propertyManagerId;
     private Long rentPropertyId;
     private Long salePropertyId;
-    private int totalCount;
-    @PostConstruct
-    public void init() {
-        /*setManagerList((List<PropertyManager>) propertyManagerEJB.findManagers());
-        setAllocationList(allocationEJB.findAllocations());
-        setTotal(String.valueOf(getAllocationList().size()));
-        setRentProperties(propertyEJB.findAllRentProperties());
-        setSaleProperties(propertyEJB.findAllSaleProperties());*/
-        
-        refreshLists();
+    private Integer totalCount;
+
+    /**
+     * Apply a newly created allocation to the lists already loaded by this view
+     * @param created Persisted allocation
+     */
+    private void allocationAdded(Allocation created) {
+        if (allocations != null) {
+            allocations.invalidate();
+        }
+        if (allocationList != null) {
+            allocationList.add(AllocationSummary.of(created));
+        }
+        if (totalCount != null) {
+            totalCount++;
+        }
     }
-    private void refreshLists() {
-        managerList = propertyManagerEJB.findManagers();
-        allocationList = allocationEJB.findAllocations();
-        rentProperties = propertyEJB.findAllRentProperties();
-        saleProperties = propertyEJB.findAllSaleProperties();
-        totalCount = allocationList.size();
+
+    /**
+     * Remove a deleted allocation from the lists already loaded by this view
+     * @param deleted Deleted allocation
+     */
+    private void allocationRemoved(AllocationSummary deleted) {
+        if (allocations != null) {
+            allocations.invalidate();
+        }
+        if (allocationList != null) {
+            allocationList.removeIf(a -> a.getId() != null && a.getId().equals(deleted.getId()));
+        }
+        if (totalCount != null && totalCount > 0) {
+            totalCount--;
+        }
     }
+
     public String doCreateAllocation(Allocation allocation) {
 
         FacesContext context = FacesContext.getCurrentInstance();
-        allocationEJB.createAllocation(this.getAllocation());
+        Allocation created = allocationEJB.createAllocation(this.getAllocation());
         //setAllocationList(allocationEJB.findAllocations());
         context.addMessage(null, new FacesMessage(FacesMessage.SEVERITY_INFO, "Allocation has been created", "Allocation has been created successfully"));
-        refreshLists();
+        allocationAdded(created);
         this.allocation = new Allocation();
         return "allocationList.xhtml";
     }
 
     public String doSearchAllocation() {
-        Allocation foundAllocation = allocationEJB.findAllocationsById(getAllocation().getId());
+        AllocationSummary foundAllocation = allocationEJB.findAllocationSummaryById(getAllocation().getId());
 
         if (foundAllocation == null){
             FacesContext.getCurrentInstance().addMessage("searchForm:", new FacesMessage("Allocation Not Found!"));
@@ -83,17 +105,16 @@ public class AllocationController implements  java.io.Serializable {
         else {
             allocationList = new ArrayList<>();
             allocationList.add(foundAllocation);
-            totalCount = allocationList.size();
             return "foundAllocation.xhtml";
         }
     }
 
-    public String doDeleteAllocation(Allocation allocation) {
+    public String doDeleteAllocation(AllocationSummary allocation) {
         FacesContext context = FacesContext.getCurrentInstance();
         try {
-            allocationEJB.deleteAllocation(allocation);
+            allocationEJB.deleteAllocationById(allocation.getId());
             context.addMessage(null, new FacesMessage(FacesMessage.SEVERITY_INFO, "Allocation has been deleted", "Allocation has been deleted successfully"));
-            refreshLists();
+            allocationRemoved(allocation);
         } catch (Exception e) {
             context.addMessage("error", new FacesMessage(FacesMessage.SEVERITY_ERROR, "Allocation hasn't been deleted", e.getMessage()));
         }
@@ -102,8 +123,7 @@ public class AllocationController implements  java.io.Serializable {
     }
 
     public String redirectToPropertyManager(Long propertyManagerId) {
-        FacesContext.getCurrentInstance().getExternalContext().getFlash().put("propertyManagerId", propertyManagerId);
-        return "viewManager?faces-redirect=true";
+        return "viewManager?faces-redirect=true&managerId=" + propertyManagerId;
     }
 
     public String redirectToProperty(Long id) {
@@ -114,11 +134,37 @@ public class AllocationController implements  java.io.Serializable {
         return allocationEJB.countAllocations();
     }
 
-    public List<Allocation> getAllocationList() {
+    /**
+     * @return the paged allocation table, positioned by the request parameters of the first render
+     */
+    public PagedListModel<AllocationSummary> getAllocations() {
+        if (allocations == null) {
+            allocations = new PagedListModel<AllocationSummary>(PAGE_SIZE, false, "id", "creationTime") {
+                @Override
+                protected List<AllocationSummary> load(int first, int pageSize, String sortField, boolean ascending) {
+                    return allocationEJB.findAllocationSummariesPage(first, pageSize, sortField, ascending);
+                }
+
+                @Override
+                protected long count() {
+                    return allocationEJB.countAllocations();
+                }
+            }.fromRequest();
+        }
+        return allocations;
+    }
+
+    /**
+     * @return the allocations found by the last search
+     */
+    public List<AllocationSummary> getAllocationList() {
+        if (allocationList == null) {
+            allocationList = allocationEJB.findAllocationSummaries();
+        }
         return allocationList;
     }
 
-    public void setAllocationList(List<Allocation> allocationList) {
+    public void setAllocationList(List<AllocationSummary> allocationList) {
         this.allocationList = allocationList;
     }
 
@@ -130,18 +176,23 @@ public class AllocationController implements  java.io.Serializable {
         this.allocation = allocation;
     }
 
+    /**
+     * @return the total number of allocations, counted by the database once per view
+     */
     public String getTotal() {
-        return total;
-    }
-
-    public void setTotal(String total) {
-        this.total = total;
+        if (totalCount == null) {
+            totalCount = allocationEJB.countAllocations();
+        }
+        return String.valueOf(totalCount);
     }
 
     /**
      * @return the managerList
      */
     public List<PropertyManager> getManagerList() {
+        if (managerList == null) {
+            managerList = propertyManagerEJB.findAllManagers();
+        }
         return managerList;
     }
 
@@ -156,6 +207,9 @@ public class AllocationController implements  java.io.Serializable {
      * @return the rentProperties
      */
     public List<RentProperty> getRentProperties() {
+        if (rentProperties == null) {
+            rentProperties = propertyEJB.findAllRentProperties(FetchProfile.BATCH_ADDRESS);
+        }
         return rentProperties;
     }
 
@@ -170,6 +224,9 @@ public class AllocationController implements  java.io.Serializable {
      * @return the saleProperties
      */
     public List<SaleProperty> getSaleProperties() {
+        if (saleProperties == null) {
+            saleProperties = propertyEJB.findAllSaleProperties(FetchProfile.BATCH_ADDRESS);
+        }
         return saleProperties;
     }
 
@@ -186,9 +243,17 @@ public class AllocationController implements  java.io.Serializable {
         allocation.setPropertyManager(propertyManagerEJB.findPropertyManagerById(propertyManagerId));
         allocation.setProperty(property);
         allocation.setCreationTime(new Date());
-        
-        allocationEJB.createAllocation(allocation);
-        refreshLists();
+
+        try {
+            allocationAdded(allocationEJB.createAllocation(allocation));
+        } catch (AllocationConflictException e) {
+            // someone else allocated the property first; stay on the form so another can be picked
+            FacesContext.getCurrentInstance().addMessage(null,
+                    new FacesMessage(FacesMessage.SEVERITY_ERROR, e.getMessage(), "Allocation hasn't been created"));
+            rentProperties = null;
+            saleProperties = null;
+            return null;
+        }
         return "allocationList.xhtml?faces-redirect=true";
     }
     public String doNewRentPropertyAllocation() {
@@ -0,0 +1,215 @@
+package realestatemanagement.jsf;
+
+import jakarta.faces.context.FacesContext;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Server side paginated, sortable data provider for h:dataTable views.
+ * Only the rows of the current page are loaded and kept; the row count is
+ * asked for separately with a COUNT query. The page position and sort are
+ * read from the GET parameters "first", "sort", "asc" and, for keyset
+ * paginated listings, "after", so every page is bookmarkable and rendered
+ * by WEB-INF/includes/pager.xhtml with plain links.
+ *
+ * @param <T> Row type
+ * @author Zhengxu
+ */
+public abstract class PagedListModel<T> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int pageSize;
+    private final boolean keyset;
+    private final List<String> sortFields;
+
+    private int first;
+    private String sortField;
+    private boolean ascending = true;
+    private String cursor;
+    private String nextCursor;
+
+    private List<T> page;
+    private Long rowCount;
+
+    /**
+     * @param pageSize Number of rows per page
+     * @param keyset true if pages are addressed by a keyset cursor instead of an offset
+     * @param sortFields Sort keys the model accepts; the first one is the default
+     */
+    protected PagedListModel(int pageSize, boolean keyset, String... sortFields) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be greater than 0");
+        }
+        if (sortFields.length == 0) {
+            throw new IllegalArgumentException("At least one sort field is required");
+        }
+        this.pageSize = pageSize;
+        this.keyset = keyset;
+        this.sortFields = Collections.unmodifiableList(Arrays.asList(sortFields));
+        this.sortField = sortFields[0];
+    }
+
+    /**
+     * Load the rows of one page
+     * @param first Offset of the first row, always 0 for keyset models
+     * @param pageSize Maximum number of rows
+     * @param sortField Sort key, one of the whitelisted sort fields
+     * @param ascending Sort direction
+     * @return Rows of the page
+     */
+    protected abstract List<T> load(int first, int pageSize, String sortField, boolean ascending);
+
+    /**
+     * Count all rows
+     * @return Total number of rows
+     */
+    protected abstract long count();
+
+    /**
+     * Take the page position and sort from the current request parameters.
+     * Unknown sort keys and negative offsets fall back to the defaults.
+     * @return this model
+     */
+    public PagedListModel<T> fromRequest() {
+        Map<String, String> params = FacesContext.getCurrentInstance().getExternalContext().getRequestParameterMap();
+        String sort = params.get("sort");
+        if (sort != null && sortFields.contains(sort)) {
+            sortField = sort;
+        }
+        ascending = !"false".equals(params.get("asc"));
+        if (keyset) {
+            String after = params.get("after");
+            cursor = after != null && !after.isEmpty() ? after : null;
+        } else {
+            try {
+                first = Math.max(0, Integer.parseInt(params.getOrDefault("first", "0")));
+            } catch (NumberFormatException e) {
+                first = 0;
+            }
+        }
+        invalidate();
+        return this;
+    }
+
+    /**
+     * Forget the loaded page and row count so both are read again on next use,
+     * e.g. after a row has been created or deleted
+     */
+    public void invalidate() {
+        page = null;
+        rowCount = null;
+        nextCursor = null;
+    }
+
+    /**
+     * @return the rows of the current page, loaded on first use
+     */
+    public List<T> getPage() {
+        if (page == null) {
+            if (!keyset && first > 0 && first >= getRowCount()) {
+                // past the end, e.g. after the last row of the last page was deleted
+                first = getLastFirst();
+            }
+            page = load(first, pageSize, sortField, ascending);
+        }
+        return page;
+    }
+
+    /**
+     * @return the total number of rows, counted on first use
+     */
+    public long getRowCount() {
+        if (rowCount == null) {
+            rowCount = count();
+        }
+        return rowCount;
+    }
+
+    /**
+     * Record the cursor of the page following the one just loaded.
+     * Called by keyset models from {@link #load}.
+     * @param nextCursor Cursor of the next page, or null on the last page
+     */
+    protected void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @return the keyset cursor of the current page, null for the first page
+     */
+    protected String getCursor() {
+        return cursor;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public boolean isKeyset() {
+        return keyset;
+    }
+
+    public String getSortField() {
+        return sortField;
+    }
+
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    public int getFirst() {
+        return first;
+    }
+
+    public boolean isFirstPage() {
+        return keyset ? cursor == null : first == 0;
+    }
+
+    public boolean isHasNext() {
+        if (keyset) {
+            getPage();
+            return nextCursor != null;
+        }
+        return first + pageSize < getRowCount();
+    }
+
+    public String getNextCursor() {
+        getPage();
+        return nextCursor;
+    }
+
+    public int getNextFirst() {
+        return first + pageSize;
+    }
+
+    public int getPreviousFirst() {
+        return Math.max(0, first - pageSize);
+    }
+
+    public int getLastFirst() {
+        long count = getRowCount();
+        return count == 0 ? 0 : (int) ((count - 1) / pageSize * pageSize);
+    }
+
+    public int getPageNumber() {
+        return first / pageSize + 1;
+    }
+
+    public int getPageCount() {
+        return (int) Math.max(1, (getRowCount() + pageSize - 1) / pageSize);
+    }
+
+    /**
+     * Direction a column header link should request: the reverse of the
+     * current direction if the column is the current sort, ascending otherwise
+     * @param field Sort key of the column
+     * @return true for ascending
+     */
+    public boolean ascendingFor(String field) {
+        return !field.equals(sortField) || !ascending;
+    }
+}
@@ -12,6 +12,7 @@ import jakarta.inject.Named;
 import jakarta.enterprise.context.RequestScoped;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import realestatemanagement.ejb.*;
 import realestatemanagement.model.*;
@@ -24,6 +25,8 @@ import realestatemanagement.model.*;
 @RequestScoped
 public class PropertyManagerController {
 
+    private static final int PAGE_SIZE = 20;
+
     @EJB
     private PropertyManagerEJB propertyManagerEJB;
 
@@ -40,21 +43,72 @@ public class PropertyManagerController {
     private String total;
 
     private List<PropertyManager> managerList = new ArrayList<>();
+    private PagedListModel<PropertyManager> managers;
+    private PagedListModel<AllocationSummary> allocations;
 
     private String numberOfAllocations = String.valueOf(0);
  
     @PostConstruct
     public void init() {
-        managerList = propertyManagerEJB.findManagers();
-        total = String.valueOf(managerList.size());
-
+        // viewManager.xhtml is opened with ?managerId=..., older links pass the ID in the flash
+        Map<String, String> params = FacesContext.getCurrentInstance().getExternalContext().getRequestParameterMap();
         Long propertyManagerId = (Long) FacesContext.getCurrentInstance().getExternalContext().getFlash().get("propertyManagerId");
+        if (propertyManagerId == null && params.get("managerId") != null) {
+            try {
+                propertyManagerId = Long.valueOf(params.get("managerId"));
+            } catch (NumberFormatException e) {
+                propertyManagerId = null;
+            }
+        }
         if (propertyManagerId != null) {
-            manager = propertyManagerEJB.findPropertyManagerById(propertyManagerId);
-            List<Allocation> allocations = allocationEJB.findAllocationsByPropertyManagerId(manager.getId());
-            manager.setAllocations(allocations);
-            numberOfAllocations = String.valueOf(allocations.size());
+            PropertyManager found = propertyManagerEJB.findPropertyManagerById(propertyManagerId);
+            if (found != null) {
+                manager = found;
+                numberOfAllocations = String.valueOf(allocationEJB.countAllocationsByPropertyManagerId(manager.getId()));
+            }
+        }
+    }
+
+    /**
+     * @return the paged table of all property managers
+     */
+    public PagedListModel<PropertyManager> getManagers() {
+        if (managers == null) {
+            managers = new PagedListModel<PropertyManager>(PAGE_SIZE, false, "id", "firstName", "lastName") {
+                @Override
+                protected List<PropertyManager> load(int first, int pageSize, String sortField, boolean ascending) {
+                    return propertyManagerEJB.findManagersPage(first, pageSize, sortField, ascending);
+                }
+
+                @Override
+                protected long count() {
+                    return propertyManagerEJB.getTotalManagerCount();
+                }
+            }.fromRequest();
         }
+        return managers;
+    }
+
+    /**
+     * @return the paged table of the allocations of the viewed manager
+     */
+    public PagedListModel<AllocationSummary> getAllocations() {
+        if (allocations == null) {
+            final Long managerId = manager.getId();
+            allocations = new PagedListModel<AllocationSummary>(PAGE_SIZE, false, "id", "creationTime") {
+                @Override
+                protected List<AllocationSummary> load(int first, int pageSize, String sortField, boolean ascending) {
+                    return managerId == null ? new ArrayList<>()
+                            : allocationEJB.findAllocationSummariesByPropertyManagerIdPage(managerId, first, pageSize, sortField, ascending);
+                }
+
+                @Override
+                protected long count() {
+                    return managerId == null ? 0L : allocationEJB.countAllocationsByPropertyManagerId(managerId);
+                }
+            }.fromRequest();
+        }
+        return allocations;
     }
 
     public String doCreateManager() {
@@ -80,19 +134,10 @@ public class PropertyManagerController {
             return null;
         }
         propertyManagerEJB.createManager(getManager());
-        //after creating the manager, update the manager list
-        setManagerList((List<PropertyManager>) propertyManagerEJB.findManagers());
-        setTotal(String.valueOf(managerList.size())); //update the total manager number
+        // the manager list page loads its first page itself
         return "listManager.xhtml";
     }
 
-
-    public String view(PropertyManager manager) {
-        this.setManager(manager);
-        numberOfAllocations = String.valueOf(allocationEJB.findAllocationsByPropertyManagerId(manager.getId()).size());
-        return "viewManager.xhtml";
-    }
-
     public String doSearchManager() {
         if (getManager().getFirstName() == null || "".equals(getManager().getFirstName())) {
             FacesContext.getCurrentInstance().addMessage("searchForm:", new FacesMessage("First Name is required"));
@@ -102,11 +147,12 @@ public class PropertyManagerController {
             FacesContext.getCurrentInstance().addMessage("searchForm:", new FacesMessage("Last Name is required"));
             return null;
         }
-        managerList = propertyManagerEJB.searchManager(getManager().getFirstName(), getManager().getLastName());
+        managerList = propertyManagerEJB.searchManagerByName(getManager().getFirstName(), getManager().getLastName());
         if (managerList.isEmpty()) {
             FacesContext.getCurrentInstance().addMessage("searchForm:", new FacesMessage("Manager not Found"));
             return null;
         }
+        total = String.valueOf(managerList.size());
 
       
         return "foundManager.xhtml";
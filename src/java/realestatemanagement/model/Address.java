@@ -5,13 +5,22 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.TableGenerator;
 
  
 @Entity
+// City lookups from the property search join through this index
+@Table(indexes = {
+    @Index(name = "IDX_ADDRESS_CITY", columnList = "CITY")
+})
 public class Address  {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @TableGenerator(name = "ADDRESS_GEN", table = "ID_GENERATOR", pkColumnName = "GEN_NAME",
+            valueColumnName = "GEN_VALUE", pkColumnValue = "ADDRESS", allocationSize = 1000)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "ADDRESS_GEN")
     @Column(name = "ID", nullable = false)
     private int id;
     
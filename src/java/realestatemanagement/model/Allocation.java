@@ -6,7 +6,15 @@ import java.util.Date;
 
  
 @Entity
-
+//a property has at most one allocation; the insert itself is the check (see AllocationEJB.createAllocation)
+@Table(uniqueConstraints = @UniqueConstraint(name = "UNQ_ALLOCATION_PROPERTY", columnNames = "property_id"),
+        // the allocation tables sort by it
+        indexes = @Index(name = "IDX_ALLOCATION_CREATION_TIME", columnList = "CREATIONTIME"))
+//Associations are lazy; queries that need them say so with this graph or a fetch join
+@NamedEntityGraph(name = "Allocation.withManagerAndProperty", attributeNodes = {
+    @NamedAttributeNode("propertyManager"),
+    @NamedAttributeNode(value = "property", subgraph = "property")
+}, subgraphs = @NamedSubgraph(name = "property", attributeNodes = @NamedAttributeNode("address")))
 @NamedQuery(name = "findAllAllocations", query = "SELECT a FROM Allocation a")
 @NamedQuery(name = "findAllocationById", query = "SELECT a FROM Allocation a WHERE  a.id = :id")
 @NamedQuery(name = "getTotalAllocations", query = "SELECT COUNT(a) FROM Allocation a")
@@ -16,14 +24,17 @@ public class Allocation   {
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
     private Long id;
+    @Version
+    @Column(name = "VERSION", nullable = false)
+    private long version;
     @Temporal(TemporalType.TIMESTAMP)
     private Date creationTime;
     
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn( name = "property_manager_id" ,nullable = false)
     private PropertyManager propertyManager;
     
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "property_id",nullable = false)
     private Property property;
 
@@ -35,6 +46,13 @@ public class Allocation   {
         this.id = id;
     }
 
+    /**
+     * @return the version checked by optimistic locking on update and delete
+     */
+    public long getVersion() {
+        return version;
+    }
+
 
     /**
      * @return the propertyManager
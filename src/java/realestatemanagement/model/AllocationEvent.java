@@ -0,0 +1,141 @@
+package realestatemanagement.model;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Date;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.TableGenerator;
+import jakarta.persistence.Temporal;
+import jakarta.persistence.TemporalType;
+
+/**
+ * One entry of the append-only allocation history: a property assigned to
+ * or unassigned from a manager. Written by AllocationEJB in the transaction
+ * of the allocation change and never updated, so the history outlives the
+ * allocation. The allocation, property and manager are plain IDs rather
+ * than associations, so deleting any of them leaves its history intact.
+ *
+ * EVENT_DAY is the UTC day of EVENT_TIME as yyyymmdd. Existing databases
+ * range-partition the table by it (see sql/007_allocation_history.sql), and
+ * the time range queries bound it as well so only the partitions of the
+ * days asked for are read.
+ *
+ * EVENT_TIME keeps fractional seconds, so the history orders the changes of
+ * a property by time even when they were made on different nodes within
+ * the same second. The events of one change share their time and are
+ * ordered by ID, which one node allocates in ascending order.
+ */
+@Entity
+@Table(name = "ALLOCATION_EVENT", indexes = {
+    // allocations created or ended between two times
+    @Index(name = "IDX_ALLOCATIONEVENT_TIME", columnList = "EVENT_TIME"),
+    // who managed a property at a given time
+    @Index(name = "IDX_ALLOCATIONEVENT_PROPERTY_TIME", columnList = "PROPERTY_ID, EVENT_TIME"),
+    // what a manager was given or lost over a period
+    @Index(name = "IDX_ALLOCATIONEVENT_MANAGER_TIME", columnList = "MANAGER_ID, EVENT_TIME")
+})
+public class AllocationEvent {
+
+    /**
+     * What happened to the allocation
+     */
+    public enum Type {
+        /** The property was allocated to the manager */
+        ASSIGNED,
+        /** The allocation of the property to the manager ended */
+        UNASSIGNED
+    }
+
+    @Id
+    // from a table like Property#id, so the events of an engine chunk are batched with its allocations
+    @TableGenerator(name = "ALLOCATION_EVENT_GEN", table = "ID_GENERATOR", pkColumnName = "GEN_NAME",
+            valueColumnName = "GEN_VALUE", pkColumnValue = "ALLOCATION_EVENT", allocationSize = 1000)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "ALLOCATION_EVENT_GEN")
+    @Column(name = "ID", nullable = false)
+    private Long id;
+
+    @Column(name = "EVENT_DAY", nullable = false, updatable = false)
+    private int eventDay;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    // a plain DATETIME would drop the milliseconds
+    @Column(name = "EVENT_TIME", nullable = false, updatable = false, columnDefinition = "DATETIME(6)")
+    private Date eventTime;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "TYPE", nullable = false, updatable = false, length = 16)
+    private Type type;
+
+    @Column(name = "ALLOCATION_ID", nullable = false, updatable = false)
+    private long allocationId;
+
+    @Column(name = "PROPERTY_ID", nullable = false, updatable = false)
+    private long propertyId;
+
+    @Column(name = "MANAGER_ID", nullable = false, updatable = false)
+    private long managerId;
+
+    protected AllocationEvent() {
+    }
+
+    /**
+     * @param type Assigned or unassigned
+     * @param eventTime When it happened
+     * @param allocationId Allocation ID
+     * @param propertyId Property ID
+     * @param managerId Property manager ID
+     */
+    public AllocationEvent(Type type, Date eventTime, long allocationId, long propertyId, long managerId) {
+        this.type = type;
+        this.eventTime = eventTime;
+        this.eventDay = dayOf(eventTime);
+        this.allocationId = allocationId;
+        this.propertyId = propertyId;
+        this.managerId = managerId;
+    }
+
+    /**
+     * @param time Point in time
+     * @return UTC day of the time as yyyymmdd, the value of EVENT_DAY
+     */
+    public static int dayOf(Date time) {
+        LocalDate day = time.toInstant().atOffset(ZoneOffset.UTC).toLocalDate();
+        return day.getYear() * 10000 + day.getMonthValue() * 100 + day.getDayOfMonth();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public int getEventDay() {
+        return eventDay;
+    }
+
+    public Date getEventTime() {
+        return eventTime;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getAllocationId() {
+        return allocationId;
+    }
+
+    public long getPropertyId() {
+        return propertyId;
+    }
+
+    public long getManagerId() {
+        return managerId;
+    }
+}
@@ -0,0 +1,27 @@
+package realestatemanagement.model;
+
+import java.util.Locale;
+
+/**
+ * Normalized form of a username or email address, as stored in the indexed
+ * *_KEY lookup columns: trimmed and lower-cased. Finders normalize their
+ * parameter the same way, so an equality match on the key column is case
+ * insensitive and can use the unique index.
+ */
+public final class LookupKey {
+
+    private LookupKey() {
+    }
+
+    /**
+     * @param value Username or email address, may be null
+     * @return Lookup key, or null if the value is null or blank
+     */
+    public static String of(String value) {
+        if (value == null) {
+            return null;
+        }
+        String key = value.trim().toLowerCase(Locale.ROOT);
+        return key.isEmpty() ? null : key;
+    }
+}
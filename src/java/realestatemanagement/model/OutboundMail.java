@@ -0,0 +1,169 @@
+package realestatemanagement.model;
+
+import java.util.Date;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.NamedQuery;
+import jakarta.persistence.Table;
+import jakarta.persistence.Temporal;
+import jakarta.persistence.TemporalType;
+
+/**
+ * An email waiting in, or delivered from, the outbound mail queue.
+ * While a message is being sent, NEXT_ATTEMPT holds the end of the sender's
+ * lease, so a message whose sender died is picked up again once it expires.
+ */
+@Entity
+@Table(name = "OUTBOUND_MAIL", indexes = {
+    // the dispatcher polls for due messages
+    @Index(name = "IDX_OUTBOUNDMAIL_STATUS_NEXT", columnList = "STATUS, NEXT_ATTEMPT")
+})
+@NamedQuery(name = "OutboundMail.findDue",
+        query = "SELECT m FROM OutboundMail m WHERE m.status IN :statuses AND m.nextAttempt <= :now ORDER BY m.nextAttempt, m.id")
+public class OutboundMail {
+
+    /**
+     * Delivery state of a message
+     */
+    public enum Status {
+        /** Waiting for its first or next attempt */
+        PENDING,
+        /** Claimed by a sender until NEXT_ATTEMPT */
+        SENDING,
+        /** Accepted by the mail relay */
+        SENT,
+        /** Given up after the maximum number of attempts */
+        FAILED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "ID", nullable = false)
+    private Long id;
+
+    @Column(name = "RECIPIENT", nullable = false)
+    private String recipient;
+
+    @Column(name = "SUBJECT", nullable = false)
+    private String subject;
+
+    @Column(name = "BODY", nullable = false, length = 4000)
+    private String body;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "STATUS", nullable = false, length = 16)
+    private Status status = Status.PENDING;
+
+    @Column(name = "ATTEMPTS", nullable = false)
+    private int attempts;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "NEXT_ATTEMPT", nullable = false)
+    private Date nextAttempt;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "CREATED", nullable = false)
+    private Date created;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "SENT")
+    private Date sent;
+
+    @Column(name = "LAST_ERROR", length = 1000)
+    private String lastError;
+
+    public OutboundMail() {
+    }
+
+    public OutboundMail(String recipient, String subject, String body) {
+        this.recipient = recipient;
+        this.subject = subject;
+        this.body = body;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getRecipient() {
+        return recipient;
+    }
+
+    public void setRecipient(String recipient) {
+        this.recipient = recipient;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public void setBody(String body) {
+        this.body = body;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public Date getNextAttempt() {
+        return nextAttempt;
+    }
+
+    public void setNextAttempt(Date nextAttempt) {
+        this.nextAttempt = nextAttempt;
+    }
+
+    public Date getCreated() {
+        return created;
+    }
+
+    public void setCreated(Date created) {
+        this.created = created;
+    }
+
+    public Date getSent() {
+        return sent;
+    }
+
+    public void setSent(Date sent) {
+        this.sent = sent;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+}
@@ -23,11 +23,20 @@ import jakarta.persistence.*;
  */
 @Entity
 @Inheritance(strategy = InheritanceType.JOINED)
+// Composite indexes for the multi-criteria search, see PropertyEJB#searchListings
+@Table(indexes = {
+    @Index(name = "IDX_PROPERTY_TYPE_BEDROOMS", columnList = "PROPERTY_TYPE, NO_OF_BEDROOMS"),
+    @Index(name = "IDX_PROPERTY_BEDROOMS_BATHROOMS", columnList = "NO_OF_BEDROOMS, NO_OF_BATHROOMS")
+})
 public class Property {
 
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY) // Changed to IDENTITY for consistency with your reference
+    // IDs are handed out in blocks from a table so inserts can be batched;
+    // IDENTITY needs a round trip per row to learn the generated key
+    @TableGenerator(name = "PROPERTY_GEN", table = "ID_GENERATOR", pkColumnName = "GEN_NAME",
+            valueColumnName = "GEN_VALUE", pkColumnValue = "PROPERTY", allocationSize = 1000)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "PROPERTY_GEN")
     @Column(name = "ID", nullable = false)
     private Long id;
 
@@ -5,6 +5,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+// on the normalized key, so addresses differing only in case are duplicates too
+@Table(uniqueConstraints = @UniqueConstraint(name = "UNQ_PROPERTYMANAGER_EMAIL_KEY", columnNames = "EMAIL_KEY"),
+        // the leaderboard fallback orders by it
+        indexes = @Index(name = "IDX_PROPERTYMANAGER_ALLOCATION_COUNT", columnList = "ALLOCATION_COUNT"))
 @NamedQuery(name = "findAllPropertyManagers", query = "SELECT pm FROM PropertyManager pm")
 //search property manager by first name and last name
 @NamedQuery(name = "findPropertyManagerByName", query = "SELECT pm FROM PropertyManager pm WHERE pm.firstName = :firstName AND pm.lastName = :lastName")
@@ -12,8 +16,16 @@ import java.util.List;
 @NamedQuery(name = "findPropertyManagerByFirstName", query = "SELECT pm FROM PropertyManager pm WHERE pm.firstName = :firstName")
 //search property manager by last name
 @NamedQuery(name = "findPropertyManagerByLastName", query = "SELECT pm FROM PropertyManager pm WHERE pm.lastName = :lastName")
+//search property manager by email; :emailKey must be normalized with LookupKey.of
+@NamedQuery(name = "findPropertyManagerByEmail", query = "SELECT pm FROM PropertyManager pm WHERE pm.emailKey = :emailKey")
 @NamedQuery(name = "getTotalManagers", query = "SELECT COUNT(pm) FROM PropertyManager pm")
 @NamedQuery(name = "getTotalProperties", query = "SELECT COUNT(a) FROM Allocation a WHERE a.propertyManager = :manager")
+//in place increment or decrement, so concurrent allocations never lose an update;
+//both bump the version, which orders the counts reported to the leaderboard
+@NamedQuery(name = "PropertyManager.adjustAllocationCount", query = "UPDATE PropertyManager pm SET pm.allocationCount = pm.allocationCount + :delta, pm.allocationCountVersion = pm.allocationCountVersion + 1 WHERE pm.id = :id")
+@NamedQuery(name = "PropertyManager.setAllocationCount", query = "UPDATE PropertyManager pm SET pm.allocationCount = :count, pm.allocationCountVersion = pm.allocationCountVersion + 1 WHERE pm.id = :id")
+@NamedQuery(name = "PropertyManager.allocationCount", query = "SELECT pm.allocationCount FROM PropertyManager pm WHERE pm.id = :id")
+@NamedQuery(name = "PropertyManager.allocationCountAndVersion", query = "SELECT pm.allocationCount, pm.allocationCountVersion FROM PropertyManager pm WHERE pm.id = :id")
 public class PropertyManager {
 
     @Id
@@ -38,6 +50,19 @@ public class PropertyManager {
     
     private String email;
 
+    //Trimmed, lower-cased copy of the email, for indexed lookups
+    @Column(name = "EMAIL_KEY")
+    private String emailKey;
+
+    //Number of allocations, kept by AllocationEJB; only ever written by
+    //the PropertyManager.*AllocationCount updates, so a merge cannot overwrite it
+    @Column(name = "ALLOCATION_COUNT", nullable = false, updatable = false)
+    private long allocationCount;
+
+    //Bumped with every change of allocationCount, by the same updates
+    @Column(name = "ALLOCATION_COUNT_VERSION", nullable = false, updatable = false)
+    private long allocationCountVersion;
+
     public PropertyManager(String firstName, String lastName, String phone, String mobile, String email) {
         this.firstName = firstName;
         this.lastName = lastName;
@@ -83,6 +108,26 @@ public class PropertyManager {
 
     public void setEmail(String email) {
         this.email = email;
+        this.emailKey = LookupKey.of(email);
+    }
+
+    public String getEmailKey() {
+        return emailKey;
+    }
+
+    public long getAllocationCount() {
+        return allocationCount;
+    }
+
+    public long getAllocationCountVersion() {
+        return allocationCountVersion;
+    }
+
+    //Keep the lookup key in step however the email was set
+    @PrePersist
+    @PreUpdate
+    void updateLookupKeys() {
+        this.emailKey = LookupKey.of(email);
     }
 
     /**
@@ -1,15 +1,24 @@
 package realestatemanagement.model;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
 import jakarta.persistence.Inheritance;
 import jakarta.persistence.InheritanceType;
 import jakarta.persistence.NamedQueries;
 import jakarta.persistence.NamedQuery;
+import jakarta.persistence.Table;
 
 
  
 @Entity
 @Inheritance(strategy = InheritanceType.JOINED)
+// Backs keyset pagination ordered by price, see PropertyEJB#findListingPage
+@Table(indexes = {
+    @Index(name = "IDX_RENTPROPERTY_RENT_ID", columnList = "WEEKLY_RENT, ID"),
+    //furnished filter combined with a rent range or rent ordering
+    @Index(name = "IDX_RENTPROPERTY_FURNISHED_RENT", columnList = "IS_FURNISHED, WEEKLY_RENT")
+})
 @NamedQueries({
     @NamedQuery(name = "findAllRentPropertys", query = "SELECT rp FROM RentProperty rp")
 })
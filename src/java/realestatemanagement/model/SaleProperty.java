@@ -1,15 +1,22 @@
 package realestatemanagement.model;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
 import jakarta.persistence.Inheritance;
 import jakarta.persistence.InheritanceType;
 import jakarta.persistence.NamedQueries;
 import jakarta.persistence.NamedQuery;
+import jakarta.persistence.Table;
 
  
 @Entity
 
 @Inheritance(strategy = InheritanceType.JOINED)
+// Backs keyset pagination ordered by price, see PropertyEJB#findListingPage
+@Table(indexes = {
+    @Index(name = "IDX_SALEPROPERTY_PRICE_ID", columnList = "SALE_PRICE, ID")
+})
 @NamedQueries({
     @NamedQuery(name = "findAllSalePropertys", query = "SELECT sp FROM SaleProperty sp")
 })
@@ -7,20 +7,27 @@ import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.Id;
 import jakarta.persistence.NamedQueries;
 import jakarta.persistence.NamedQuery;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
 import jakarta.persistence.Table;
 import jakarta.persistence.Temporal;
 import jakarta.persistence.TemporalType;
+import jakarta.persistence.UniqueConstraint;
 import static jakarta.persistence.GenerationType.IDENTITY;
 
 @Entity
-@Table(name = "USER")
+@Table(name = "USER", uniqueConstraints = {
+    // on the normalized keys, so names differing only in case are duplicates too
+    @UniqueConstraint(name = "UNQ_USER_USERNAME_KEY", columnNames = "USERNAME_KEY"),
+    @UniqueConstraint(name = "UNQ_USER_EMAIL_KEY", columnNames = "EMAIL_KEY")})
 @NamedQueries( {@NamedQuery(name = "User.findById", query = "SELECT w FROM User w WHERE w.id = :id"), 
     @NamedQuery(name = "User.findByFirstname", query = "SELECT w FROM User w WHERE w.firstname = :firstname"), 
     @NamedQuery(name = "User.findByLastname", query = "SELECT w FROM User w WHERE w.lastname = :lastname"), 
-    @NamedQuery(name = "User.findByUsername", query = "SELECT w FROM User w WHERE w.username = :username"), 
+    //:username and :email must be normalized with LookupKey.of
+    @NamedQuery(name = "User.findByUsername", query = "SELECT w FROM User w WHERE w.usernameKey = :username"), 
     @NamedQuery(name = "User.findByPassword", query = "SELECT w FROM User w WHERE w.password = :password"), 
     @NamedQuery(name = "User.findBySince", query = "SELECT w FROM User w WHERE w.since = :since"),
-    @NamedQuery(name = "User.findByEmail", query = "SELECT w FROM User w WHERE w.email = :email")})
+    @NamedQuery(name = "User.findByEmail", query = "SELECT w FROM User w WHERE w.emailKey = :email")})
 public class User  {
 
     @Id
@@ -33,13 +40,18 @@ public class User  {
     private String lastname;
     @Column(name = "USERNAME", nullable = false)
     private String username;
-    @Column(name = "PASSWORD", nullable = false, length=128)
+    @Column(name = "PASSWORD", nullable = false, length=255)
     private String password;
     @Column(name = "SINCE")
     @Temporal(TemporalType.TIMESTAMP)
     private Date since;
     @Column(name = "EMAIL", nullable = false)
     private String email;
+    //Trimmed, lower-cased copies of the username and email, for indexed lookups
+    @Column(name = "USERNAME_KEY", nullable = false)
+    private String usernameKey;
+    @Column(name = "EMAIL_KEY", nullable = false)
+    private String emailKey;
     /* Creates a new instance of Wuser */
     public User() {
     }
@@ -87,6 +99,7 @@ public class User  {
 
     public void setUsername(String username) {
         this.username = username;
+        this.usernameKey = LookupKey.of(username);
     }
 
     public String getPassword() {
@@ -112,6 +125,23 @@ public class User  {
 
     public void setEmail(String email) {
         this.email = email;
+        this.emailKey = LookupKey.of(email);
+    }
+
+    public String getUsernameKey() {
+        return usernameKey;
+    }
+
+    public String getEmailKey() {
+        return emailKey;
+    }
+
+    //Keep the lookup keys in step however the fields were set
+    @PrePersist
+    @PreUpdate
+    void updateLookupKeys() {
+        this.usernameKey = LookupKey.of(username);
+        this.emailKey = LookupKey.of(email);
     }
 
 }
@@ -0,0 +1,82 @@
+package realestatemanagement.model;
+
+import java.util.Date;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.NamedNativeQuery;
+import jakarta.persistence.NamedQueries;
+import jakarta.persistence.NamedQuery;
+import jakarta.persistence.Table;
+import jakarta.persistence.Temporal;
+import jakarta.persistence.TemporalType;
+
+/**
+ * The outstanding verification or recovery code of an email address, shared
+ * by all nodes. Only a hash of the code is stored. ID is the purpose and the
+ * normalized email, e.g. "REGISTRATION:jane@example.com", so issuing a new
+ * code replaces the previous one.
+ */
+@Entity
+@Table(name = "VERIFICATION_CODE", indexes = {
+    // expired codes are purged in bulk
+    @Index(name = "IDX_VERIFICATIONCODE_EXPIRES", columnList = "EXPIRES")
+})
+@NamedQueries({
+    // single use: only one node can delete the row
+    @NamedQuery(name = "VerificationCode.consume",
+            query = "DELETE FROM VerificationCode v WHERE v.id = :id AND v.codeHash = :codeHash AND v.expires > :now"),
+    @NamedQuery(name = "VerificationCode.purgeExpired",
+            query = "DELETE FROM VerificationCode v WHERE v.expires <= :now")
+})
+// issuing a code on two nodes at once must not fail with a duplicate ID
+@NamedNativeQuery(name = "VerificationCode.save",
+        query = "INSERT INTO VERIFICATION_CODE (ID, CODE_HASH, EXPIRES) VALUES (?1, ?2, ?3)"
+        + " ON DUPLICATE KEY UPDATE CODE_HASH = ?2, EXPIRES = ?3")
+public class VerificationCode {
+
+    @Id
+    @Column(name = "ID", nullable = false, length = 320)
+    private String id;
+
+    @Column(name = "CODE_HASH", nullable = false, length = 64)
+    private String codeHash;
+
+    @Column(name = "EXPIRES", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date expires;
+
+    public VerificationCode() {
+    }
+
+    public VerificationCode(String id, String codeHash, Date expires) {
+        this.id = id;
+        this.codeHash = codeHash;
+        this.expires = expires;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getCodeHash() {
+        return codeHash;
+    }
+
+    public void setCodeHash(String codeHash) {
+        this.codeHash = codeHash;
+    }
+
+    public Date getExpires() {
+        return expires;
+    }
+
+    public void setExpires(Date expires) {
+        this.expires = expires;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Suggestions while typing, for inputs marked with data-autocomplete="field"
+ * (city, street, firstName or lastName). Each marked input gets a datalist
+ * filled from autocomplete?field=...&q=... as the user types. Requests are
+ * debounced, and a request still in flight is cancelled by the next one.
+ */
+(function () {
+    "use strict";
+
+    var DELAY_MS = 120;
+
+    function attach(input, index) {
+        var list = document.createElement("datalist");
+        list.id = "autocomplete-" + index;
+        input.parentNode.appendChild(list);
+        input.setAttribute("list", list.id);
+        input.setAttribute("autocomplete", "off");
+
+        var timer = null;
+        var inFlight = null;
+        var lastPrefix = null;
+
+        function fill(values) {
+            while (list.firstChild) {
+                list.removeChild(list.firstChild);
+            }
+            values.forEach(function (value) {
+                var option = document.createElement("option");
+                option.value = value;
+                list.appendChild(option);
+            });
+        }
+
+        function lookup() {
+            var prefix = input.value.trim();
+            if (prefix === lastPrefix) {
+                return;
+            }
+            lastPrefix = prefix;
+            if (inFlight) {
+                inFlight.abort();
+                inFlight = null;
+            }
+            if (!prefix) {
+                fill([]);
+                return;
+            }
+            var controller = new AbortController();
+            inFlight = controller;
+            fetch("autocomplete?field=" + encodeURIComponent(input.dataset.autocomplete)
+                    + "&q=" + encodeURIComponent(prefix), {signal: controller.signal, credentials: "same-origin"})
+                .then(function (response) {
+                    return response.ok ? response.json() : [];
+                })
+                .then(function (values) {
+                    if (inFlight === controller) {
+                        inFlight = null;
+                        fill(values);
+                    }
+                })
+                .catch(function () {
+                    // aborted or offline: keep the current suggestions
+                });
+        }
+
+        input.addEventListener("input", function () {
+            clearTimeout(timer);
+            timer = setTimeout(lookup, DELAY_MS);
+        });
+    }
+
+    document.addEventListener("DOMContentLoaded", function () {
+        var inputs = document.querySelectorAll("input[data-autocomplete]");
+        for (var i = 0; i < inputs.length; i++) {
+            attach(inputs[i], i);
+        }
+    });
+})();